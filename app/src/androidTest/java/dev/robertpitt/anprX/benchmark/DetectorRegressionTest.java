@@ -0,0 +1,104 @@
+package dev.robertpitt.anprX.benchmark;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.File;
+
+import dev.robertpitt.anprX.opencv.DetectorRegistry;
+import dev.robertpitt.anprX.tesseract.TesseractAPI;
+import dev.robertpitt.anprX.tesseract.TesseractRecogniser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the labelled dataset through every registered detector with Tesseract and compares
+ * the report with the stored baseline, failing when accuracy or latency regresses.
+ *
+ * The dataset directory defaults to /sdcard/anprx/dataset and can be changed with:
+ * adb shell am instrument -e dataset /path/to/dataset -e detector v2 ...
+ *
+ * Reports are written next to the dataset as report-{detector}.json, when no
+ * baseline-{detector}.json exists the report is also stored as the new baseline.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorRegressionTest {
+  private static final String TAG = "ANPRX::DetectorRegressionTest";
+
+  /**
+   * Allowed absolute drop in any accuracy metric
+   */
+  private static final double ACCURACY_TOLERANCE = 0.01;
+
+  /**
+   * Allowed relative increase in any p95 latency
+   */
+  private static final double LATENCY_TOLERANCE = 0.10;
+
+  private File datasetDirectory;
+  private String detectorFilter;
+  private TesseractAPI tesseractAPI;
+
+  @Before
+  public void setUp() {
+    Bundle arguments = InstrumentationRegistry.getArguments();
+    datasetDirectory = new File(arguments.getString("dataset", "/sdcard/anprx/dataset"));
+    detectorFilter = arguments.getString("detector");
+    assumeTrue("No labelled dataset at " + datasetDirectory, new File(datasetDirectory, LabelledDataset.MANIFEST).exists());
+    assertTrue(OpenCVLoader.initDebug());
+
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    tesseractAPI = new TesseractAPI(context);
+    tesseractAPI.init("eng", TessBaseAPI.OEM_LSTM_ONLY);
+    tesseractAPI.configureForPlates();
+  }
+
+  @After
+  public void tearDown() {
+    if(tesseractAPI != null) {
+      tesseractAPI.end();
+    }
+  }
+
+  @Test
+  public void detectorsDoNotRegress() throws Exception {
+    LabelledDataset dataset = LabelledDataset.load(datasetDirectory);
+    DetectorRegistry registry = new DetectorRegistry();
+    RegressionHarness harness = new RegressionHarness();
+    TesseractRecogniser recogniser = new TesseractRecogniser(tesseractAPI);
+
+    for(String key : registry.keys()) {
+      if(detectorFilter != null && !detectorFilter.equals(key)) {
+        continue;
+      }
+
+      RegressionReport report = harness.run(dataset, key, registry.create(key), "tesseract", recogniser);
+      RegressionHarness.writeReport(report, new File(datasetDirectory, String.format("report-%s.json", key)));
+      Log.i(TAG, report.toJson().toString());
+
+      File baselineFile = new File(datasetDirectory, String.format("baseline-%s.json", key));
+      if(!baselineFile.exists()) {
+        RegressionHarness.writeReport(report, baselineFile);
+        continue;
+      }
+
+      ReportDiff diff = report.diff(RegressionHarness.readReport(baselineFile), ACCURACY_TOLERANCE, LATENCY_TOLERANCE);
+      Log.i(TAG, String.format("%s vs baseline:\n%s", key, diff));
+      assertFalse(String.format("%s regressed against baseline:\n%s", key, diff), diff.hasRegressions());
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package dev.robertpitt.anprX.benchmark;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import dev.robertpitt.anprX.opencv.DetectorParameters;
+import dev.robertpitt.anprX.opencv.DetectorProfiles;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Searches the V2 detector parameters over the labelled dataset on this device and writes the
+ * Pareto front of latency against recall. A search takes a long time so it only runs when asked:
+ * adb shell am instrument -e tune random -e trials 60 -e class dev.robertpitt.anprX.benchmark.DetectorTuningTest ...
+ *
+ * "-e tune grid" walks the grid instead, "-e seed" changes the random sample and "-e dataset"
+ * the dataset directory (default /sdcard/anprx/dataset). The search is written next to the
+ * dataset as tuning-{deviceClass}.json, its "recommended" parameters are the profile to ship
+ * for the device class in assets/detector_profiles.json.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorTuningTest {
+  private static final String TAG = "ANPRX::DetectorTuningTest";
+
+  /**
+   * Recall that may be given up for speed when recommending a profile
+   */
+  private static final double RECALL_TOLERANCE = 0.02;
+
+  private File datasetDirectory;
+  private String strategy;
+  private int trials;
+  private long seed;
+
+  @Before
+  public void setUp() {
+    Bundle arguments = InstrumentationRegistry.getArguments();
+    datasetDirectory = new File(arguments.getString("dataset", "/sdcard/anprx/dataset"));
+    strategy = arguments.getString("tune");
+    trials = Integer.parseInt(arguments.getString("trials", "60"));
+    seed = Long.parseLong(arguments.getString("seed", "1"));
+    assumeTrue("Tuning not requested", strategy != null);
+    assumeTrue("No labelled dataset at " + datasetDirectory, new File(datasetDirectory, LabelledDataset.MANIFEST).exists());
+    assertTrue(OpenCVLoader.initDebug());
+  }
+
+  @Test
+  public void tuneDetectorParameters() throws Exception {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    String deviceClass = DetectorProfiles.deviceClass(context);
+    LabelledDataset dataset = LabelledDataset.load(datasetDirectory);
+
+    ParameterSpace space = ParameterSpace.defaultSpace();
+    List<DetectorParameters> candidates = "grid".equals(strategy) ? space.grid(trials) : space.random(trials, seed);
+    Log.i(TAG, String.format(Locale.UK, "Tuning %d of %d configurations on a %s device", candidates.size(), space.size(), deviceClass));
+
+    ParameterTuner.Result result = new ParameterTuner().tune(dataset, candidates, "none", null,
+        (index, total, trial) -> Log.i(TAG, String.format(Locale.UK, "%d/%d recall=%.3f p95=%.1fms %s",
+            index + 1, total, trial.getRecall(), trial.getLatency(), trial.getParameters())));
+    assertFalse(result.getFront().isEmpty());
+
+    for(ParameterTuner.Trial trial : result.getFront()) {
+      Log.i(TAG, String.format(Locale.UK, "front recall=%.3f p95=%.1fms %s", trial.getRecall(), trial.getLatency(), trial.getParameters()));
+    }
+    ParameterTuner.Trial recommended = result.recommend(RECALL_TOLERANCE);
+    Log.i(TAG, String.format(Locale.UK, "%s profile: %s", deviceClass, recommended.getParameters().toJson()));
+
+    OutputStream out = new FileOutputStream(new File(datasetDirectory, String.format("tuning-%s.json", deviceClass)));
+    try {
+      out.write(result.toJson(deviceClass, RECALL_TOLERANCE).toString(2).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package dev.robertpitt.anprX.frames;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.robertpitt.anprX.analysis.AnalysisPipeline;
+import dev.robertpitt.anprX.analysis.OcrScheduler;
+import dev.robertpitt.anprX.opencv.IDetector;
+import dev.robertpitt.anprX.opencv.MatTracker;
+import dev.robertpitt.anprX.opencv.NumberplateDetectorV2;
+import dev.robertpitt.anprX.reads.PlateRead;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a synthetic NV21 dump through {@link YuvDumpFrameSource}, the same path used to
+ * replay recordings from a device on an emulator, and checks the results are deterministic.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvDumpReplayTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int FRAMES = 12;
+
+  private File dumpFile;
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    assertTrue(OpenCVLoader.initDebug());
+  }
+
+  @Before
+  public void writeDump() throws Exception {
+    dumpFile = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "replay-test.yuv");
+    YuvDump.Writer writer = new YuvDump.Writer(dumpFile, YuvDump.FORMAT_NV21, WIDTH, HEIGHT);
+    try {
+      ByteBuffer pixels = ByteBuffer.allocateDirect(YuvDump.frameSize(YuvDump.FORMAT_NV21, WIDTH, HEIGHT));
+      for(int i = 0; i < FRAMES; i++) {
+        drawPlate(pixels, 120 + i * 8, 200);
+        writer.write(pixels, i * 33333333L, 0);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @After
+  public void deleteDump() {
+    dumpFile.delete();
+  }
+
+  @Test
+  public void detectorReplayIsDeterministic() throws Exception {
+    List<String> first = replayDetector();
+    List<String> second = replayDetector();
+
+    assertEquals(FRAMES, first.size());
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void pipelineAnalysesEveryReplayedFrame() throws Exception {
+    OcrScheduler scheduler = new OcrScheduler(plate -> new OcrResult("", 0), 1, 4, OcrScheduler.ShedPolicy.KEEP_NEWEST);
+    AnalysisPipeline pipeline = new AnalysisPipeline(new NumberplateDetectorV2(), scheduler);
+    pipeline.setListener(new AnalysisPipeline.Listener() {
+      @Override
+      public void onDebugView(Mat debugView) {
+      }
+
+      @Override
+      public void onRead(PlateRead read) {
+      }
+    });
+
+    long leaks = MatTracker.getLeakCount();
+    final AtomicInteger frames = new AtomicInteger();
+    YuvDumpFrameSource source = new YuvDumpFrameSource(dumpFile, ReplayFrameSource.Mode.AS_FAST_AS_POSSIBLE, false);
+    try {
+      source.start(frame -> {
+        frames.incrementAndGet();
+        pipeline.onFrame(frame);
+      });
+      source.awaitCompletion();
+    } finally {
+      source.close();
+      scheduler.shutdown();
+    }
+
+    assertEquals(FRAMES, frames.get());
+    assertEquals(0, pipeline.getStaleFrameCount());
+    assertEquals(leaks, MatTracker.getLeakCount());
+  }
+
+  /**
+   * Plate region found in each frame, as text so runs can be compared
+   */
+  private List<String> replayDetector() throws Exception {
+    final IDetector detector = new NumberplateDetectorV2();
+    final List<String> regions = new ArrayList<>();
+    YuvDumpFrameSource source = new YuvDumpFrameSource(dumpFile, ReplayFrameSource.Mode.AS_FAST_AS_POSSIBLE, false);
+    try {
+      source.start(frame -> {
+        try {
+          detector.detect(frame);
+          RotatedRect region = detector.getPlateRegion();
+          regions.add(region == null ? "none" : String.format(Locale.UK, "%.2f,%.2f %.2fx%.2f %.2f",
+              region.center.x, region.center.y, region.size.width, region.size.height, region.angle));
+        } finally {
+          frame.close();
+        }
+      });
+      source.awaitCompletion();
+    } finally {
+      source.close();
+      detector.release();
+    }
+    return regions;
+  }
+
+  /**
+   * Grey scene with a white plate holding dark character strokes, neutral chroma
+   */
+  private static void drawPlate(ByteBuffer pixels, int left, int top) {
+    int plateWidth = 260;
+    int plateHeight = 60;
+    pixels.clear();
+    for(int y = 0; y < HEIGHT; y++) {
+      for(int x = 0; x < WIDTH; x++) {
+        int value = 90;
+        if(x >= left && x < left + plateWidth && y >= top && y < top + plateHeight) {
+          int column = (x - left) % 32;
+          boolean character = y >= top + 12 && y < top + plateHeight - 12 && column >= 10 && column < 20 && x < left + plateWidth - 16;
+          value = character ? 20 : 235;
+        }
+        pixels.put((byte) value);
+      }
+    }
+    while(pixels.hasRemaining()) {
+      pixels.put((byte) 128);
+    }
+    pixels.flip();
+  }
+}
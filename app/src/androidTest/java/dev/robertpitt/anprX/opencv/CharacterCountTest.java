@@ -0,0 +1,69 @@
+package dev.robertpitt.anprX.opencv;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Character counting of {@link PlateVerifier} on synthetic crops
+ */
+@RunWith(AndroidJUnit4.class)
+public class CharacterCountTest {
+  @BeforeClass
+  public static void loadOpenCV() {
+    assertTrue(OpenCVLoader.initDebug());
+  }
+
+  /**
+   * A 200x50 crop of the background colour holding seven character sized strokes
+   */
+  private static Mat plate(double background, double ink) {
+    Mat crop = new Mat(50, 200, CvType.CV_8UC1, new Scalar(background));
+    for(int i = 0; i < 7; i++) {
+      int x = 12 + i * 26;
+      Imgproc.rectangle(crop, new Point(x, 10), new Point(x + 14, 40), new Scalar(ink), -1);
+    }
+    return crop;
+  }
+
+  @Test
+  public void countCharacters_countsDarkOnLightPlate() {
+    Mat crop = plate(230, 20);
+    PlateVerifier verifier = new PlateVerifier(null);
+
+    assertEquals(7, verifier.countCharacters(crop));
+    assertTrue(verifier.verify(crop));
+    crop.release();
+  }
+
+  @Test
+  public void countCharacters_countsLightOnDarkPlate() {
+    Mat crop = plate(20, 230);
+
+    assertEquals(7, new PlateVerifier(null).countCharacters(crop));
+    crop.release();
+  }
+
+  @Test
+  public void countCharacters_findsNothingOnBlankCrop() {
+    Mat crop = new Mat(50, 200, CvType.CV_8UC1, new Scalar(230));
+    PlateVerifier verifier = new PlateVerifier(null);
+
+    assertEquals(0, verifier.countCharacters(crop));
+    assertFalse(verifier.verify(crop));
+    assertEquals(1, verifier.getRejectedCount());
+    crop.release();
+  }
+}
@@ -0,0 +1,258 @@
+package dev.robertpitt.anprX.server;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.opencv.IDetector;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the recognition server with a local client over the loopback interface, pipelining
+ * raw greyscale frames on a single connection.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecognitionServerTest {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+
+  private RecognitionServer server;
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    assertTrue(OpenCVLoader.initDebug());
+  }
+
+  @After
+  public void tearDown() {
+    if(server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void answersPipelinedRequestsInOrder() throws Exception {
+    server = new RecognitionServer(() -> new StubDetector(null), () -> plate -> new OcrResult("", 0), 4, 8);
+    int port = server.start(0);
+
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      OutputStream out = socket.getOutputStream();
+      for(int i = 0; i < 6; i++) {
+        out.write(frameRequest(String.valueOf(i)));
+      }
+      out.flush();
+
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      for(int i = 0; i < 6; i++) {
+        Response response = readResponse(in);
+        assertEquals(200, response.status);
+        JSONObject body = new JSONObject(response.body);
+        assertEquals(String.valueOf(i), body.getString("id"));
+        assertTrue(body.isNull("plate"));
+      }
+    }
+
+    assertEquals(6, server.getMetrics().getCompletedCount());
+  }
+
+  @Test
+  public void rejectsFramesOnceTheQueueIsFull() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    server = new RecognitionServer(() -> new StubDetector(release), () -> plate -> new OcrResult("", 0), 1, 1);
+    int port = server.start(0);
+
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      OutputStream out = socket.getOutputStream();
+
+      // One frame on the worker, one queued, the rest turned away
+      for(int i = 0; i < 4; i++) {
+        out.write(frameRequest(String.valueOf(i)));
+      }
+      out.flush();
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while(server.getMetrics().getRejectedCount() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      assertEquals(200, readResponse(in).status);
+      assertEquals(200, readResponse(in).status);
+      Response rejected = readResponse(in);
+      assertEquals(503, rejected.status);
+      assertEquals(String.valueOf(RecognitionServer.RETRY_AFTER_SECONDS), rejected.retryAfter);
+      assertEquals(503, readResponse(in).status);
+
+      out.write("GET /metrics HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ASCII));
+      out.flush();
+      JSONObject metrics = new JSONObject(readResponse(in).body);
+      assertEquals(2, metrics.getInt("accepted"));
+      assertEquals(2, metrics.getInt("rejected"));
+      assertEquals(1, metrics.getInt("workers"));
+    }
+  }
+
+  @Test
+  public void rejectsRotationsOtherThanQuarterTurns() throws Exception {
+    server = new RecognitionServer(() -> new StubDetector(null), () -> plate -> new OcrResult("", 0), 1, 4);
+    int port = server.start(0);
+
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      OutputStream out = socket.getOutputStream();
+      out.write(frameRequest("0", 270));
+      out.write(frameRequest("1", 360));
+      out.write(frameRequest("2", -90));
+      out.flush();
+
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      assertEquals(200, readResponse(in).status);
+      assertEquals(400, readResponse(in).status);
+      assertEquals(400, readResponse(in).status);
+    }
+  }
+
+  private static byte[] frameRequest(String id) throws IOException {
+    return frameRequest(id, 0);
+  }
+
+  private static byte[] frameRequest(String id, int rotation) throws IOException {
+    ByteArrayOutputStream request = new ByteArrayOutputStream();
+    request.write(String.format(Locale.UK,
+        "POST /recognise HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/octet-stream\r\n"
+            + "X-Frame-Format: grey\r\nX-Frame-Width: %d\r\nX-Frame-Height: %d\r\nX-Frame-Rotation: %d\r\n"
+            + "X-Request-Id: %s\r\nContent-Length: %d\r\n\r\n",
+        WIDTH, HEIGHT, rotation, id, WIDTH * HEIGHT).getBytes(ASCII));
+    request.write(new byte[WIDTH * HEIGHT]);
+    return request.toByteArray();
+  }
+
+  private static class Response {
+    int status;
+    String retryAfter;
+    String body;
+  }
+
+  private static Response readResponse(InputStream in) throws IOException {
+    Response response = new Response();
+    String statusLine = readLine(in);
+    response.status = Integer.parseInt(statusLine.split(" ")[1]);
+
+    int length = 0;
+    String line;
+    while(!(line = readLine(in)).isEmpty()) {
+      String name = line.substring(0, line.indexOf(':')).trim();
+      String value = line.substring(line.indexOf(':') + 1).trim();
+      if(name.equalsIgnoreCase("Content-Length")) {
+        length = Integer.parseInt(value);
+      } else if(name.equalsIgnoreCase("Retry-After")) {
+        response.retryAfter = value;
+      }
+    }
+
+    byte[] body = new byte[length];
+    int read = 0;
+    while(read < length) {
+      int count = in.read(body, read, length - read);
+      if(count < 0) {
+        throw new EOFException();
+      }
+      read += count;
+    }
+    response.body = new String(body, "UTF-8");
+    return response;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while((c = in.read()) != '\n') {
+      if(c < 0) {
+        throw new EOFException();
+      }
+      if(c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  /**
+   * Never finds a plate, optionally holding each frame until released
+   */
+  private static class StubDetector implements IDetector {
+    private final CountDownLatch release;
+
+    StubDetector(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public Mat detect(Mat src) {
+      return detect(src, 0);
+    }
+
+    @Override
+    public Mat detect(Mat src, int rotationDegrees) {
+      if(release != null) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Mat detect(Frame frame) {
+      Mat rgb = frame.toRGB();
+      Mat plate = detect(rgb, frame.getRotationDegrees());
+      rgb.release();
+      return plate;
+    }
+
+    @Override
+    public Mat getDebugView() {
+      return null;
+    }
+
+    @Override
+    public RotatedRect getPlateRegion() {
+      return null;
+    }
+
+    @Override
+    public boolean acceptsLuma() {
+      return false;
+    }
+
+    @Override
+    public void release() {
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package dev.robertpitt.anprX.upload;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import dev.robertpitt.anprX.reads.PlateRead;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the upload queue against a stub HTTP server on the loopback interface which fails the
+ * first requests it receives, every read must still arrive exactly once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UploadQueueTest {
+  private static final int READS = 500;
+  private static final int FAILED_REQUESTS = 2;
+
+  private StubServer server;
+  private UploadQueue queue;
+
+  @Before
+  public void setUp() throws IOException {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    server = new StubServer(FAILED_REQUESTS);
+    queue = new UploadQueue(new ReadQueueDatabase(context, null), 0, 50, 200);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    queue.shutdown();
+    server.close();
+  }
+
+  @Test
+  public void deliversEveryReadDespiteFailures() throws Exception {
+    // Queue while offline, then connect as if coming back into coverage
+    for(int i = 0; i < READS; i++) {
+      queue.enqueue(PlateRead.create(String.format(Locale.UK, "AB%02d CDE", i % 100), 90, i), null);
+    }
+    queue.setTransport(new HttpBatchTransport(new URL(String.format(Locale.UK, "http://127.0.0.1:%d/reads", server.getPort()))));
+
+    long deadline = System.currentTimeMillis() + 20000;
+    while(server.getReceivedCount() < READS && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(READS, server.getReceivedCount());
+    assertEquals(0, queue.getQueuedCount());
+    assertEquals(READS, queue.getSentCount());
+    assertTrue(server.getRequestCount() < READS / 10);
+  }
+
+  /**
+   * Minimal HTTP/1.1 server, one request per connection, answering 503 to the first requests
+   */
+  private static class StubServer implements Runnable {
+    private final ServerSocket socket;
+    private final Thread thread;
+    private final Set<String> received = new HashSet<>();
+    private int failuresLeft;
+    private int requests = 0;
+
+    StubServer(int failures) throws IOException {
+      this.failuresLeft = failures;
+      this.socket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+      this.thread = new Thread(this, "stub-http");
+      this.thread.start();
+    }
+
+    int getPort() {
+      return socket.getLocalPort();
+    }
+
+    synchronized int getReceivedCount() {
+      return received.size();
+    }
+
+    synchronized int getRequestCount() {
+      return requests;
+    }
+
+    @Override
+    public void run() {
+      while(!socket.isClosed()) {
+        try (Socket client = socket.accept()) {
+          handle(client);
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    }
+
+    private void handle(Socket client) throws IOException {
+      DataInputStream in = new DataInputStream(client.getInputStream());
+      int contentLength = 0;
+      String line;
+      while(!(line = readLine(in)).isEmpty()) {
+        if(line.toLowerCase(Locale.UK).startsWith("content-length:")) {
+          contentLength = Integer.parseInt(line.substring(15).trim());
+        }
+      }
+      byte[] body = new byte[contentLength];
+      in.readFully(body);
+
+      int status = 200;
+      synchronized (this) {
+        requests++;
+        if(failuresLeft > 0) {
+          failuresLeft--;
+          status = 503;
+        } else {
+          try {
+            JSONArray reads = new JSONArray(gunzip(body));
+            for(int i = 0; i < reads.length(); i++) {
+              received.add(reads.getJSONObject(i).getString("id"));
+            }
+          } catch (Exception e) {
+            status = 400;
+          }
+        }
+      }
+
+      OutputStream out = client.getOutputStream();
+      out.write(String.format(Locale.UK, "HTTP/1.1 %d Stub\r\nContent-Length: 0\r\nConnection: close\r\n\r\n", status).getBytes("US-ASCII"));
+      out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while((c = in.read()) != -1 && c != '\n') {
+        if(c != '\r') {
+          line.append((char) c);
+        }
+      }
+      return line.toString();
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+      InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int read;
+      while((read = in.read(buf)) > 0) {
+        out.write(buf, 0, read);
+      }
+      return out.toString("UTF-8");
+    }
+
+    void close() throws IOException {
+      socket.close();
+    }
+  }
+}
@@ -1,20 +1,227 @@
 #include <jni.h>
+#include <cmath>
+#include <cstring>
+#include <vector>
 #include <opencv2/core/core.hpp>
+#include <opencv2/core/hal/intrin.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
 
 
 using namespace std;
 using namespace cv;
 
-extern "C" {
+namespace {
+
+/**
+ * Rows converted to grey per tile, small enough that the tile is still in cache when it is
+ * counted into the histogram
+ */
+const int TILE_ROWS = 16;
+
+/**
+ * 5 tap Gaussian with sigma 3 in 8 bit fixed point, the weights sum to 256
+ */
+const int BLUR_W0 = 56;
+const int BLUR_W1 = 54;
+const int BLUR_W2 = 46;
+
+/**
+ * Border handling matching BORDER_REFLECT_101, the default for GaussianBlur
+ */
+inline int reflect101(int i, int size) {
+    if (size == 1) return 0;
+    while (i < 0 || i >= size) {
+        i = i < 0 ? -i : 2 * size - 2 - i;
+    }
+    return i;
+}
+
+/**
+ * Histogram of a tile, four partial histograms avoid stalling on repeated values
+ */
+void accumulateHistogram(const Mat& tile, int* hist) {
+    int partial[4][256];
+    memset(partial, 0, sizeof(partial));
+
+    for (int y = 0; y < tile.rows; y++) {
+        const uchar* row = tile.ptr<uchar>(y);
+        int x = 0;
+        for (; x <= tile.cols - 4; x += 4) {
+            partial[0][row[x]]++;
+            partial[1][row[x + 1]]++;
+            partial[2][row[x + 2]]++;
+            partial[3][row[x + 3]]++;
+        }
+        for (; x < tile.cols; x++) {
+            partial[0][row[x]]++;
+        }
+    }
+
+    for (int i = 0; i < 256; i++) {
+        hist[i] += partial[0][i] + partial[1][i] + partial[2][i] + partial[3][i];
+    }
+}
+
+/**
+ * Equalisation table built the same way as equalizeHist
+ */
+void buildEqualiseLut(const int* hist, int total, uchar* lut) {
+    int i = 0;
+    while (i < 256 && !hist[i]) i++;
+
+    if (i == 256 || hist[i] == total) {
+        memset(lut, i == 256 ? 0 : i, 256);
+        return;
+    }
+
+    // Levels below the darkest present never occur, they only need a defined value
+    memset(lut, 0, 256);
+    float scale = (256 - 1.f) / (total - hist[i]);
+    int sum = 0;
+    for (lut[i++] = 0; i < 256; i++) {
+        sum += hist[i];
+        lut[i] = saturate_cast<uchar>(sum * scale);
+    }
+}
+
+/**
+ * Vertical 5 tap blur of five rows into one, rounding back to 8 bits
+ */
+void blurColumns(const uchar* r0, const uchar* r1, const uchar* r2, const uchar* r3, const uchar* r4, uchar* out, int width) {
+    int x = 0;
+#if CV_SIMD128
+    const v_uint16x8 w0 = v_setall_u16(BLUR_W0);
+    const v_uint16x8 w1 = v_setall_u16(BLUR_W1);
+    const v_uint16x8 w2 = v_setall_u16(BLUR_W2);
+    for (; x <= width - 16; x += 16) {
+        v_uint16x8 lo = (v_load_expand(r0 + x) + v_load_expand(r4 + x)) * w2
+                      + (v_load_expand(r1 + x) + v_load_expand(r3 + x)) * w1
+                      + v_load_expand(r2 + x) * w0;
+        v_uint16x8 hi = (v_load_expand(r0 + x + 8) + v_load_expand(r4 + x + 8)) * w2
+                      + (v_load_expand(r1 + x + 8) + v_load_expand(r3 + x + 8)) * w1
+                      + v_load_expand(r2 + x + 8) * w0;
+        v_store(out + x, v_rshr_pack<8>(lo, hi));
+    }
+#endif
+    for (; x < width; x++) {
+        int sum = (r0[x] + r4[x]) * BLUR_W2 + (r1[x] + r3[x]) * BLUR_W1 + r2[x] * BLUR_W0;
+        out[x] = (uchar) ((sum + 128) >> 8);
+    }
+}
+
+/**
+ * Horizontal 5 tap blur of a row padded with two reflected pixels either side
+ */
+void blurRow(const uchar* padded, uchar* out, int width) {
+    int x = 0;
+#if CV_SIMD128
+    const v_uint16x8 w0 = v_setall_u16(BLUR_W0);
+    const v_uint16x8 w1 = v_setall_u16(BLUR_W1);
+    const v_uint16x8 w2 = v_setall_u16(BLUR_W2);
+    for (; x <= width - 16; x += 16) {
+        const uchar* p = padded + x;
+        v_uint16x8 lo = (v_load_expand(p) + v_load_expand(p + 4)) * w2
+                      + (v_load_expand(p + 1) + v_load_expand(p + 3)) * w1
+                      + v_load_expand(p + 2) * w0;
+        v_uint16x8 hi = (v_load_expand(p + 8) + v_load_expand(p + 12)) * w2
+                      + (v_load_expand(p + 9) + v_load_expand(p + 11)) * w1
+                      + v_load_expand(p + 10) * w0;
+        v_store(out + x, v_rshr_pack<8>(lo, hi));
+    }
+#endif
+    for (; x < width; x++) {
+        const uchar* p = padded + x;
+        int sum = (p[0] + p[4]) * BLUR_W2 + (p[1] + p[3]) * BLUR_W1 + p[2] * BLUR_W0;
+        out[x] = (uchar) ((sum + 128) >> 8);
+    }
+}
+
+/**
+ * Greyscale, equalise and blur a frame in two passes over the luma.
+ *
+ * The first pass converts the frame to grey a tile of rows at a time and counts each tile
+ * into the histogram while it is still in cache. The equalisation table is built from the
+ * histogram, and as the table maps every grey level to exactly one equalised level the mean
+ * and standard deviation of the equalised frame come straight from the histogram too.
+ *
+ * The second pass equalises each row in place just ahead of the blur, which only ever looks
+ * at the five most recent equalised rows, so every row is read from memory once.
+ */
+void preprocess(const Mat& src, Mat& equalised, Mat& blurred, double* stats) {
+    const int width = src.cols;
+    const int height = src.rows;
+    equalised.create(height, width, CV_8UC1);
+    blurred.create(height, width, CV_8UC1);
+
+    int hist[256] = {0};
+    for (int y = 0; y < height; y += TILE_ROWS) {
+        Range rows(y, std::min(y + TILE_ROWS, height));
+        Mat tile = equalised.rowRange(rows);
+        if (src.channels() == 1) {
+            src.rowRange(rows).copyTo(tile);
+        } else {
+            cvtColor(src.rowRange(rows), tile, src.channels() == 4 ? COLOR_RGBA2GRAY : COLOR_RGB2GRAY);
+        }
+        accumulateHistogram(tile, hist);
+    }
+
+    uchar lut[256];
+    const int total = width * height;
+    buildEqualiseLut(hist, total, lut);
+
+    double sum = 0, sumSquares = 0;
+    for (int i = 0; i < 256; i++) {
+        double value = lut[i];
+        sum += hist[i] * value;
+        sumSquares += hist[i] * value * value;
+    }
+    double mean = total > 0 ? sum / total : 0;
+    stats[0] = mean;
+    stats[1] = total > 0 ? std::sqrt(std::max(0.0, sumSquares / total - mean * mean)) : 0;
+
+    vector<uchar> columns(width + 4);
+    int equalisedRows = 0;
+    for (int y = 0; y < height; y++) {
+        int last = std::min(y + 2, height - 1);
+        for (; equalisedRows <= last; equalisedRows++) {
+            uchar* row = equalised.ptr<uchar>(equalisedRows);
+            for (int x = 0; x < width; x++) {
+                row[x] = lut[row[x]];
+            }
+        }
+
+        uchar* padded = columns.data() + 2;
+        blurColumns(equalised.ptr<uchar>(reflect101(y - 2, height)),
+                    equalised.ptr<uchar>(reflect101(y - 1, height)),
+                    equalised.ptr<uchar>(y),
+                    equalised.ptr<uchar>(reflect101(y + 1, height)),
+                    equalised.ptr<uchar>(reflect101(y + 2, height)),
+                    padded, width);
+        padded[-2] = padded[reflect101(-2, width)];
+        padded[-1] = padded[reflect101(-1, width)];
+        padded[width] = padded[reflect101(width, width)];
+        padded[width + 1] = padded[reflect101(width + 1, width)];
+
+        blurRow(columns.data(), blurred.ptr<uchar>(y), width);
+    }
+}
+
 }
+
 extern "C" {
-JNIEXPORT void JNICALL Java_dev_robertpitt_anprX_opencv_NumberplateDetectorV2_detect_1c(
+JNIEXPORT void JNICALL Java_dev_robertpitt_anprX_opencv_LumaPreprocessor_preprocess_1c(
     JNIEnv *env,
     jclass clazz,
-    jlong src_address) {
-        // Get the Mat memory pointer
-        Mat& src  = *(Mat*)src_address;
+    jlong src_address,
+    jlong equalised_address,
+    jlong blurred_address,
+    jdoubleArray stats) {
+        Mat& src = *(Mat*)src_address;
+        Mat& equalised = *(Mat*)equalised_address;
+        Mat& blurred = *(Mat*)blurred_address;
 
-       src.release();
+        double meanStdDev[2] = {0, 0};
+        preprocess(src, equalised, blurred, meanStdDev);
+        env->SetDoubleArrayRegion(stats, 0, 2, meanStdDev);
     }
-}
\ No newline at end of file
+}
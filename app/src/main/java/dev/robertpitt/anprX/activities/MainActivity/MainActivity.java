@@ -3,9 +3,9 @@ package dev.robertpitt.anprX.activities.MainActivity;
 import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.os.Build;
+import android.net.ConnectivityManager;
 import android.os.Bundle;
 
 import com.google.common.util.concurrent.ListenableFuture;
@@ -17,16 +17,15 @@ import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.FocusMeteringAction;
 import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageProxy;
 import androidx.camera.core.MeteringPoint;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.preference.PreferenceManager;
 
 import android.os.Looper;
-import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
 import android.util.Size;
@@ -39,24 +38,51 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.opencv.android.BaseLoaderCallback;
-import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.core.Mat;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import dev.robertpitt.anprX.R;
+import dev.robertpitt.anprX.analysis.AnalysisPipeline;
+import dev.robertpitt.anprX.analysis.OcrScheduler;
+import dev.robertpitt.anprX.analysis.SlowFrameRecorder;
+import dev.robertpitt.anprX.analysis.StreamScheduler;
 import dev.robertpitt.anprX.activities.SettingsActivity.SettingsActivity;
-import dev.robertpitt.anprX.opencv.NumberplateDetectorV2;
+import dev.robertpitt.anprX.evidence.EvidenceFlusher;
+import dev.robertpitt.anprX.evidence.EvidenceWriter;
+import dev.robertpitt.anprX.evidence.FrameRingBuffer;
+import dev.robertpitt.anprX.frames.CameraXFrameSource;
+import dev.robertpitt.anprX.opencv.CropFusion;
+import dev.robertpitt.anprX.opencv.DetectionZone;
+import dev.robertpitt.anprX.opencv.DetectorProfiles;
+import dev.robertpitt.anprX.opencv.DetectorRegistry;
+import dev.robertpitt.anprX.opencv.PlateVerifier;
+import dev.robertpitt.anprX.opencv.ShadowDetector;
+import dev.robertpitt.anprX.opencv.ZonedDetector;
+import dev.robertpitt.anprX.reads.PlateRead;
+import dev.robertpitt.anprX.server.RecognitionService;
+import dev.robertpitt.anprX.startup.StartupOrchestrator;
+import dev.robertpitt.anprX.tesseract.CachingRecogniser;
+import dev.robertpitt.anprX.tesseract.IRecogniser;
+import dev.robertpitt.anprX.tesseract.OcrResultCache;
+import dev.robertpitt.anprX.tesseract.RecogniserPool;
 import dev.robertpitt.anprX.tesseract.TesseractAPI;
+import dev.robertpitt.anprX.tesseract.TesseractRecogniser;
+import dev.robertpitt.anprX.upload.HttpBatchTransport;
+import dev.robertpitt.anprX.upload.ReadQueueDatabase;
+import dev.robertpitt.anprX.upload.UploadQueue;
 
 /**
  * Main Camera Activity
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements AnalysisPipeline.Listener {
   /**
    * Log Tag, used to tag logs so we can easily file them using logcat.
    */
@@ -68,6 +94,33 @@ public class MainActivity extends AppCompatActivity {
    */
   private final static int CAMERA_PERMISSION_REQUEST = 0x01;
 
+  /**
+   * Number of frames saved as evidence before and after each read
+   */
+  private final static int EVIDENCE_PRE_TRIGGER_FRAMES = 15;
+  private final static int EVIDENCE_POST_TRIGGER_FRAMES = 15;
+
+  /**
+   * Frames the camera can deliver, at up to 30 per second, while a read waits for OCR
+   */
+  private final static int EVIDENCE_LATE_FRAMES = (int) Math.ceil(AnalysisPipeline.DEFAULT_OCR_DEADLINE_MILLIS * 30 / 1000.0);
+
+  /**
+   * Number of threads analysing frames across all streams, a stream is only ever analysed by
+   * one worker at a time so this is one per stream: the camera is the only stream
+   */
+  private final static int ANALYSIS_WORKERS = 1;
+
+  /**
+   * Number of crops of a plate fused into each OCR input
+   */
+  private final static int FUSED_CROPS = 4;
+
+  /**
+   * Number of slow frames kept on the device
+   */
+  private final static int SLOW_FRAME_CAPTURES = 20;
+
   /**
    * Static list of permissions this activity requires, this list will
    * be compared to the actual authorized permissions and if we are missing a
@@ -85,29 +138,104 @@ public class MainActivity extends AppCompatActivity {
   Vibrator vibrator;
 
   /**
-   * Numberplate Localisation
+   * Available detector implementations, keyed by the detector preference values
    */
-  private NumberplateDetectorV2 detector = new NumberplateDetectorV2();
+  private final DetectorRegistry detectorRegistry = new DetectorRegistry();
 
   /**
-   * OCR API
+   * Application preferences
    */
-  private TesseractAPI tesseractAPI = new TesseractAPI(this);
+  private SharedPreferences preferences;
 
   /**
-   * Callback Handler for when OpenCV is loaded and ready to be used.
+   * Preference change listener, held as a field as the preferences only keep a weak reference.
    */
-  private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
-    @Override
-    public void onManagerConnected(int status) {
-      if(status == LoaderCallbackInterface.SUCCESS) {
-        Log.i("OpenCV", "OpenCV loaded successfully");
-      } else {
-        super.onManagerConnected(status);
-      }
+  private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = (sharedPreferences, key) -> {
+    if(SettingsActivity.PREF_DETECTOR.equals(key)
+        || SettingsActivity.PREF_DETECTION_ZONES.equals(key)
+        || SettingsActivity.PREF_SHADOW_DETECTOR.equals(key)
+        || SettingsActivity.PREF_SHADOW_SAMPLE_INTERVAL.equals(key)) {
+      configureDetectors();
+    } else if(SettingsActivity.PREF_EVIDENCE_CAPTURE.equals(key)) {
+      configureEvidenceCapture();
+    } else if(SettingsActivity.PREF_UPLOAD_URL.equals(key)) {
+      configureUpload();
+    } else if(SettingsActivity.PREF_SLOW_FRAME_BUDGET.equals(key)
+        || SettingsActivity.PREF_SLOW_FRAME_SENTRY.equals(key)) {
+      configureSlowFrameCapture();
+    } else if(SettingsActivity.PREF_RECOGNITION_SERVER.equals(key)) {
+      configureRecognitionServer(false);
+    } else if(SettingsActivity.PREF_RECOGNITION_SERVER_PORT.equals(key)) {
+      configureRecognitionServer(true);
     }
   };
 
+  /**
+   * Writes frames surrounding each read to disk, created when evidence capture is enabled
+   */
+  private EvidenceFlusher evidenceFlusher;
+
+  /**
+   * Encodes the plate crop and frame of each read, created when evidence capture is enabled
+   */
+  private EvidenceWriter evidenceWriter;
+
+  /**
+   * Spools frames that take longer than the budget, created when slow frame capture is enabled
+   */
+  private SlowFrameRecorder slowFrameRecorder;
+
+  /**
+   * Durable queue of reads waiting to be sent to the back office
+   */
+  private UploadQueue uploadQueue;
+
+  /**
+   * OCR API
+   */
+  private TesseractAPI tesseractAPI = new TesseractAPI(this);
+
+  /**
+   * Plate reader backed by the OCR API, near identical crops seen within the last
+   * couple of seconds are served from the cache instead of running OCR again. Pooled so
+   * every frame stream shares the one OCR engine.
+   *
+   * Built here, before the OpenCV native library is loaded, so recognisers and the other
+   * analysis components allocate their Mats on first use rather than on construction.
+   */
+  private IRecogniser recogniser = new RecogniserPool(new CachingRecogniser(
+      new TesseractRecogniser(tesseractAPI),
+      new OcrResultCache(64, 2000, 40)));
+
+  /**
+   * Set on the main thread once OpenCV, the native library and the OCR engine are
+   * initialised, analysis is only attached to the camera after this point.
+   */
+  private boolean enginesReady = false;
+
+  /**
+   * Plate crops waiting for OCR, read earliest deadline first. Under load the crops from
+   * the oldest frames are shed so reads stay current.
+   */
+  private OcrScheduler ocrScheduler = new OcrScheduler(recogniser, 1, 4, OcrScheduler.ShedPolicy.KEEP_NEWEST);
+
+  /**
+   * Detection and OCR pipeline, the detectors are configured from the preferences
+   */
+  private AnalysisPipeline analysisPipeline = new AnalysisPipeline(detectorRegistry.create(DetectorRegistry.DEFAULT_DETECTOR), ocrScheduler);
+
+  /**
+   * Analysis workers shared by every frame stream
+   */
+  private StreamScheduler streamScheduler;
+
+  /**
+   * Source of live camera frames, created once the analysis use case is built.
+   * CameraX 1.0 can only bind one camera at a time so this is the only live stream,
+   * further streams (a second camera or a replay) are added to the same scheduler.
+   */
+  private CameraXFrameSource frameSource;
+
   /**
    * Camera Instance
    */
@@ -142,7 +270,7 @@ public class MainActivity extends AppCompatActivity {
   private ImageAnalysis imageAnalysis;
 
   /**
-   * Executor thread, used for background image processing
+   * Executor thread, hands camera frames to the stream scheduler
    */
   private Executor analysisExecutor = Executors.newSingleThreadExecutor();
 
@@ -163,6 +291,11 @@ public class MainActivity extends AppCompatActivity {
   private ImageButton scanButton;
   private TextView lastVNPTextView;
 
+  /**
+   * Applies the latest overlay and read to the views once per display frame
+   */
+  private ResultPublisher resultPublisher;
+
   /**
    * Handle the result of a permission request, this is the response of the users
    * interaction with the Allow/Deny dialog.
@@ -220,25 +353,251 @@ public class MainActivity extends AppCompatActivity {
      */
     vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
+    /**
+     * Select the detectors from the preferences and keep them in sync with any changes,
+     * V2 uses the parameters tuned for this class of device when a profile is installed
+     */
+    detectorRegistry.setParameters(DetectorProfiles.fromAssets(getAssets(), DetectorProfiles.deviceClass(this)));
+    preferences = PreferenceManager.getDefaultSharedPreferences(this);
+    preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
+    configureDetectors();
+    configureEvidenceCapture();
+    configureSlowFrameCapture();
+    uploadQueue = new UploadQueue(new ReadQueueDatabase(this));
+    uploadQueue.registerNetworkCallback((ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE));
+    configureUpload();
+    configureRecognitionServer(false);
+    analysisPipeline.setListener(this);
+    analysisPipeline.setCropFusion(new CropFusion(FUSED_CROPS, 3));
+    analysisPipeline.setPlateVerifier(PlateVerifier.fromAssets(getAssets()));
+    streamScheduler = new StreamScheduler(ANALYSIS_WORKERS);
+
     /**
      * Bind View components
      */
     bindViews();
 
+    /**
+     * Initialise the native libraries and OCR engine in the background
+     */
+    startEngines();
+
+    /**
+     * Start the camera provider while we wait for the engines and permissions
+     */
+    cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+
     /**
      * Request Permissions (Once granted notification is received we bind the camera)
      */
     ActivityCompat.requestPermissions(this, permissions, CAMERA_PERMISSION_REQUEST);
+  }
+
+  /**
+   * Initialise OpenCV, the native library and the OCR engine concurrently off the main thread,
+   * the camera is bound in parallel and analysis starts once both are ready.
+   */
+  private void startEngines() {
+    new StartupOrchestrator()
+        .add("opencv", () -> {
+          if (!OpenCVLoader.initDebug()) {
+            throw new IllegalStateException("Unable to load OpenCV");
+          }
+          System.loadLibrary("opencv_anpr");
+        })
+        .add("tesseract", () -> {
+          if (!tesseractAPI.init("eng", TessBaseAPI.OEM_LSTM_ONLY)) {
+            throw new IllegalStateException("Unable to initialise Tesseract");
+          }
+          tesseractAPI.configureForPlates();
+        })
+        .start(new StartupOrchestrator.Listener() {
+          @Override
+          public void onReady(long elapsedMillis) {
+            enginesReady = true;
+            attachAnalyzer();
+          }
+
+          @Override
+          public void onFailed(String task, Exception e) {
+            Toast.makeText(MainActivity.this, String.format("Unable to start %s", task), Toast.LENGTH_LONG).show();
+          }
+        });
+  }
+
+  /**
+   * Activity Destruction Handler
+   */
+  @Override
+  protected void onDestroy() {
+    preferences.unregisterOnSharedPreferenceChangeListener(preferenceListener);
+    if(frameSource != null) {
+      frameSource.stop();
+    }
+    streamScheduler.shutdown();
+
+    /**
+     * OCR workers hand reads to the upload queue, so they are stopped before it
+     */
+    ocrScheduler.shutdown();
+    if(evidenceWriter != null) {
+      evidenceWriter.shutdown();
+      evidenceWriter = null;
+    }
+    if(evidenceFlusher != null) {
+      evidenceFlusher.shutdown();
+      evidenceFlusher = null;
+    }
+    if(slowFrameRecorder != null) {
+      slowFrameRecorder.shutdown();
+      slowFrameRecorder = null;
+    }
 
     /**
-     * Initialise the Tesseract library
-     * @see https://tesseract-ocr.github.io/tessdoc/ImproveQuality#dictionaries-word-lists-and-patterns
+     * The engine is only freed once it has finished initialising, ending it while the startup
+     * thread is still inside init would free it underneath that thread
      */
-    tesseractAPI.init("eng", TessBaseAPI.OEM_LSTM_ONLY);
-    tesseractAPI.setVariable("tessedit_char_whitelist", " ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
-    tesseractAPI.setVariable("load_system_dawg", "0");
-    tesseractAPI.setVariable("load_freq_dawg", "0");
-    tesseractAPI.setPageSegMode(TessBaseAPI.PageSegMode.PSM_SINGLE_BLOCK);
+    if(enginesReady) {
+      tesseractAPI.end();
+    }
+    uploadQueue.unregisterNetworkCallback((ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE));
+    uploadQueue.shutdown();
+    resultPublisher.stop();
+    super.onDestroy();
+  }
+
+  /**
+   * Create the primary and shadow detectors from the current preferences, the camera
+   * keeps running and the analysis thread picks up the new instances on its next frame.
+   */
+  private void configureDetectors() {
+    String detectorKey = preferences.getString(SettingsActivity.PREF_DETECTOR, DetectorRegistry.DEFAULT_DETECTOR);
+    if(!detectorRegistry.contains(detectorKey)) {
+      detectorKey = DetectorRegistry.DEFAULT_DETECTOR;
+    }
+
+    String shadowKey = preferences.getString(SettingsActivity.PREF_SHADOW_DETECTOR, SettingsActivity.SHADOW_DETECTOR_OFF);
+    int sampleInterval = Integer.parseInt(preferences.getString(SettingsActivity.PREF_SHADOW_SAMPLE_INTERVAL, "10"));
+
+    ShadowDetector shadowDetector = detectorRegistry.contains(shadowKey)
+        ? new ShadowDetector(detectorKey, shadowKey, detectorRegistry.create(shadowKey), sampleInterval)
+        : null;
+    List<DetectionZone> zones = loadDetectionZones();
+    final String primaryKey = detectorKey;
+    analysisPipeline.setDetector(zones.isEmpty()
+        ? detectorRegistry.create(detectorKey)
+        : new ZonedDetector(() -> detectorRegistry.create(primaryKey), zones));
+    analysisPipeline.setShadowDetector(shadowDetector);
+
+    Log.i(TAG, String.format("Detector: %s, Shadow: %s, Zones: %d", detectorKey, shadowDetector != null ? shadowKey : "off", zones.size()));
+  }
+
+  /**
+   * Detection zones from the preferences, no zones when none are set or they cannot be read
+   */
+  private List<DetectionZone> loadDetectionZones() {
+    String text = preferences.getString(SettingsActivity.PREF_DETECTION_ZONES, "");
+    try {
+      return DetectionZone.parseAll(text);
+    } catch (IllegalArgumentException e) {
+      Log.w(TAG, String.format("Ignoring detection zones \"%s\": %s", text, e.getMessage()));
+      return new ArrayList<>();
+    }
+  }
+
+  /**
+   * Start or stop keeping the pre-trigger frame ring from the current preferences
+   */
+  private void configureEvidenceCapture() {
+    if(!preferences.getBoolean(SettingsActivity.PREF_EVIDENCE_CAPTURE, false)) {
+      analysisPipeline.setFrameRecorder(null);
+      analysisPipeline.setEvidenceWriter(null);
+      if(evidenceFlusher != null) {
+        evidenceFlusher.shutdown();
+        evidenceFlusher = null;
+      }
+      if(evidenceWriter != null) {
+        evidenceWriter.shutdown();
+        evidenceWriter = null;
+      }
+      return;
+    }
+
+    if(evidenceFlusher == null) {
+      evidenceFlusher = new EvidenceFlusher(getExternalFilesDir("evidence"));
+      analysisPipeline.setFrameRecorder(new FrameRingBuffer(EVIDENCE_PRE_TRIGGER_FRAMES, EVIDENCE_POST_TRIGGER_FRAMES, EVIDENCE_LATE_FRAMES, 2, evidenceFlusher));
+    }
+
+    if(evidenceWriter == null) {
+      evidenceWriter = new EvidenceWriter(getExternalFilesDir("evidence"), EvidenceWriter.Format.JPEG, 85, 1, 8, EvidenceWriter.DropPolicy.DROP_OLDEST);
+      analysisPipeline.setEvidenceWriter(evidenceWriter);
+    }
+  }
+
+  /**
+   * Replace the slow frame recorder with one for the current budget, or remove it when off
+   */
+  private void configureSlowFrameCapture() {
+    SlowFrameRecorder replaced = slowFrameRecorder;
+    slowFrameRecorder = null;
+
+    String budget = preferences.getString(SettingsActivity.PREF_SLOW_FRAME_BUDGET, "500");
+    if(!SettingsActivity.SLOW_FRAME_BUDGET_OFF.equals(budget)) {
+      slowFrameRecorder = new SlowFrameRecorder(getExternalFilesDir("slow-frames"), Long.parseLong(budget),
+          SLOW_FRAME_CAPTURES, preferences.getBoolean(SettingsActivity.PREF_SLOW_FRAME_SENTRY, false));
+    }
+
+    /**
+     * The pipeline stops using the old recorder before it is shut down
+     */
+    analysisPipeline.setSlowFrameRecorder(slowFrameRecorder);
+    if(replaced != null) {
+      replaced.shutdown();
+    }
+  }
+
+  /**
+   * Start or stop the recognition server from the preferences, it runs in its own foreground
+   * service and keeps running after the activity is closed until it is switched off
+   *
+   * @param restart restart a running server, so it listens on a changed port
+   */
+  private void configureRecognitionServer(boolean restart) {
+    boolean enabled = preferences.getBoolean(SettingsActivity.PREF_RECOGNITION_SERVER, false);
+    if(!enabled || restart) {
+      RecognitionService.stop(this);
+    }
+    if(!enabled) {
+      return;
+    }
+
+    int port = RecognitionService.DEFAULT_PORT;
+    String value = preferences.getString(SettingsActivity.PREF_RECOGNITION_SERVER_PORT, "").trim();
+    try {
+      port = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      Log.w(TAG, String.format("Invalid recognition server port %s, using %d", value, port));
+    }
+    RecognitionService.start(this, port);
+  }
+
+  /**
+   * Point the upload queue at the back office URL from the preferences, reads keep
+   * queueing on the device while no URL is set
+   */
+  private void configureUpload() {
+    String url = preferences.getString(SettingsActivity.PREF_UPLOAD_URL, "").trim();
+    if(url.isEmpty()) {
+      uploadQueue.setTransport(null);
+      return;
+    }
+
+    try {
+      uploadQueue.setTransport(new HttpBatchTransport(new URL(url)));
+    } catch (MalformedURLException e) {
+      Log.w(TAG, String.format("Invalid upload URL %s", url));
+      uploadQueue.setTransport(null);
+    }
   }
 
   /**
@@ -271,6 +630,8 @@ public class MainActivity extends AppCompatActivity {
     lastVNPTextView.setZ(100);
     lastVNPTextView.setText("------");
 
+    resultPublisher = new ResultPublisher(imageOverlayView, lastVNPTextView, vibrator);
+
     // Configure action support for legacy devices
     setSupportActionBar(toolbar);
 
@@ -294,29 +655,10 @@ public class MainActivity extends AppCompatActivity {
     return true;
   }
 
-  /**
-   * Occurs when the activity is resumed.
-   */
-  @Override
-  protected void onResume() {
-    super.onResume();
-    if (!OpenCVLoader.initDebug()) {
-      OpenCVLoader.initAsync(OpenCVLoader.OPENCV_VERSION, this, mLoaderCallback);
-    } else {
-      System.loadLibrary("opencv_anpr");
-      mLoaderCallback.onManagerConnected(LoaderCallbackInterface.SUCCESS);
-    }
-  }
-
   /**
    * Bind the camera
    */
   private void initialiseCamera() {
-    /**
-     * Initialize the provider instance
-     */
-    cameraProviderFuture = ProcessCameraProvider.getInstance(this);
-
     /**
      * Listen for provider initialisation success event
      */
@@ -352,6 +694,11 @@ public class MainActivity extends AppCompatActivity {
          */
         preview.setSurfaceProvider(previewView.createSurfaceProvider(camera.getCameraInfo()));
 
+        /**
+         * Start analysis if the engines finished initialising before the camera was bound
+         */
+        attachAnalyzer();
+
         /**
          * Attach event listener to the view finder to allow touch to focus
          */
@@ -395,9 +742,9 @@ public class MainActivity extends AppCompatActivity {
         .build();
 
     /**
-     * Connect the analyzer handler to the analysis pipeline.
+     * Frames from the use case feed the analysis pipeline once the engines are ready
      */
-    imageAnalysisUseCase.setAnalyzer(analysisExecutor, this::analyzeFrame);
+    frameSource = new CameraXFrameSource(imageAnalysisUseCase, analysisExecutor);
 
     /**
      * Return the use case
@@ -406,48 +753,30 @@ public class MainActivity extends AppCompatActivity {
   }
 
   /**
-   * Perform Analysis on the input frame (not running on UI thread)
+   * Connect the analyzer handler to the analysis pipeline once both the camera is bound
+   * and the engines are ready, whichever happens last (always called on the main thread).
    */
-  private void analyzeFrame(ImageProxy image) {
-    /**
-     * Perform Detection
-     */
-    try {
-      Mat result = detector.detect(image);
-
-      // Show Debug Frame
-      Mat debugMat = detector.getDebugView();
-      final Bitmap debugBitmap = Bitmap.createBitmap(debugMat.width(), debugMat.height(), Bitmap.Config.ARGB_8888);
-      org.opencv.android.Utils.matToBitmap(debugMat, debugBitmap);
-      debugMat.release();
-      runOnUiThread(() -> {
-        imageOverlayView.setImageBitmap(debugBitmap);
-        imageOverlayView.setVisibility(View.VISIBLE);
-      });
-
-      if(result != null && result.width() > 0 && result.height() > 0) {
-        final Bitmap bitmap1 = Bitmap.createBitmap(result.width(), result.height(), Bitmap.Config.ARGB_8888);
-        org.opencv.android.Utils.matToBitmap(result, bitmap1);
-        result.release();
-
-        tesseractAPI.setImage(bitmap1);
-        final String reg = tesseractAPI.getUTF8Text();
-        final int confidence = tesseractAPI.meanConfidence();
-        runOnUiThread(() -> {
-          if(confidence > 70 && reg.length() > 0) {
-            lastVNPTextView.setText(String.format("%s - %d", reg, confidence));
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-              vibrator.vibrate(VibrationEffect.createOneShot(250, VibrationEffect.DEFAULT_AMPLITUDE));
-            } else {
-              //deprecated in API 26
-              vibrator.vibrate(250);
-            }
-          }
-        });
-      }
-    } catch (Exception e) {
+  private void attachAnalyzer() {
+    if(enginesReady && frameSource != null) {
+      frameSource.start(streamScheduler.addStream("camera", 1, analysisPipeline));
     }
+  }
+
+  /**
+   * Hand the detector debug view to the overlay (not running on UI thread)
+   */
+  @Override
+  public void onDebugView(Mat debugMat) {
+    resultPublisher.publishDebugView(debugMat);
+  }
 
-    image.close();
+  /**
+   * Display a plate read by the analysis pipeline (OCR worker thread)
+   */
+  @Override
+  public void onRead(PlateRead read) {
+    EvidenceWriter evidenceWriter = this.evidenceWriter;
+    uploadQueue.enqueue(read, evidenceWriter != null ? evidenceWriter.getFileNames(read) : null);
+    resultPublisher.publishRead(read);
   }
 }
@@ -0,0 +1,174 @@
+package dev.robertpitt.anprX.activities.MainActivity;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import org.opencv.core.Mat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dev.robertpitt.anprX.reads.PlateRead;
+
+/**
+ * Publishes analysis results to the views at most once per display frame.
+ *
+ * Producers only ever replace the latest state held in atomic slots, nothing is queued on
+ * the main looper per result. The first publish after a drain schedules a Choreographer
+ * callback and the callback applies whatever is in the slots at that point, so the main
+ * thread does the same amount of work each second however fast frames are analysed, and
+ * results that are superseded before the next vsync are never drawn.
+ *
+ * Overlay bitmaps are recycled between three buffers: the one on screen, the one waiting in
+ * the slot and a spare the producer draws the next debug view into. A bitmap is only handed
+ * back as the spare once the overlay has moved on to a newer one.
+ *
+ * The vibrator fires once for each new registration. Reads arrive already confirmed by the
+ * vote over their plate track, so a single read is enough.
+ */
+public class ResultPublisher implements Choreographer.FrameCallback {
+  /**
+   * Length of the haptic pulse for a confirmed read
+   */
+  private static final long VIBRATION_MILLIS = 250;
+
+  private final Choreographer choreographer;
+  private final ImageView overlayView;
+  private final TextView readView;
+  private final Vibrator vibrator;
+
+  private final AtomicReference<Bitmap> pendingOverlay = new AtomicReference<>();
+  private final AtomicReference<Bitmap> spareOverlay = new AtomicReference<>();
+  private final AtomicReference<PlateRead> pendingRead = new AtomicReference<>();
+  private final AtomicBoolean pendingHaptic = new AtomicBoolean(false);
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private volatile boolean stopped = false;
+
+  /**
+   * Overlay bitmap on screen, main thread only
+   */
+  private Bitmap displayedOverlay;
+
+  /**
+   * Registration the vibrator last fired for, guarded by this
+   */
+  private String announcedRegistration;
+
+  /**
+   * Must be created on the main thread, the Choreographer belongs to the creating thread
+   */
+  public ResultPublisher(ImageView overlayView, TextView readView, Vibrator vibrator) {
+    this.choreographer = Choreographer.getInstance();
+    this.overlayView = overlayView;
+    this.readView = readView;
+    this.vibrator = vibrator;
+  }
+
+  /**
+   * Replace the overlay with the debug view (any thread), the Mat is copied before returning
+   */
+  public void publishDebugView(Mat debugView) {
+    if(stopped) {
+      return;
+    }
+
+    Bitmap bitmap = spareOverlay.getAndSet(null);
+    if(bitmap == null || bitmap.getWidth() != debugView.width() || bitmap.getHeight() != debugView.height()) {
+      bitmap = Bitmap.createBitmap(debugView.width(), debugView.height(), Bitmap.Config.ARGB_8888);
+    }
+    org.opencv.android.Utils.matToBitmap(debugView, bitmap);
+
+    // A bitmap that was never drawn can be drawn into again
+    Bitmap superseded = pendingOverlay.getAndSet(bitmap);
+    if(superseded != null) {
+      spareOverlay.set(superseded);
+    }
+    schedule();
+  }
+
+  /**
+   * Show the read (any thread), the vibrator fires unless the registration was just announced
+   */
+  public void publishRead(PlateRead read) {
+    if(stopped) {
+      return;
+    }
+
+    synchronized (this) {
+      String registration = read.getRegistration();
+      if(!registration.equals(announcedRegistration)) {
+        announcedRegistration = registration;
+        pendingHaptic.set(true);
+      }
+    }
+
+    pendingRead.set(read);
+    schedule();
+  }
+
+  /**
+   * Stop publishing, results published afterwards are dropped (main thread)
+   */
+  public void stop() {
+    stopped = true;
+    choreographer.removeFrameCallback(this);
+    pendingOverlay.set(null);
+    spareOverlay.set(null);
+    pendingRead.set(null);
+  }
+
+  /**
+   * Post a single frame callback until the next drain, callable from any thread
+   */
+  private void schedule() {
+    if(scheduled.compareAndSet(false, true)) {
+      choreographer.postFrameCallback(this);
+    }
+  }
+
+  /**
+   * Apply the latest state to the views (main thread, once per display frame)
+   */
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    // Cleared before draining so a result published during the drain schedules the next frame
+    scheduled.set(false);
+    if(stopped) {
+      return;
+    }
+
+    Bitmap overlay = pendingOverlay.getAndSet(null);
+    if(overlay != null) {
+      overlayView.setImageBitmap(overlay);
+      overlayView.setVisibility(View.VISIBLE);
+      if(displayedOverlay != null) {
+        spareOverlay.set(displayedOverlay);
+      }
+      displayedOverlay = overlay;
+    }
+
+    PlateRead read = pendingRead.getAndSet(null);
+    if(read != null) {
+      readView.setText(read.toString());
+    }
+
+    if(pendingHaptic.getAndSet(false)) {
+      vibrate();
+    }
+  }
+
+  private void vibrate() {
+    if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      vibrator.vibrate(VibrationEffect.createOneShot(VIBRATION_MILLIS, VibrationEffect.DEFAULT_AMPLITUDE));
+    } else {
+      //deprecated in API 26
+      vibrator.vibrate(VIBRATION_MILLIS);
+    }
+  }
+}
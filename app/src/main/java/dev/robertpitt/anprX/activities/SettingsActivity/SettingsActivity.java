@@ -9,6 +9,29 @@ import androidx.preference.PreferenceFragmentCompat;
 import dev.robertpitt.anprX.R;
 
 public class SettingsActivity extends AppCompatActivity {
+  /**
+   * Preference keys, these must match the keys used in root_preferences.xml
+   */
+  public static final String PREF_DETECTOR = "detector";
+  public static final String PREF_DETECTION_ZONES = "detection_zones";
+  public static final String PREF_SHADOW_DETECTOR = "shadow_detector";
+  public static final String PREF_SHADOW_SAMPLE_INTERVAL = "shadow_sample_interval";
+  public static final String PREF_EVIDENCE_CAPTURE = "evidence_capture";
+  public static final String PREF_UPLOAD_URL = "upload_url";
+  public static final String PREF_SLOW_FRAME_BUDGET = "slow_frame_budget";
+  public static final String PREF_SLOW_FRAME_SENTRY = "slow_frame_sentry";
+  public static final String PREF_RECOGNITION_SERVER = "recognition_server";
+  public static final String PREF_RECOGNITION_SERVER_PORT = "recognition_server_port";
+
+  /**
+   * Value of the shadow detector preference when shadow mode is disabled
+   */
+  public static final String SHADOW_DETECTOR_OFF = "off";
+
+  /**
+   * Value of the slow frame budget preference when slow frames are not captured
+   */
+  public static final String SLOW_FRAME_BUDGET_OFF = "off";
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
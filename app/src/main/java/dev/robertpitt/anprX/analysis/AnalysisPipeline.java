@@ -0,0 +1,423 @@
+package dev.robertpitt.anprX.analysis;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dev.robertpitt.anprX.evidence.EvidenceWriter;
+import dev.robertpitt.anprX.evidence.FrameRingBuffer;
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.frames.FrameSink;
+import dev.robertpitt.anprX.opencv.CropFusion;
+import dev.robertpitt.anprX.opencv.IDetector;
+import dev.robertpitt.anprX.opencv.MatTracker;
+import dev.robertpitt.anprX.opencv.PlateVerifier;
+import dev.robertpitt.anprX.opencv.ShadowDetector;
+import dev.robertpitt.anprX.reads.PlateRead;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+import dev.robertpitt.anprX.tesseract.ReadVoter;
+
+/**
+ * Detection and OCR for frames from any {@link dev.robertpitt.anprX.frames.FrameSource}, so the
+ * same pipeline runs against the live camera and against replayed recordings.
+ *
+ * Frames must be delivered one at a time, the detector is not thread safe. Plate crops are
+ * read asynchronously by an {@link OcrScheduler} so detection never waits on OCR.
+ *
+ * Every frame has a deadline measured from when it arrived. A frame that is already past its
+ * deadline when it reaches the pipeline is dropped, one past half of it skips the optional
+ * work (shadow detector and debug view), and its crop carries a later OCR deadline after
+ * which the scheduler discards it unread.
+ */
+public class AnalysisPipeline implements FrameSink, OcrScheduler.Callback {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::AnalysisPipeline";
+
+  /**
+   * Receives the results of the pipeline, called on the thread delivering the frames
+   */
+  public interface Listener {
+    /**
+     * Detector debug view for the frame, only valid for the duration of the call
+     */
+    void onDebugView(Mat debugView);
+
+    /**
+     * A plate was read from the frame with at least the minimum confidence, called on
+     * the OCR worker once per plate track
+     */
+    void onRead(PlateRead read);
+  }
+
+  /**
+   * Numberplate Localisation, swapped at runtime when the detector preference changes.
+   * Read once per frame so a swap takes effect on the next frame.
+   */
+  private volatile IDetector detector;
+
+  /**
+   * Optional candidate detector running on sampled frames next to the primary detector
+   */
+  private volatile ShadowDetector shadowDetector;
+
+  /**
+   * Detectors used for the previous frame (frame thread only), a swapped out detector is
+   * released on the next frame once it can no longer be in the middle of a detection
+   */
+  private IDetector previousDetector;
+  private ShadowDetector previousShadow;
+
+  /**
+   * Queue of crops waiting to be read, may be shared by several pipelines
+   */
+  private final OcrScheduler ocrScheduler;
+
+  /**
+   * Default time from a frame arriving to the start of its detection, and to its OCR result
+   */
+  public static final long DEFAULT_FRAME_DEADLINE_MILLIS = 250;
+  public static final long DEFAULT_OCR_DEADLINE_MILLIS = 750;
+
+  private volatile long frameDeadlineNanos = DEFAULT_FRAME_DEADLINE_MILLIS * 1000000L;
+  private volatile long ocrDeadlineNanos = DEFAULT_OCR_DEADLINE_MILLIS * 1000000L;
+
+  private volatile long staleFrames = 0;
+  private volatile long downgradedFrames = 0;
+
+  /**
+   * Minimum OCR confidence for a result to be reported as a read
+   */
+  private static final int MIN_READ_CONFIDENCE = 70;
+
+  /**
+   * Optional ring of recent frames, frozen as evidence whenever a plate is read
+   */
+  private volatile FrameRingBuffer frameRecorder;
+
+  /**
+   * Optional encoder saving the plate crop and frame of every read
+   */
+  private volatile EvidenceWriter evidenceWriter;
+
+  private volatile Listener listener;
+
+  /**
+   * Optional spool of frames that blow the time budget or throw
+   */
+  private volatile SlowFrameRecorder slowFrameRecorder;
+
+  /**
+   * Optional fusion of the crops of a plate across frames, so OCR runs once per few frames
+   */
+  private volatile CropFusion cropFusion;
+
+  /**
+   * Optional check that a candidate looks like a plate before it is read
+   */
+  private volatile PlateVerifier plateVerifier;
+
+  /**
+   * Maximum number of plate tracks whose OCR results are kept for voting
+   */
+  private static final int MAX_VOTING_TRACKS = 8;
+
+  /**
+   * OCR results of a plate track and whether its read has been reported
+   */
+  private static class VotingTrack {
+    final ReadVoter voter = new ReadVoter();
+    boolean reported = false;
+  }
+
+  /**
+   * Recent plate tracks, voted into one read per track (OCR workers only)
+   */
+  private final Map<Long, VotingTrack> tracks = new LinkedHashMap<Long, VotingTrack>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, VotingTrack> eldest) {
+      return size() > MAX_VOTING_TRACKS;
+    }
+  };
+
+  /**
+   * Stage timings of the frame being analysed
+   */
+  private final FrameTimings timings = new FrameTimings();
+
+  public AnalysisPipeline(IDetector detector, OcrScheduler ocrScheduler) {
+    this.detector = detector;
+    this.ocrScheduler = ocrScheduler;
+  }
+
+  /**
+   * @param frameDeadlineMillis time after arrival by which detection must start
+   * @param ocrDeadlineMillis time after arrival by which the plate must have been read
+   */
+  public void setDeadlines(long frameDeadlineMillis, long ocrDeadlineMillis) {
+    this.frameDeadlineNanos = frameDeadlineMillis * 1000000L;
+    this.ocrDeadlineNanos = ocrDeadlineMillis * 1000000L;
+  }
+
+  /**
+   * Frames dropped because they reached the pipeline after their deadline
+   */
+  public long getStaleFrameCount() {
+    return staleFrames;
+  }
+
+  /**
+   * Frames that skipped the optional work because they were running late
+   */
+  public long getDowngradedFrameCount() {
+    return downgradedFrames;
+  }
+
+  public void setDetector(IDetector detector) {
+    this.detector = detector;
+  }
+
+  public void setShadowDetector(ShadowDetector shadowDetector) {
+    this.shadowDetector = shadowDetector;
+  }
+
+  public void setFrameRecorder(FrameRingBuffer frameRecorder) {
+    this.frameRecorder = frameRecorder;
+  }
+
+  public void setEvidenceWriter(EvidenceWriter evidenceWriter) {
+    this.evidenceWriter = evidenceWriter;
+  }
+
+  /**
+   * Fuse the crops of each plate before OCR, null reads every crop on its own
+   */
+  public void setCropFusion(CropFusion cropFusion) {
+    this.cropFusion = cropFusion;
+  }
+
+  /**
+   * Verify candidates before they are read, null reads every candidate
+   */
+  public void setPlateVerifier(PlateVerifier plateVerifier) {
+    this.plateVerifier = plateVerifier;
+  }
+
+  public void setSlowFrameRecorder(SlowFrameRecorder slowFrameRecorder) {
+    this.slowFrameRecorder = slowFrameRecorder;
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void onFrame(Frame frame) {
+    IDetector activeDetector = detector;
+    ShadowDetector activeShadow = shadowDetector;
+    Listener activeListener = listener;
+    FrameRingBuffer activeRecorder = frameRecorder;
+    SlowFrameRecorder activeSlowFrameRecorder = slowFrameRecorder;
+    Exception failure = null;
+    Mat input = null;
+    releaseReplaced(activeDetector, activeShadow);
+    MatTracker.beginFrame();
+    timings.begin();
+    try {
+      if(activeRecorder != null) {
+        activeRecorder.record(frame);
+      }
+      timings.mark(FrameTimings.RECORD);
+
+      /**
+       * Drop the frame if it waited too long to be worth detecting
+       */
+      long age = System.nanoTime() - frame.getArrivalNanos();
+      if(age > frameDeadlineNanos) {
+        staleFrames++;
+        return;
+      }
+      boolean late = age > frameDeadlineNanos / 2;
+      if(late) {
+        downgradedFrames++;
+      }
+
+      /**
+       * The frame stays in the sensor orientation, detectors rotate the plate crop and region.
+       * Detectors that only look at the luma are given the Y plane, skipping the conversion.
+       */
+      boolean luma = activeDetector.acceptsLuma();
+      input = luma ? frame.toLuma() : frame.toRGB();
+      int rotationDegrees = frame.getRotationDegrees();
+      timings.mark(FrameTimings.CONVERT);
+
+      Mat plate = activeDetector.detect(input, rotationDegrees);
+      timings.mark(FrameTimings.DETECT);
+
+      /**
+       * Run the shadow detector against the same frame on sampled frames
+       */
+      if(!late && activeShadow != null && activeShadow.shouldSample()) {
+        Mat shadowInput = luma && !activeShadow.acceptsLuma() ? frame.toRGB() : input;
+        activeShadow.compare(shadowInput, rotationDegrees, activeDetector.getPlateRegion(), timings.getStageNanos(FrameTimings.DETECT));
+        if(shadowInput != input) {
+          shadowInput.release();
+        }
+      }
+      timings.mark(FrameTimings.SHADOW);
+
+      /**
+       * Debug view is owned by the detector, valid until the next frame
+       */
+      Mat debugMat = activeDetector.getDebugView();
+      if(!late && activeListener != null && debugMat != null && !debugMat.empty()) {
+        activeListener.onDebugView(debugMat);
+      }
+      timings.mark(FrameTimings.DEBUG_VIEW);
+
+      /**
+       * Hand a copy of the crop to the OCR queue, with the frame if evidence is being written.
+       * Larger crops are closer plates and more likely to read, so they are kept under load.
+       * With fusion enabled the crops of a plate are collected and only the fused crop is read.
+       */
+      boolean hasPlate = plate != null && plate.width() > 0 && plate.height() > 0;
+
+      /**
+       * Candidates that do not look like plates are treated as no plate, saving an OCR call
+       */
+      PlateVerifier activeVerifier = plateVerifier;
+      if(hasPlate && activeVerifier != null && !activeVerifier.verify(plate)) {
+        hasPlate = false;
+      }
+      timings.mark(FrameTimings.VERIFY);
+
+      CropFusion activeFusion = cropFusion;
+      if(activeFusion != null) {
+        CropFusion.Result fused = hasPlate
+            ? activeFusion.add(plate, evidenceWriter != null ? toContext(frame, input, luma) : null, rotationDegrees,
+                activeDetector.getPlateRegion(), frame.getTimestampNanos(), frame.getArrivalNanos())
+            : activeFusion.miss();
+        if(fused != null) {
+          ocrScheduler.submit(new OcrScheduler.Job(
+              fused.image,
+              fused.context,
+              fused.contextRotationDegrees,
+              fused.frameTimestampNanos,
+              fused.arrivalNanos,
+              fused.arrivalNanos + ocrDeadlineNanos,
+              fused.image.total() * fused.crops,
+              this,
+              fused.trackId));
+        }
+      } else if(hasPlate) {
+        ocrScheduler.submit(new OcrScheduler.Job(
+            plate.clone(),
+            evidenceWriter != null ? toContext(frame, input, luma) : null,
+            rotationDegrees,
+            frame.getTimestampNanos(),
+            frame.getArrivalNanos(),
+            frame.getArrivalNanos() + ocrDeadlineNanos,
+            plate.total(),
+            this,
+            -1));
+      }
+      timings.mark(FrameTimings.SUBMIT);
+    } catch (Exception e) {
+      Log.e(TAG, "Frame analysis failed", e);
+      failure = e;
+    } finally {
+      timings.end();
+      if(activeSlowFrameRecorder != null && activeSlowFrameRecorder.shouldCapture(timings, failure)) {
+        activeSlowFrameRecorder.capture(frame, timings, activeDetector.getClass().getSimpleName(), failure);
+      }
+      if(input != null) {
+        input.release();
+      }
+      MatTracker.endFrame();
+      frame.close();
+    }
+  }
+
+  /**
+   * Colour copy of the frame kept as evidence of a read, only converted for frames with a plate
+   * when the detector was given the luma
+   */
+  private static Mat toContext(Frame frame, Mat input, boolean luma) {
+    return luma ? frame.toRGB() : input.clone();
+  }
+
+  /**
+   * Free the working memory of detectors that have been swapped out since the last frame
+   */
+  private void releaseReplaced(IDetector activeDetector, ShadowDetector activeShadow) {
+    if(previousDetector != null && previousDetector != activeDetector) {
+      previousDetector.release();
+    }
+    previousDetector = activeDetector;
+
+    if(previousShadow != null && previousShadow != activeShadow) {
+      previousShadow.release();
+    }
+    previousShadow = activeShadow;
+  }
+
+  /**
+   * Report a read once its crop has been through OCR (OCR worker thread)
+   */
+  @Override
+  public void onRecognised(OcrScheduler.Job job, OcrResult result) {
+    /**
+     * Vote the result with the earlier results of the same plate
+     */
+    if(job.getTrackId() >= 0) {
+      synchronized (tracks) {
+        VotingTrack track = tracks.get(job.getTrackId());
+        if(track == null) {
+          track = new VotingTrack();
+          tracks.put(job.getTrackId(), track);
+        }
+
+        /**
+         * A track is reported once, the first time its vote is confident enough. Later
+         * batches of the same plate would only repeat the read as a new one, uploading and
+         * writing evidence for it again.
+         */
+        if(track.reported) {
+          return;
+        }
+        track.voter.add(result);
+        result = track.voter.getResult();
+        if(result.getConfidence() <= MIN_READ_CONFIDENCE || result.getText().length() == 0) {
+          return;
+        }
+        track.reported = true;
+      }
+    }
+
+    if(result.getConfidence() <= MIN_READ_CONFIDENCE || result.getText().length() == 0) {
+      return;
+    }
+
+    PlateRead read = PlateRead.create(result.getText(), result.getConfidence(), job.getFrameTimestampNanos());
+
+    FrameRingBuffer activeRecorder = frameRecorder;
+    if(activeRecorder != null) {
+      activeRecorder.trigger(read);
+    }
+
+    EvidenceWriter activeWriter = evidenceWriter;
+    if(activeWriter != null) {
+      job.detach();
+      activeWriter.submit(read, job.getPlate(), job.getContext(), job.getRotationDegrees());
+    }
+
+    Listener activeListener = listener;
+    if(activeListener != null) {
+      activeListener.onRead(read);
+    }
+  }
+}
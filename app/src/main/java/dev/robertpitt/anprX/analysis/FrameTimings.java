@@ -0,0 +1,89 @@
+package dev.robertpitt.anprX.analysis;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Time spent in each stage of the analysis of a single frame, reused from frame to frame.
+ */
+public class FrameTimings {
+  public static final int RECORD = 0;
+  public static final int CONVERT = 1;
+  public static final int DETECT = 2;
+  public static final int SHADOW = 3;
+  public static final int DEBUG_VIEW = 4;
+  public static final int SUBMIT = 5;
+  public static final int VERIFY = 6;
+
+  private static final String[] STAGE_NAMES = {"record", "convert", "detect", "shadow", "debugView", "submit", "verify"};
+
+  private final long[] stageNanos = new long[STAGE_NAMES.length];
+  private long startNanos;
+  private long lastNanos;
+
+  /**
+   * Start timing a new frame
+   */
+  public void begin() {
+    for(int i = 0; i < stageNanos.length; i++) {
+      stageNanos[i] = 0;
+    }
+    startNanos = lastNanos = System.nanoTime();
+  }
+
+  /**
+   * Attribute the time since the previous mark to the stage
+   */
+  public void mark(int stage) {
+    long now = System.nanoTime();
+    stageNanos[stage] += now - lastNanos;
+    lastNanos = now;
+  }
+
+  /**
+   * Stop the clock, time since the last mark is left unattributed
+   */
+  public void end() {
+    lastNanos = System.nanoTime();
+  }
+
+  public long getStageNanos(int stage) {
+    return stageNanos[stage];
+  }
+
+  public long getTotalNanos() {
+    return lastNanos - startNanos;
+  }
+
+  /**
+   * Copy the timings of another frame, so they can outlive it
+   */
+  public void copyFrom(FrameTimings other) {
+    System.arraycopy(other.stageNanos, 0, stageNanos, 0, stageNanos.length);
+    startNanos = other.startNanos;
+    lastNanos = other.lastNanos;
+  }
+
+  /**
+   * Stage timings in milliseconds
+   */
+  public JSONObject toJson() throws JSONException {
+    JSONObject json = new JSONObject();
+    for(int i = 0; i < stageNanos.length; i++) {
+      json.put(STAGE_NAMES[i], stageNanos[i] / 1e6);
+    }
+    json.put("total", getTotalNanos() / 1e6);
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(String.format(Locale.UK, "total=%.1fms", getTotalNanos() / 1e6));
+    for(int i = 0; i < stageNanos.length; i++) {
+      builder.append(String.format(Locale.UK, " %s=%.1fms", STAGE_NAMES[i], stageNanos[i] / 1e6));
+    }
+    return builder.toString();
+  }
+}
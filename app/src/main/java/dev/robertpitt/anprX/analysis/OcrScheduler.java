@@ -0,0 +1,341 @@
+package dev.robertpitt.anprX.analysis;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import dev.robertpitt.anprX.tesseract.IRecogniser;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+
+/**
+ * Earliest deadline first queue of plate crops waiting for OCR.
+ *
+ * Every crop carries the time its frame arrived and a deadline. Workers always take the crop
+ * closest to its deadline and discard crops whose deadline has already passed without reading
+ * them, so a burst of plates can never build up a backlog of reads that are seconds old. The
+ * queue is bounded, when it is full the shed policy picks which crop is discarded to make room.
+ */
+public class OcrScheduler {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::OcrScheduler";
+
+  /**
+   * Number of completed jobs between each summary written to the log
+   */
+  private static final int LOG_INTERVAL = 100;
+
+  public enum ShedPolicy {
+    /**
+     * Discard the crop from the oldest frame
+     */
+    KEEP_NEWEST,
+
+    /**
+     * Discard the crop with the lowest quality score
+     */
+    KEEP_BEST
+  }
+
+  /**
+   * Receives the OCR result of a job, called on the OCR worker
+   */
+  public interface Callback {
+    void onRecognised(Job job, OcrResult result);
+  }
+
+  /**
+   * A plate crop waiting to be read, the job owns its Mats and releases them once done
+   */
+  public static class Job {
+    private final Mat plate;
+    private final Mat context;
+    private final int rotationDegrees;
+    private final long frameTimestampNanos;
+    private final long arrivalNanos;
+    private final long deadlineNanos;
+    private final double quality;
+    private final Callback callback;
+    private final long trackId;
+    private boolean detached = false;
+
+    /**
+     * @param plate plate crop, owned by the job
+     * @param context frame the plate came from, owned by the job, may be null
+     * @param rotationDegrees clockwise rotation that makes the context upright
+     * @param frameTimestampNanos capture timestamp of the frame, in the source time base
+     * @param arrivalNanos {@link System#nanoTime()} the frame arrived
+     * @param deadlineNanos {@link System#nanoTime()} after which the crop is not worth reading
+     * @param quality higher is better, used by {@link ShedPolicy#KEEP_BEST}
+     * @param trackId plate track the crop belongs to, or -1
+     */
+    public Job(Mat plate, Mat context, int rotationDegrees, long frameTimestampNanos, long arrivalNanos, long deadlineNanos, double quality, Callback callback, long trackId) {
+      this.plate = plate;
+      this.context = context;
+      this.rotationDegrees = rotationDegrees;
+      this.frameTimestampNanos = frameTimestampNanos;
+      this.arrivalNanos = arrivalNanos;
+      this.deadlineNanos = deadlineNanos;
+      this.quality = quality;
+      this.callback = callback;
+      this.trackId = trackId;
+    }
+
+    public Mat getPlate() {
+      return plate;
+    }
+
+    public Mat getContext() {
+      return context;
+    }
+
+    public int getRotationDegrees() {
+      return rotationDegrees;
+    }
+
+    public long getFrameTimestampNanos() {
+      return frameTimestampNanos;
+    }
+
+    public long getArrivalNanos() {
+      return arrivalNanos;
+    }
+
+    public long getDeadlineNanos() {
+      return deadlineNanos;
+    }
+
+    public long getTrackId() {
+      return trackId;
+    }
+
+    /**
+     * Hand the Mats over to the caller, who becomes responsible for releasing them. Only valid
+     * from {@link Callback#onRecognised}, the job no longer releases them once it returns.
+     */
+    public void detach() {
+      detached = true;
+    }
+
+    void release() {
+      if(detached) {
+        return;
+      }
+      plate.release();
+      if(context != null) {
+        context.release();
+      }
+    }
+  }
+
+  private final IRecogniser recogniser;
+  private final int capacity;
+  private final ShedPolicy policy;
+  private final PriorityQueue<Job> queue;
+  private final Thread[] workers;
+  private boolean shutdown = false;
+
+  private long submitted = 0;
+  private long completed = 0;
+  private long shed = 0;
+  private long expired = 0;
+  private long timedOut = 0;
+  private long latencyNanos = 0;
+  private long maxLatencyNanos = 0;
+
+  /**
+   * @param recogniser shared by every worker, use a {@link dev.robertpitt.anprX.tesseract.RecogniserPool}
+   *                   when there is more than one
+   * @param workers number of OCR threads
+   * @param capacity maximum number of crops waiting
+   */
+  public OcrScheduler(IRecogniser recogniser, int workers, int capacity, ShedPolicy policy) {
+    this.recogniser = recogniser;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.queue = new PriorityQueue<>(capacity, new Comparator<Job>() {
+      @Override
+      public int compare(Job a, Job b) {
+        return Long.compare(a.deadlineNanos, b.deadlineNanos);
+      }
+    });
+
+    this.workers = new Thread[workers];
+    for(int i = 0; i < workers; i++) {
+      this.workers[i] = new Thread(this::work, String.format(Locale.UK, "anprx-ocr-%d", i));
+      this.workers[i].start();
+    }
+  }
+
+  /**
+   * Queue a crop for OCR, when the queue is full either this job or a queued one is shed
+   */
+  public synchronized void submit(Job job) {
+    submitted++;
+    if(shutdown) {
+      job.release();
+      return;
+    }
+
+    if(queue.size() >= capacity) {
+      Job victim = job;
+      for(Job queued : queue) {
+        if(isWorse(queued, victim)) {
+          victim = queued;
+        }
+      }
+
+      shed++;
+      if(victim == job) {
+        job.release();
+        return;
+      }
+      queue.remove(victim);
+      victim.release();
+    }
+
+    queue.add(job);
+    notifyAll();
+  }
+
+  /**
+   * True when a should be shed in preference to b
+   */
+  private boolean isWorse(Job a, Job b) {
+    if(policy == ShedPolicy.KEEP_BEST && a.quality != b.quality) {
+      return a.quality < b.quality;
+    }
+    return a.arrivalNanos < b.arrivalNanos;
+  }
+
+  public synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Crops discarded because the queue was full
+   */
+  public synchronized long getShedCount() {
+    return shed;
+  }
+
+  /**
+   * Crops discarded because their deadline passed before a worker was free
+   */
+  public synchronized long getExpiredCount() {
+    return expired;
+  }
+
+  /**
+   * Crops whose read was cancelled for running past its time budget
+   */
+  public synchronized long getTimedOutCount() {
+    return timedOut;
+  }
+
+  /**
+   * Mean time from the frame arriving to its OCR result, in milliseconds
+   */
+  public synchronized double getMeanLatencyMillis() {
+    return completed == 0 ? 0 : latencyNanos / (completed * 1e6);
+  }
+
+  public synchronized double getMaxLatencyMillis() {
+    return maxLatencyNanos / 1e6;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(Locale.UK, "queue=%d submitted=%d completed=%d shed=%d expired=%d timed out=%d latency=%.1fms (max %.1fms)",
+        queue.size(), submitted, completed, shed, expired, timedOut, getMeanLatencyMillis(), getMaxLatencyMillis());
+  }
+
+  /**
+   * Stop the workers, queued crops are discarded
+   */
+  public void shutdown() {
+    synchronized (this) {
+      shutdown = true;
+      Iterator<Job> iterator = queue.iterator();
+      while(iterator.hasNext()) {
+        iterator.next().release();
+        iterator.remove();
+      }
+      notifyAll();
+    }
+
+    for(Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Next job that can still meet its deadline, expired jobs are discarded on the way
+   */
+  private synchronized Job take() throws InterruptedException {
+    while(!shutdown) {
+      Job job = queue.poll();
+      if(job == null) {
+        wait();
+        continue;
+      }
+
+      if(System.nanoTime() > job.deadlineNanos) {
+        expired++;
+        job.release();
+        continue;
+      }
+      return job;
+    }
+    return null;
+  }
+
+  private void work() {
+    while(true) {
+      Job job;
+      try {
+        job = take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if(job == null) {
+        return;
+      }
+
+      boolean cancelled = false;
+      try {
+        OcrResult result = recogniser.recognise(job.plate);
+        cancelled = result.isTimedOut();
+        job.callback.onRecognised(job, result);
+      } catch (RuntimeException e) {
+        Log.e(TAG, "OCR job failed", e);
+      } finally {
+        job.release();
+      }
+
+      long latency = System.nanoTime() - job.arrivalNanos;
+      synchronized (this) {
+        completed++;
+        if(cancelled) {
+          timedOut++;
+        }
+        latencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        if(completed % LOG_INTERVAL == 0) {
+          Log.i(TAG, toString());
+        }
+      }
+    }
+  }
+}
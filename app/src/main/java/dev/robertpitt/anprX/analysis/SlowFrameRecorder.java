@@ -0,0 +1,231 @@
+package dev.robertpitt.anprX.analysis;
+
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.frames.YuvDump;
+import io.sentry.core.Sentry;
+import io.sentry.core.SentryEvent;
+import io.sentry.core.SentryLevel;
+import io.sentry.core.protocol.Message;
+
+/**
+ * Captures the input of frames that take longer than the budget to analyse, or that throw,
+ * so pathological inputs can be reproduced later.
+ *
+ * Each capture is a single frame greyscale {@link YuvDump} (replayable through any detector
+ * with {@link dev.robertpitt.anprX.frames.YuvDumpFrameSource}) next to a JSON file with the
+ * stage timings, detector and exception. The luma is copied into a preallocated buffer on the
+ * analysis thread and written on a background thread, only one capture is in flight at a time
+ * and the spool keeps the newest captures up to its limit.
+ */
+public class SlowFrameRecorder {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::SlowFrameRecorder";
+
+  private final File directory;
+  private final long budgetNanos;
+  private final int maxCaptures;
+  private final boolean reportToSentry;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    runnable.run();
+  }, "anprx-slow-frames"));
+
+  /**
+   * Capture state, reused while no capture is in flight
+   */
+  private final AtomicBoolean busy = new AtomicBoolean(false);
+  private final FrameTimings timings = new FrameTimings();
+  private ByteBuffer luma;
+
+  private volatile long captured = 0;
+  private volatile long skipped = 0;
+
+  /**
+   * @param directory spool directory
+   * @param budgetMillis frames taking longer than this are captured
+   * @param maxCaptures number of captures kept in the spool, the oldest are deleted
+   * @param reportToSentry also send a summary of each capture to Sentry
+   */
+  public SlowFrameRecorder(File directory, long budgetMillis, int maxCaptures, boolean reportToSentry) {
+    this.directory = directory;
+    this.budgetNanos = budgetMillis * 1000000L;
+    this.maxCaptures = maxCaptures;
+    this.reportToSentry = reportToSentry;
+  }
+
+  /**
+   * True when the frame blew the budget or failed
+   */
+  public boolean shouldCapture(FrameTimings frameTimings, Exception failure) {
+    return failure != null || frameTimings.getTotalNanos() > budgetNanos;
+  }
+
+  /**
+   * Snapshot the frame and its timings, must be called before the frame is closed.
+   *
+   * @param detector name of the detector that processed the frame
+   */
+  public void capture(Frame frame, FrameTimings frameTimings, String detector, Exception failure) {
+    if(!busy.compareAndSet(false, true)) {
+      skipped++;
+      return;
+    }
+
+    int size = frame.getWidth() * frame.getHeight();
+    if(luma == null || luma.capacity() != size) {
+      luma = ByteBuffer.allocateDirect(size);
+    }
+    luma.clear();
+    frame.copyLumaTo(luma);
+    luma.flip();
+    timings.copyFrom(frameTimings);
+
+    final int width = frame.getWidth();
+    final int height = frame.getHeight();
+    final int rotationDegrees = frame.getRotationDegrees();
+    final long timestampNanos = frame.getTimestampNanos();
+
+    /**
+     * The analysis thread can still hold a recorder that has just been replaced and shut down,
+     * the capture is dropped rather than throwing into the pipeline's cleanup
+     */
+    try {
+      executor.execute(() -> {
+        try {
+          write(width, height, rotationDegrees, timestampNanos, detector, failure);
+        } catch (IOException | JSONException e) {
+          Log.e(TAG, "Unable to write slow frame", e);
+        } finally {
+          busy.set(false);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      skipped++;
+      busy.set(false);
+    }
+  }
+
+  public long getCapturedCount() {
+    return captured;
+  }
+
+  /**
+   * Slow frames not captured because the previous capture was still being written
+   */
+  public long getSkippedCount() {
+    return skipped;
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void write(int width, int height, int rotationDegrees, long timestampNanos, String detector, Exception failure) throws IOException, JSONException {
+    if(!directory.exists() && !directory.mkdirs()) {
+      throw new IOException(String.format("Unable to create %s", directory));
+    }
+
+    String name = String.format(Locale.UK, "slow-%d", System.currentTimeMillis());
+    File dump = new File(directory, name + ".yuv");
+    YuvDump.Writer writer = new YuvDump.Writer(dump, YuvDump.FORMAT_GREY, width, height);
+    try {
+      writer.write(luma, timestampNanos, rotationDegrees);
+    } finally {
+      writer.close();
+    }
+
+    JSONObject metadata = new JSONObject()
+        .put("frame", dump.getName())
+        .put("detector", detector)
+        .put("width", width)
+        .put("height", height)
+        .put("rotationDegrees", rotationDegrees)
+        .put("timestampNanos", timestampNanos)
+        .put("budgetMillis", budgetNanos / 1e6)
+        .put("timings", timings.toJson())
+        .put("exception", failure != null ? stackTrace(failure) : JSONObject.NULL);
+
+    OutputStream out = new FileOutputStream(new File(directory, name + ".json"));
+    try {
+      out.write(metadata.toString(2).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+
+    captured++;
+    Log.w(TAG, String.format("Captured %s: %s", name, timings));
+    trimSpool();
+
+    if(reportToSentry) {
+      report(name, detector, failure);
+    }
+  }
+
+  /**
+   * Delete the oldest captures beyond the spool limit
+   */
+  private void trimSpool() {
+    File[] dumps = directory.listFiles((dir, file) -> file.startsWith("slow-") && file.endsWith(".yuv"));
+    if(dumps == null || dumps.length <= maxCaptures) {
+      return;
+    }
+
+    Arrays.sort(dumps, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    for(int i = 0; i < dumps.length - maxCaptures; i++) {
+      String base = dumps[i].getName().substring(0, dumps[i].getName().length() - 4);
+      dumps[i].delete();
+      new File(directory, base + ".json").delete();
+    }
+  }
+
+  /**
+   * Send a summary through the Sentry client configured by the application, the frame
+   * itself stays on the device
+   */
+  private void report(String name, String detector, Exception failure) {
+    SentryEvent event = failure != null ? new SentryEvent(failure) : new SentryEvent();
+    Message message = new Message();
+    message.setFormatted(String.format(Locale.UK, "Slow frame: %.1fms (budget %.1fms)", timings.getTotalNanos() / 1e6, budgetNanos / 1e6));
+    event.setMessage(message);
+    event.setLevel(failure != null ? SentryLevel.ERROR : SentryLevel.WARNING);
+    event.setTag("detector", detector);
+    event.setExtra("capture", name);
+    event.setExtra("timings", timings.toString());
+    Sentry.captureEvent(event);
+  }
+
+  private static String stackTrace(Throwable throwable) {
+    StringWriter writer = new StringWriter();
+    throwable.printStackTrace(new PrintWriter(writer));
+    return writer.toString();
+  }
+}
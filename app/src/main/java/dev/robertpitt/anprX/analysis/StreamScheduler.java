@@ -0,0 +1,279 @@
+package dev.robertpitt.anprX.analysis;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.frames.FrameSink;
+
+/**
+ * Runs several frame streams (front and rear cameras, replayed recordings) on one shared pool
+ * of analysis workers.
+ *
+ * Each stream keeps its own sink, normally an {@link AnalysisPipeline} with its own detector,
+ * and is only ever processed by one worker at a time. A stream holds at most one pending
+ * frame, a newer frame replaces it, so a stream that produces faster than it is served drops
+ * its own stale frames rather than queueing. Workers pick the ready stream with the lowest
+ * virtual time (stride scheduling), every frame processed advances a stream's virtual time in
+ * inverse proportion to its weight, so a busy stream can never starve the others and a
+ * weight 2 stream gets twice the share of a weight 1 stream when both are busy.
+ */
+public class StreamScheduler {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::StreamScheduler";
+
+  /**
+   * Virtual time added per frame for a stream of weight 1
+   */
+  private static final long STRIDE = 1 << 20;
+
+  /**
+   * Number of processed frames between each stream summary written to the log
+   */
+  private static final int LOG_INTERVAL = 300;
+
+  /**
+   * A single stream of frames, frames delivered to it are queued for the shared workers
+   */
+  public class Stream implements FrameSink {
+    private final String name;
+    private final int weight;
+    private final FrameSink sink;
+    private final long createdAtNanos = System.nanoTime();
+
+    /**
+     * Scheduling state, guarded by the scheduler
+     */
+    private Frame pending;
+    private boolean running = false;
+    private long pass = 0;
+
+    private long received = 0;
+    private long processed = 0;
+    private long dropped = 0;
+    private long busyNanos = 0;
+
+    Stream(String name, int weight, FrameSink sink) {
+      this.name = name;
+      this.weight = weight;
+      this.sink = sink;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+      offer(this, frame);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getWeight() {
+      return weight;
+    }
+
+    public long getReceivedCount() {
+      synchronized (StreamScheduler.this) {
+        return received;
+      }
+    }
+
+    public long getProcessedCount() {
+      synchronized (StreamScheduler.this) {
+        return processed;
+      }
+    }
+
+    /**
+     * Frames replaced by a newer frame before a worker was free
+     */
+    public long getDroppedCount() {
+      synchronized (StreamScheduler.this) {
+        return dropped;
+      }
+    }
+
+    /**
+     * Frames processed per second since the stream was added
+     */
+    public double getFramesPerSecond() {
+      synchronized (StreamScheduler.this) {
+        return processed / ((System.nanoTime() - createdAtNanos) / 1e9);
+      }
+    }
+
+    public double getMeanProcessingMillis() {
+      synchronized (StreamScheduler.this) {
+        return processed == 0 ? 0 : busyNanos / (processed * 1e6);
+      }
+    }
+
+    @Override
+    public String toString() {
+      synchronized (StreamScheduler.this) {
+        return String.format(Locale.UK, "%s (weight %d): received=%d processed=%d dropped=%d fps=%.1f mean=%.1fms",
+            name, weight, received, processed, dropped, getFramesPerSecond(), getMeanProcessingMillis());
+      }
+    }
+  }
+
+  private final List<Stream> streams = new ArrayList<>();
+  private final Thread[] workers;
+  private boolean shutdown = false;
+
+  /**
+   * Virtual time of the most recently started frame, idle streams rejoin from here so they
+   * cannot bank credit while idle
+   */
+  private long virtualTime = 0;
+
+  /**
+   * @param workers number of analysis threads shared by every stream
+   */
+  public StreamScheduler(int workers) {
+    this.workers = new Thread[workers];
+    for(int i = 0; i < workers; i++) {
+      this.workers[i] = new Thread(this::work, String.format(Locale.UK, "anprx-analysis-%d", i));
+      this.workers[i].start();
+    }
+  }
+
+  /**
+   * Add a stream, frames delivered to the returned sink are analysed by the given sink
+   *
+   * @param weight share of the workers relative to the other streams, at least 1
+   */
+  public synchronized Stream addStream(String name, int weight, FrameSink sink) {
+    Stream stream = new Stream(name, Math.max(1, weight), sink);
+    stream.pass = virtualTime;
+    streams.add(stream);
+    return stream;
+  }
+
+  /**
+   * Remove a stream, a pending frame is closed and a frame being processed is left to finish
+   */
+  public synchronized void removeStream(Stream stream) {
+    streams.remove(stream);
+    if(stream.pending != null) {
+      stream.pending.close();
+      stream.pending = null;
+    }
+  }
+
+  public synchronized List<Stream> getStreams() {
+    return new ArrayList<>(streams);
+  }
+
+  /**
+   * Stop the workers and close any pending frames, waits for frames being processed
+   */
+  public void shutdown() {
+    synchronized (this) {
+      shutdown = true;
+      notifyAll();
+    }
+
+    for(Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    synchronized (this) {
+      for(Stream stream : streams) {
+        if(stream.pending != null) {
+          stream.pending.close();
+          stream.pending = null;
+        }
+      }
+    }
+  }
+
+  private synchronized void offer(Stream stream, Frame frame) {
+    stream.received++;
+    if(shutdown || !streams.contains(stream)) {
+      frame.close();
+      return;
+    }
+
+    if(stream.pending != null) {
+      stream.pending.close();
+      stream.dropped++;
+    }
+    stream.pending = frame;
+
+    if(!stream.running && stream.pass < virtualTime) {
+      stream.pass = virtualTime;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Ready stream with the lowest virtual time, or null when nothing is ready
+   */
+  private Stream next() {
+    Stream next = null;
+    for(int i = 0; i < streams.size(); i++) {
+      Stream stream = streams.get(i);
+      if(stream.pending == null || stream.running) {
+        continue;
+      }
+      if(next == null || stream.pass < next.pass) {
+        next = stream;
+      }
+    }
+    return next;
+  }
+
+  private void work() {
+    while(true) {
+      Stream stream = null;
+      Frame frame;
+      synchronized (this) {
+        while(!shutdown && (stream = next()) == null) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if(shutdown) {
+          return;
+        }
+
+        frame = stream.pending;
+        stream.pending = null;
+        stream.running = true;
+        virtualTime = stream.pass;
+        stream.pass += STRIDE / stream.weight;
+      }
+
+      long start = System.nanoTime();
+      try {
+        stream.sink.onFrame(frame);
+      } catch (RuntimeException e) {
+        Log.e(TAG, String.format("Stream %s failed to process a frame", stream.name), e);
+      }
+      long elapsed = System.nanoTime() - start;
+
+      synchronized (this) {
+        stream.running = false;
+        stream.processed++;
+        stream.busyNanos += elapsed;
+        if(stream.processed % LOG_INTERVAL == 0) {
+          Log.i(TAG, stream.toString());
+        }
+        notifyAll();
+      }
+    }
+  }
+}
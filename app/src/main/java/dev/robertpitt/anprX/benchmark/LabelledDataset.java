@@ -0,0 +1,93 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Rect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Annotated dataset loaded from a directory containing the images and a manifest.json
+ * describing each of them:
+ *
+ * <pre>
+ * [
+ *   { "image": "0001.jpg", "plate": [x, y, width, height], "registration": "AB12CDE" },
+ *   { "image": "0002.jpg" }
+ * ]
+ * </pre>
+ *
+ * Entries without a plate are negative samples, used to measure detection precision.
+ */
+public class LabelledDataset {
+  /**
+   * Name of the manifest file within the dataset directory
+   */
+  public static final String MANIFEST = "manifest.json";
+
+  private final String name;
+  private final List<LabelledSample> samples;
+
+  public LabelledDataset(String name, List<LabelledSample> samples) {
+    this.name = name;
+    this.samples = Collections.unmodifiableList(samples);
+  }
+
+  /**
+   * Load the dataset from the directory
+   */
+  public static LabelledDataset load(File directory) throws IOException, JSONException {
+    File manifest = new File(directory, MANIFEST);
+    JSONArray entries = new JSONArray(readFile(manifest));
+
+    List<LabelledSample> samples = new ArrayList<>(entries.length());
+    for(int i = 0; i < entries.length(); i++) {
+      JSONObject entry = entries.getJSONObject(i);
+      File image = new File(directory, entry.getString("image"));
+
+      Rect plateBox = null;
+      JSONArray plate = entry.optJSONArray("plate");
+      if(plate != null) {
+        plateBox = new Rect(plate.getInt(0), plate.getInt(1), plate.getInt(2), plate.getInt(3));
+      }
+
+      samples.add(new LabelledSample(image.getAbsolutePath(), plateBox, entry.optString("registration", null)));
+    }
+
+    return new LabelledDataset(directory.getName(), samples);
+  }
+
+  /**
+   * Read a small text file into memory
+   */
+  static String readFile(File file) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buf = new byte[64 * 1024];
+      int len;
+      while ((len = in.read(buf)) > 0) {
+        out.write(buf, 0, len);
+      }
+    } finally {
+      in.close();
+    }
+    return out.toString("UTF-8");
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<LabelledSample> getSamples() {
+    return samples;
+  }
+}
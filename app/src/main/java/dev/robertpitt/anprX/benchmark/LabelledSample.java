@@ -0,0 +1,48 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.opencv.core.Rect;
+
+/**
+ * A single annotated image in a labelled dataset.
+ */
+public class LabelledSample {
+  /**
+   * Absolute path of the image on disk
+   */
+  private final String imagePath;
+
+  /**
+   * Ground truth plate bounding box, null when the image contains no plate
+   */
+  private final Rect plateBox;
+
+  /**
+   * Ground truth registration, null when the image contains no plate
+   */
+  private final String registration;
+
+  public LabelledSample(String imagePath, Rect plateBox, String registration) {
+    this.imagePath = imagePath;
+    this.plateBox = plateBox;
+    this.registration = registration;
+  }
+
+  public String getImagePath() {
+    return imagePath;
+  }
+
+  public Rect getPlateBox() {
+    return plateBox;
+  }
+
+  public String getRegistration() {
+    return registration;
+  }
+
+  /**
+   * Determine if the image contains a plate that should be detected
+   */
+  public boolean hasPlate() {
+    return plateBox != null;
+  }
+}
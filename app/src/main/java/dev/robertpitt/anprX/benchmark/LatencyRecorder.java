@@ -0,0 +1,55 @@
+package dev.robertpitt.anprX.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Records latency samples for a single pipeline stage and reports percentiles over them.
+ */
+public class LatencyRecorder {
+  private long[] samples = new long[256];
+  private int count = 0;
+
+  /**
+   * Record a single sample in nanoseconds
+   */
+  public void record(long nanos) {
+    if(count == samples.length) {
+      samples = Arrays.copyOf(samples, samples.length * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Percentile in milliseconds using the nearest rank method, 0 when no samples were recorded
+   * @param percentile between 0 and 100
+   */
+  public double percentileMillis(double percentile) {
+    if(count == 0) {
+      return 0;
+    }
+
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100.0 * count);
+    return sorted[Math.min(count, Math.max(1, rank)) - 1] / 1e6;
+  }
+
+  /**
+   * Mean in milliseconds, 0 when no samples were recorded
+   */
+  public double meanMillis() {
+    if(count == 0) {
+      return 0;
+    }
+
+    double total = 0;
+    for(int i = 0; i < count; i++) {
+      total += samples[i];
+    }
+    return total / count / 1e6;
+  }
+}
@@ -0,0 +1,127 @@
+package dev.robertpitt.anprX.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import dev.robertpitt.anprX.opencv.DetectorParameters;
+
+/**
+ * Candidate values of each detector parameter searched by {@link ParameterTuner}.
+ *
+ * The space is the cartesian product of the values, every configuration has an index so the
+ * grid can be walked in order or sampled at random without building the product up front.
+ */
+public class ParameterSpace {
+  /**
+   * Threshold value standing for Otsu's method
+   */
+  public static final double OTSU = -1;
+
+  private final double[][] values;
+
+  private static final int EPSILON = 0;
+  private static final int AREA = 1;
+  private static final int RATIO = 2;
+  private static final int BLUR_SIZE = 3;
+  private static final int BLUR_SIGMA = 4;
+  private static final int THRESHOLD = 5;
+  private static final int COSINE = 6;
+
+  /**
+   * @param thresholds plate binarisation thresholds, {@link #OTSU} for Otsu's method
+   */
+  public ParameterSpace(double[] polygonEpsilons, double[] minAreas, double[] minAspectRatios, int[] blurSizes,
+                        double[] blurSigmas, double[] thresholds, double[] maxCornerCosines) {
+    double[] sizes = new double[blurSizes.length];
+    for(int i = 0; i < blurSizes.length; i++) {
+      sizes[i] = blurSizes[i];
+    }
+    this.values = new double[][] { polygonEpsilons, minAreas, minAspectRatios, sizes, blurSigmas, thresholds, maxCornerCosines };
+    for(double[] dimension : values) {
+      if(dimension.length == 0) {
+        throw new IllegalArgumentException("Every parameter needs at least one value");
+      }
+    }
+  }
+
+  /**
+   * Space around the hand tuned defaults, binarisation is left on Otsu as it only affects OCR.
+   * The blur stays on the 5x5 sigma 3 kernel fused into the native preprocessor, any other
+   * blur falls back to separate OpenCV calls and its latency would not match production.
+   */
+  public static ParameterSpace defaultSpace() {
+    return new ParameterSpace(
+        new double[] { 0.012, 0.018, 0.024, 0.03 },
+        new double[] { 500, 1000, 2000, 4000 },
+        new double[] { 2.0, 2.5, 3.0 },
+        new int[] { 5 },
+        new double[] { 3 },
+        new double[] { OTSU },
+        new double[] { 0.2, 0.3, 0.4 });
+  }
+
+  /**
+   * Number of configurations in the grid
+   */
+  public long size() {
+    long size = 1;
+    for(double[] dimension : values) {
+      size *= dimension.length;
+    }
+    return size;
+  }
+
+  /**
+   * Configuration at the grid index, the first parameter varies fastest
+   */
+  public DetectorParameters get(long index) {
+    if(index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index " + index + " outside a space of " + size());
+    }
+
+    double[] picked = new double[values.length];
+    for(int i = 0; i < values.length; i++) {
+      picked[i] = values[i][(int) (index % values[i].length)];
+      index /= values[i].length;
+    }
+
+    boolean otsu = picked[THRESHOLD] == OTSU;
+    return new DetectorParameters(picked[EPSILON], picked[AREA], picked[RATIO], (int) picked[BLUR_SIZE], picked[BLUR_SIGMA],
+        otsu, otsu ? DetectorParameters.DEFAULTS.threshold : picked[THRESHOLD], picked[COSINE]);
+  }
+
+  /**
+   * Every configuration when the grid has no more than maxTrials, otherwise maxTrials
+   * configurations spread evenly over the grid
+   */
+  public List<DetectorParameters> grid(int maxTrials) {
+    long size = size();
+    int trials = (int) Math.min(size, maxTrials);
+    List<DetectorParameters> configurations = new ArrayList<>(trials);
+    for(int i = 0; i < trials; i++) {
+      configurations.add(get(i * size / trials));
+    }
+    return configurations;
+  }
+
+  /**
+   * Distinct configurations drawn uniformly at random, fewer when the grid is smaller
+   */
+  public List<DetectorParameters> random(int trials, long seed) {
+    long size = size();
+    Random random = new Random(seed);
+    Set<Long> picked = new LinkedHashSet<>();
+    while(picked.size() < Math.min(size, trials)) {
+      picked.add((long) (random.nextDouble() * size));
+    }
+
+    List<DetectorParameters> configurations = new ArrayList<>(picked.size());
+    for(long index : picked) {
+      configurations.add(get(index));
+    }
+    return configurations;
+  }
+}
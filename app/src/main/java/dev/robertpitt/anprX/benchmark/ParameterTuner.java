@@ -0,0 +1,195 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dev.robertpitt.anprX.opencv.DetectorParameters;
+import dev.robertpitt.anprX.opencv.NumberplateDetectorV2;
+import dev.robertpitt.anprX.tesseract.IRecogniser;
+
+/**
+ * Searches detector parameters offline over a labelled dataset and reports the configurations
+ * that trade latency for recall best.
+ *
+ * Every candidate runs the whole dataset through a fresh V2 detector with the
+ * {@link RegressionHarness}. Candidates come from a {@link ParameterSpace}, walked as a grid
+ * or sampled at random, and the hand tuned defaults are always measured as the first trial so
+ * the front can be read against them. Latencies are only comparable between runs on the same
+ * device, so the tuner is run once per device class and the configuration recommended from
+ * each front becomes that class's profile in {@link dev.robertpitt.anprX.opencv.DetectorProfiles}.
+ */
+public class ParameterTuner {
+  /**
+   * Detector name used in the reports
+   */
+  public static final String DETECTOR = "v2";
+
+  /**
+   * Receives each trial as it completes, a full search can take a long time
+   */
+  public interface Listener {
+    void onTrial(int index, int total, Trial trial);
+  }
+
+  /**
+   * A configuration and its measurements
+   */
+  public static class Trial {
+    private final DetectorParameters parameters;
+    private final RegressionReport report;
+
+    Trial(DetectorParameters parameters, RegressionReport report) {
+      this.parameters = parameters;
+      this.report = report;
+    }
+
+    public DetectorParameters getParameters() {
+      return parameters;
+    }
+
+    public RegressionReport getReport() {
+      return report;
+    }
+
+    /**
+     * p95 latency of a whole sample, detection and OCR when a recogniser was given
+     */
+    public double getLatency() {
+      return report.getLatency().get(RegressionHarness.STAGE_TOTAL).p95;
+    }
+
+    public double getRecall() {
+      return report.getRecall();
+    }
+
+    public JSONObject toJson() throws JSONException {
+      return new JSONObject()
+          .put("parameters", parameters.toJson())
+          .put("recall", getRecall())
+          .put("precision", report.getPrecision())
+          .put("exactMatch", report.getExactMatch())
+          .put("latency", getLatency());
+    }
+  }
+
+  /**
+   * Every trial of a search and the Pareto front of latency against recall
+   */
+  public static class Result {
+    private final List<Trial> trials;
+    private final List<Trial> front;
+
+    Result(List<Trial> trials) {
+      this.trials = Collections.unmodifiableList(trials);
+
+      double[] latencies = new double[trials.size()];
+      double[] recalls = new double[trials.size()];
+      for(int i = 0; i < trials.size(); i++) {
+        latencies[i] = trials.get(i).getLatency();
+        recalls[i] = trials.get(i).getRecall();
+      }
+
+      List<Trial> front = new ArrayList<>();
+      for(int index : ParetoFront.indices(latencies, recalls)) {
+        front.add(trials.get(index));
+      }
+      this.front = Collections.unmodifiableList(front);
+    }
+
+    public List<Trial> getTrials() {
+      return trials;
+    }
+
+    /**
+     * Pareto optimal trials, fastest first
+     */
+    public List<Trial> getFront() {
+      return front;
+    }
+
+    /**
+     * The hand tuned defaults, the first trial of every search
+     */
+    public Trial getBaseline() {
+      return trials.get(0);
+    }
+
+    /**
+     * Fastest configuration on the front whose recall is within the tolerance of the best
+     *
+     * @param recallTolerance absolute recall that may be given up for speed
+     */
+    public Trial recommend(double recallTolerance) {
+      double bestRecall = front.get(front.size() - 1).getRecall();
+      for(Trial trial : front) {
+        if(trial.getRecall() >= bestRecall - recallTolerance) {
+          return trial;
+        }
+      }
+      return front.get(front.size() - 1);
+    }
+
+    /**
+     * @param deviceClass class of the device the search ran on
+     */
+    public JSONObject toJson(String deviceClass, double recallTolerance) throws JSONException {
+      JSONArray trialsJson = new JSONArray();
+      for(Trial trial : trials) {
+        trialsJson.put(trial.toJson());
+      }
+      JSONArray frontJson = new JSONArray();
+      for(Trial trial : front) {
+        frontJson.put(trial.toJson());
+      }
+
+      return new JSONObject()
+          .put("dataset", getBaseline().getReport().getDataset())
+          .put("deviceClass", deviceClass)
+          .put("recallTolerance", recallTolerance)
+          .put("baseline", getBaseline().toJson())
+          .put("recommended", recommend(recallTolerance).toJson())
+          .put("front", frontJson)
+          .put("trials", trialsJson);
+    }
+  }
+
+  private final RegressionHarness harness = new RegressionHarness();
+
+  /**
+   * Measure every candidate configuration
+   *
+   * @param recogniser optional, when null only detection latency is measured
+   * @param listener optional
+   */
+  public Result tune(LabelledDataset dataset, List<DetectorParameters> candidates, String recogniserName, IRecogniser recogniser, Listener listener) {
+    List<DetectorParameters> configurations = new ArrayList<>(candidates.size() + 1);
+    configurations.add(DetectorParameters.DEFAULTS);
+    for(DetectorParameters candidate : candidates) {
+      if(!candidate.equals(DetectorParameters.DEFAULTS)) {
+        configurations.add(candidate);
+      }
+    }
+
+    /**
+     * Warm up the code paths and the file cache so the first trial is not penalised
+     */
+    harness.run(dataset, DETECTOR, new NumberplateDetectorV2(), recogniserName, recogniser);
+
+    List<Trial> trials = new ArrayList<>(configurations.size());
+    for(int i = 0; i < configurations.size(); i++) {
+      DetectorParameters parameters = configurations.get(i);
+      RegressionReport report = harness.run(dataset, DETECTOR, new NumberplateDetectorV2(parameters), recogniserName, recogniser);
+      Trial trial = new Trial(parameters, report);
+      trials.add(trial);
+      if(listener != null) {
+        listener.onTrial(i, configurations.size(), trial);
+      }
+    }
+    return new Result(trials);
+  }
+}
@@ -0,0 +1,52 @@
+package dev.robertpitt.anprX.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Pareto front of points scored by a cost to minimise (latency) and a benefit to maximise
+ * (recall): the points no other point beats on one score without losing on the other.
+ */
+public class ParetoFront {
+  private ParetoFront() {
+  }
+
+  /**
+   * Indices of the points on the front, cheapest first, of points with identical scores
+   * only the first is kept
+   */
+  public static int[] indices(final double[] costs, final double[] benefits) {
+    if(costs.length != benefits.length) {
+      throw new IllegalArgumentException("Every point needs a cost and a benefit");
+    }
+
+    Integer[] order = new Integer[costs.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    // Cheapest first, then most beneficial, so each point only needs comparing with the best so far
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        int cost = Double.compare(costs[a], costs[b]);
+        if(cost != 0) {
+          return cost;
+        }
+        int benefit = Double.compare(benefits[b], benefits[a]);
+        return benefit != 0 ? benefit : Integer.compare(a, b);
+      }
+    });
+
+    int[] front = new int[order.length];
+    int count = 0;
+    double best = Double.NEGATIVE_INFINITY;
+    for(int index : order) {
+      if(benefits[index] > best) {
+        front[count++] = index;
+        best = benefits[index];
+      }
+    }
+    return Arrays.copyOf(front, count);
+  }
+}
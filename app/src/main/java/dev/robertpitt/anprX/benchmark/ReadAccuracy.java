@@ -0,0 +1,68 @@
+package dev.robertpitt.anprX.benchmark;
+
+/**
+ * Helpers for scoring a read against the ground truth registration.
+ */
+public class ReadAccuracy {
+  /**
+   * Normalise a registration for comparison, upper case with all whitespace removed.
+   */
+  public static String normalise(String registration) {
+    if(registration == null) {
+      return "";
+    }
+
+    StringBuilder builder = new StringBuilder(registration.length());
+    for(int i = 0; i < registration.length(); i++) {
+      char c = registration.charAt(i);
+      if(!Character.isWhitespace(c)) {
+        builder.append(Character.toUpperCase(c));
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Levenshtein edit distance between two strings
+   */
+  public static int editDistance(String a, String b) {
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for(int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+
+    for(int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      for(int j = 1; j <= b.length(); j++) {
+        int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution, Math.min(previous[j] + 1, current[j - 1] + 1));
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+
+    return previous[b.length()];
+  }
+
+  /**
+   * Character level accuracy of a read, 1 for an exact match and 0 when nothing matches.
+   */
+  public static double characterAccuracy(String truth, String read) {
+    String expected = normalise(truth);
+    String actual = normalise(read);
+    if(expected.isEmpty()) {
+      return actual.isEmpty() ? 1 : 0;
+    }
+
+    return Math.max(0, 1.0 - (double) editDistance(expected, actual) / expected.length());
+  }
+
+  /**
+   * Determine if the read exactly matches the ground truth, ignoring case and whitespace
+   */
+  public static boolean isExactMatch(String truth, String read) {
+    return normalise(truth).equals(normalise(read));
+  }
+}
@@ -0,0 +1,158 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dev.robertpitt.anprX.opencv.IDetector;
+import dev.robertpitt.anprX.opencv.Utils;
+import dev.robertpitt.anprX.tesseract.IRecogniser;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+
+/**
+ * Runs a labelled dataset through a detector and recogniser combination and measures
+ * detection accuracy, read accuracy and per stage latency.
+ */
+public class RegressionHarness {
+  /**
+   * Stage names used in the latency section of the report
+   */
+  public static final String STAGE_DETECT = "detect";
+  public static final String STAGE_OCR = "ocr";
+  public static final String STAGE_TOTAL = "total";
+
+  /**
+   * Minimum intersection over union between the detected and labelled plate for a detection
+   * to count as a true positive.
+   */
+  private static final double MATCH_IOU = 0.5;
+
+  /**
+   * Run every sample of the dataset through the detector and recogniser, the recogniser
+   * is optional and when null only detection is measured.
+   */
+  public RegressionReport run(LabelledDataset dataset, String detectorName, IDetector detector, String recogniserName, IRecogniser recogniser) {
+    LatencyRecorder detectLatency = new LatencyRecorder();
+    LatencyRecorder ocrLatency = new LatencyRecorder();
+    LatencyRecorder totalLatency = new LatencyRecorder();
+
+    int truePositives = 0;
+    int falsePositives = 0;
+    int labelledPlates = 0;
+    int exactMatches = 0;
+    double characterAccuracy = 0;
+
+    for(LabelledSample sample : dataset.getSamples()) {
+      Mat rgb = loadRGB(sample.getImagePath());
+      if(rgb == null) {
+        continue;
+      }
+
+      long start = System.nanoTime();
+      Mat plate = detector.detect(rgb);
+      long detected = System.nanoTime();
+      detectLatency.record(detected - start);
+
+      /**
+       * Score the detection against the labelled plate
+       */
+      RotatedRect region = detector.getPlateRegion();
+      boolean matched = false;
+      if(region != null) {
+        matched = sample.hasPlate() && Utils.intersectionOverUnion(region.boundingRect(), sample.getPlateBox()) >= MATCH_IOU;
+        if(matched) {
+          truePositives++;
+        } else {
+          falsePositives++;
+        }
+      }
+
+      /**
+       * Read the plate, only reads of a correctly located plate are scored
+       */
+      String read = "";
+      if(recogniser != null && region != null && plate != null && !plate.empty()) {
+        long ocrStart = System.nanoTime();
+        OcrResult result = recogniser.recognise(plate);
+        ocrLatency.record(System.nanoTime() - ocrStart);
+        if(matched) {
+          read = result.getText();
+        }
+      }
+      totalLatency.record(System.nanoTime() - start);
+
+      if(sample.hasPlate()) {
+        labelledPlates++;
+        if(ReadAccuracy.isExactMatch(sample.getRegistration(), read)) {
+          exactMatches++;
+        }
+        characterAccuracy += ReadAccuracy.characterAccuracy(sample.getRegistration(), read);
+      }
+
+      rgb.release();
+    }
+
+    Map<String, RegressionReport.Latency> latency = new LinkedHashMap<>();
+    latency.put(STAGE_DETECT, RegressionReport.Latency.of(detectLatency));
+    if(recogniser != null) {
+      latency.put(STAGE_OCR, RegressionReport.Latency.of(ocrLatency));
+    }
+    latency.put(STAGE_TOTAL, RegressionReport.Latency.of(totalLatency));
+
+    int detections = truePositives + falsePositives;
+    return new RegressionReport(
+        dataset.getName(),
+        detectorName,
+        recogniser != null ? recogniserName : "none",
+        dataset.getSamples().size(),
+        detections == 0 ? 0 : (double) truePositives / detections,
+        labelledPlates == 0 ? 0 : (double) truePositives / labelledPlates,
+        labelledPlates == 0 ? 0 : (double) exactMatches / labelledPlates,
+        labelledPlates == 0 ? 0 : characterAccuracy / labelledPlates,
+        latency);
+  }
+
+  /**
+   * Load an image from disk as RGB, the colour order the detectors expect
+   */
+  private static Mat loadRGB(String path) {
+    Mat bgr = Imgcodecs.imread(path);
+    if(bgr.empty()) {
+      return null;
+    }
+
+    Mat rgb = new Mat();
+    Imgproc.cvtColor(bgr, rgb, Imgproc.COLOR_BGR2RGB);
+    bgr.release();
+    return rgb;
+  }
+
+  /**
+   * Write a report to disk as JSON
+   */
+  public static void writeReport(RegressionReport report, File file) throws IOException, JSONException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(report.toJson().toString(2).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read a report previously written with {@link #writeReport}
+   */
+  public static RegressionReport readReport(File file) throws IOException, JSONException {
+    return RegressionReport.fromJson(new JSONObject(LabelledDataset.readFile(file)));
+  }
+}
@@ -0,0 +1,196 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Machine readable result of running a labelled dataset through a detector and recogniser.
+ */
+public class RegressionReport {
+  /**
+   * Latency summary for a single stage, in milliseconds
+   */
+  public static class Latency {
+    public final int count;
+    public final double mean;
+    public final double p50;
+    public final double p95;
+    public final double p99;
+
+    public Latency(int count, double mean, double p50, double p95, double p99) {
+      this.count = count;
+      this.mean = mean;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+    }
+
+    static Latency of(LatencyRecorder recorder) {
+      return new Latency(
+          recorder.getCount(),
+          recorder.meanMillis(),
+          recorder.percentileMillis(50),
+          recorder.percentileMillis(95),
+          recorder.percentileMillis(99));
+    }
+
+    JSONObject toJson() throws JSONException {
+      return new JSONObject()
+          .put("count", count)
+          .put("mean", mean)
+          .put("p50", p50)
+          .put("p95", p95)
+          .put("p99", p99);
+    }
+
+    static Latency fromJson(JSONObject json) throws JSONException {
+      return new Latency(json.getInt("count"), json.getDouble("mean"), json.getDouble("p50"), json.getDouble("p95"), json.getDouble("p99"));
+    }
+  }
+
+  private final String dataset;
+  private final String detector;
+  private final String recogniser;
+  private final int samples;
+  private final double precision;
+  private final double recall;
+  private final double exactMatch;
+  private final double characterAccuracy;
+  private final Map<String, Latency> latency;
+
+  public RegressionReport(String dataset, String detector, String recogniser, int samples,
+                          double precision, double recall, double exactMatch, double characterAccuracy,
+                          Map<String, Latency> latency) {
+    this.dataset = dataset;
+    this.detector = detector;
+    this.recogniser = recogniser;
+    this.samples = samples;
+    this.precision = precision;
+    this.recall = recall;
+    this.exactMatch = exactMatch;
+    this.characterAccuracy = characterAccuracy;
+    this.latency = latency;
+  }
+
+  public String getDataset() {
+    return dataset;
+  }
+
+  public String getDetector() {
+    return detector;
+  }
+
+  public String getRecogniser() {
+    return recogniser;
+  }
+
+  public int getSamples() {
+    return samples;
+  }
+
+  /**
+   * Fraction of detections that matched a labelled plate
+   */
+  public double getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Fraction of labelled plates that were detected
+   */
+  public double getRecall() {
+    return recall;
+  }
+
+  /**
+   * Fraction of labelled plates read exactly, missed detections count as failed reads
+   */
+  public double getExactMatch() {
+    return exactMatch;
+  }
+
+  /**
+   * Mean character level accuracy over the labelled plates
+   */
+  public double getCharacterAccuracy() {
+    return characterAccuracy;
+  }
+
+  /**
+   * Latency per stage, keyed by the stage name
+   */
+  public Map<String, Latency> getLatency() {
+    return latency;
+  }
+
+  public JSONObject toJson() throws JSONException {
+    JSONObject stages = new JSONObject();
+    for(Map.Entry<String, Latency> stage : latency.entrySet()) {
+      stages.put(stage.getKey(), stage.getValue().toJson());
+    }
+
+    return new JSONObject()
+        .put("dataset", dataset)
+        .put("detector", detector)
+        .put("recogniser", recogniser)
+        .put("samples", samples)
+        .put("detection", new JSONObject()
+            .put("precision", precision)
+            .put("recall", recall))
+        .put("reading", new JSONObject()
+            .put("exactMatch", exactMatch)
+            .put("characterAccuracy", characterAccuracy))
+        .put("latency", stages);
+  }
+
+  public static RegressionReport fromJson(JSONObject json) throws JSONException {
+    JSONObject detection = json.getJSONObject("detection");
+    JSONObject reading = json.getJSONObject("reading");
+    JSONObject stages = json.getJSONObject("latency");
+
+    Map<String, Latency> latency = new LinkedHashMap<>();
+    Iterator<String> keys = stages.keys();
+    while(keys.hasNext()) {
+      String key = keys.next();
+      latency.put(key, Latency.fromJson(stages.getJSONObject(key)));
+    }
+
+    return new RegressionReport(
+        json.getString("dataset"),
+        json.getString("detector"),
+        json.getString("recogniser"),
+        json.getInt("samples"),
+        detection.getDouble("precision"),
+        detection.getDouble("recall"),
+        reading.getDouble("exactMatch"),
+        reading.getDouble("characterAccuracy"),
+        latency);
+  }
+
+  /**
+   * Compare this report against a stored baseline.
+   *
+   * @param accuracyTolerance absolute drop allowed in any accuracy metric before it is a regression
+   * @param latencyTolerance relative increase allowed in any p95 latency before it is a regression
+   */
+  public ReportDiff diff(RegressionReport baseline, double accuracyTolerance, double latencyTolerance) {
+    ReportDiff diff = new ReportDiff();
+    diff.compareAccuracy("detection.precision", baseline.precision, precision, accuracyTolerance);
+    diff.compareAccuracy("detection.recall", baseline.recall, recall, accuracyTolerance);
+    diff.compareAccuracy("reading.exactMatch", baseline.exactMatch, exactMatch, accuracyTolerance);
+    diff.compareAccuracy("reading.characterAccuracy", baseline.characterAccuracy, characterAccuracy, accuracyTolerance);
+
+    for(Map.Entry<String, Latency> stage : latency.entrySet()) {
+      Latency previous = baseline.latency.get(stage.getKey());
+      if(previous != null) {
+        diff.compareLatency(String.format("latency.%s.p95", stage.getKey()), previous.p95, stage.getValue().p95, latencyTolerance);
+      }
+    }
+
+    return diff;
+  }
+}
@@ -0,0 +1,90 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Metric by metric comparison of a report against its baseline.
+ */
+public class ReportDiff {
+  /**
+   * Change in a single metric
+   */
+  public static class Entry {
+    public final String metric;
+    public final double baseline;
+    public final double current;
+    public final boolean regressed;
+
+    Entry(String metric, double baseline, double current, boolean regressed) {
+      this.metric = metric;
+      this.baseline = baseline;
+      this.current = current;
+      this.regressed = regressed;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.UK, "%s%s: %.4f -> %.4f (%+.4f)", regressed ? "REGRESSED " : "", metric, baseline, current, current - baseline);
+    }
+  }
+
+  private final List<Entry> entries = new ArrayList<>();
+
+  /**
+   * Higher is better, regressed when the value drops by more than the absolute tolerance
+   */
+  void compareAccuracy(String metric, double baseline, double current, double tolerance) {
+    entries.add(new Entry(metric, baseline, current, current < baseline - tolerance));
+  }
+
+  /**
+   * Lower is better, regressed when the value grows by more than the relative tolerance
+   */
+  void compareLatency(String metric, double baseline, double current, double tolerance) {
+    entries.add(new Entry(metric, baseline, current, current > baseline * (1 + tolerance)));
+  }
+
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Determine if any metric regressed beyond its tolerance
+   */
+  public boolean hasRegressions() {
+    for(Entry entry : entries) {
+      if(entry.regressed) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public JSONArray toJson() throws JSONException {
+    JSONArray json = new JSONArray();
+    for(Entry entry : entries) {
+      json.put(new JSONObject()
+          .put("metric", entry.metric)
+          .put("baseline", entry.baseline)
+          .put("current", entry.current)
+          .put("regressed", entry.regressed));
+    }
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for(Entry entry : entries) {
+      builder.append(entry).append('\n');
+    }
+    return builder.toString();
+  }
+}
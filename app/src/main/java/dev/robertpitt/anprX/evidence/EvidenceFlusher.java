@@ -0,0 +1,75 @@
+package dev.robertpitt.anprX.evidence;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import dev.robertpitt.anprX.frames.YuvDump;
+
+/**
+ * Writes completed captures to disk on a low priority background thread as greyscale
+ * {@link YuvDump} files named after the read, then returns the capture buffer to the ring.
+ */
+public class EvidenceFlusher implements FrameRingBuffer.Listener {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::EvidenceFlusher";
+
+  private final File directory;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    runnable.run();
+  }, "anprx-evidence-flush"));
+
+  public EvidenceFlusher(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public void onCaptureComplete(final FrameRingBuffer ring, final FrameRingBuffer.Capture capture) {
+    /**
+     * Captures completing while the flusher shuts down are rejected, their buffer goes
+     * straight back to the ring
+     */
+    try {
+      executor.execute(() -> flush(ring, capture));
+    } catch (RejectedExecutionException e) {
+      ring.release(capture);
+    }
+  }
+
+  private void flush(FrameRingBuffer ring, FrameRingBuffer.Capture capture) {
+    File file = new File(directory, String.format("%s.yuv", capture.getRead().getId()));
+    try {
+      if(!directory.exists() && !directory.mkdirs()) {
+        throw new IOException(String.format("Unable to create %s", directory));
+      }
+
+      YuvDump.Writer writer = new YuvDump.Writer(file, YuvDump.FORMAT_GREY, capture.getWidth(), capture.getHeight());
+      try {
+        for(int i = 0; i < capture.getFrameCount(); i++) {
+          writer.write(capture.getFrame(i), capture.getTimestampNanos(i), capture.getRotationDegrees(i));
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      Log.e(TAG, String.format("Unable to write evidence %s", file), e);
+    } finally {
+      ring.release(capture);
+    }
+  }
+
+  /**
+   * Finish writing queued captures and stop the background thread
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
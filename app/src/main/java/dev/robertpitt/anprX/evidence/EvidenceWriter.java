@@ -0,0 +1,280 @@
+package dev.robertpitt.anprX.evidence;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import dev.robertpitt.anprX.opencv.Utils;
+import dev.robertpitt.anprX.reads.PlateRead;
+
+/**
+ * Encodes the plate crop and context frame of each read as still images on a low priority
+ * worker pool, writing them next to a JSON metadata file tied to the read.
+ *
+ * The writer takes ownership of the Mats on submission rather than copying them, the OCR job
+ * already owns copies taken on the analysis thread. The work queue is bounded, when it is
+ * full the drop policy decides whether the new job or the oldest queued job is discarded, so
+ * encoding can never back up into detection or OCR.
+ */
+public class EvidenceWriter {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::EvidenceWriter";
+
+  /**
+   * Number of written reads between each summary written to the log
+   */
+  private static final int LOG_INTERVAL = 20;
+
+  public enum Format {
+    JPEG(".jpg", Imgcodecs.IMWRITE_JPEG_QUALITY),
+    WEBP(".webp", Imgcodecs.IMWRITE_WEBP_QUALITY);
+
+    final String extension;
+    final int qualityFlag;
+
+    Format(String extension, int qualityFlag) {
+      this.extension = extension;
+      this.qualityFlag = qualityFlag;
+    }
+  }
+
+  public enum DropPolicy {
+    /**
+     * Discard the job being submitted
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the job that has waited longest in the queue
+     */
+    DROP_OLDEST
+  }
+
+  private final File directory;
+  private final Format format;
+  private final int quality;
+  private final ThreadPoolExecutor executor;
+
+  private long submitted = 0;
+  private long completed = 0;
+  private long dropped = 0;
+  private long failed = 0;
+  private long encodeNanos = 0;
+  private long maxEncodeNanos = 0;
+
+  /**
+   * @param workers number of encoder threads
+   * @param queueCapacity maximum number of reads waiting to be encoded
+   */
+  public EvidenceWriter(File directory, Format format, int quality, int workers, int queueCapacity, final DropPolicy dropPolicy) {
+    this.directory = directory;
+    this.format = format;
+    this.quality = quality;
+
+    RejectedExecutionHandler rejection = (runnable, pool) -> {
+      if(pool.isShutdown()) {
+        ((Job) runnable).discard();
+        return;
+      }
+
+      if(dropPolicy == DropPolicy.DROP_OLDEST) {
+        Runnable oldest = pool.getQueue().poll();
+        if(oldest != null) {
+          ((Job) oldest).discard();
+          pool.execute(runnable);
+          return;
+        }
+      }
+      ((Job) runnable).discard();
+    };
+
+    this.executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueCapacity),
+        runnable -> new Thread(() -> {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          runnable.run();
+        }, "anprx-evidence-encode"),
+        rejection);
+  }
+
+  /**
+   * Queue the evidence for a read, the writer takes ownership of both Mats and releases them
+   * once they are written or dropped.
+   *
+   * @param crop normalised plate crop, owned by the writer
+   * @param context frame the plate was read from (RGB), owned by the writer, may be null
+   * @param contextRotationDegrees clockwise rotation that makes the context frame upright, it
+   *                               is rotated on the worker rather than the analysis thread
+   */
+  public void submit(PlateRead read, Mat crop, Mat context, int contextRotationDegrees) {
+    synchronized (this) {
+      submitted++;
+    }
+    executor.execute(new Job(read, crop, context, contextRotationDegrees));
+  }
+
+  /**
+   * Names of the files written for a read, relative to the evidence directory
+   */
+  public String[] getFileNames(PlateRead read) {
+    return new String[]{
+        String.format("%s-crop%s", read.getId(), format.extension),
+        String.format("%s-context%s", read.getId(), format.extension),
+        String.format("%s.json", read.getId())
+    };
+  }
+
+  /**
+   * Number of reads waiting to be encoded
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Mean time to encode and write the evidence of a single read, in milliseconds
+   */
+  public synchronized double getMeanEncodeMillis() {
+    return completed == 0 ? 0 : encodeNanos / (completed * 1e6);
+  }
+
+  public synchronized long getDroppedCount() {
+    return dropped;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(Locale.UK, "queue=%d submitted=%d completed=%d dropped=%d failed=%d encode=%.1fms (max %.1fms)",
+        getQueueDepth(), submitted, completed, dropped, failed, getMeanEncodeMillis(), maxEncodeNanos / 1e6);
+  }
+
+  /**
+   * Stop accepting evidence, queued reads are still written
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private class Job implements Runnable {
+    private final PlateRead read;
+    private final Mat crop;
+    private final Mat context;
+    private final int contextRotationDegrees;
+
+    Job(PlateRead read, Mat crop, Mat context, int contextRotationDegrees) {
+      this.read = read;
+      this.crop = crop;
+      this.context = context;
+      this.contextRotationDegrees = contextRotationDegrees;
+    }
+
+    @Override
+    public void run() {
+      long start = SystemClock.elapsedRealtimeNanos();
+      try {
+        if(!directory.exists() && !directory.mkdirs()) {
+          throw new IOException(String.format("Unable to create %s", directory));
+        }
+
+        File cropFile = new File(directory, String.format("%s-crop%s", read.getId(), format.extension));
+        File contextFile = new File(directory, String.format("%s-context%s", read.getId(), format.extension));
+        encode(crop, cropFile);
+        if(context != null) {
+          Utils.rotateUpright(context, contextRotationDegrees);
+          encode(context, contextFile);
+        }
+
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        writeMetadata(cropFile, context != null ? contextFile : null, elapsed);
+
+        synchronized (EvidenceWriter.this) {
+          completed++;
+          encodeNanos += elapsed;
+          maxEncodeNanos = Math.max(maxEncodeNanos, elapsed);
+          if(completed % LOG_INTERVAL == 0) {
+            Log.i(TAG, EvidenceWriter.this.toString());
+          }
+        }
+      } catch (IOException | JSONException e) {
+        Log.e(TAG, String.format("Unable to write evidence for %s", read.getId()), e);
+        synchronized (EvidenceWriter.this) {
+          failed++;
+        }
+      } finally {
+        release();
+      }
+    }
+
+    /**
+     * Encode the Mat, colour Mats are RGB and need swapping to the BGR order imwrite expects
+     */
+    private void encode(Mat mat, File file) throws IOException {
+      if(mat.channels() == 3) {
+        Imgproc.cvtColor(mat, mat, Imgproc.COLOR_RGB2BGR);
+      }
+
+      MatOfInt params = new MatOfInt(format.qualityFlag, quality);
+      boolean written = Imgcodecs.imwrite(file.getAbsolutePath(), mat, params);
+      params.release();
+      if(!written) {
+        throw new IOException(String.format("Unable to encode %s", file));
+      }
+    }
+
+    private void writeMetadata(File cropFile, File contextFile, long encodeNanos) throws IOException, JSONException {
+      JSONObject metadata = new JSONObject()
+          .put("id", read.getId())
+          .put("registration", read.getRegistration())
+          .put("confidence", read.getConfidence())
+          .put("createdAt", read.getCreatedAtMillis())
+          .put("frameTimestampNanos", read.getFrameTimestampNanos())
+          .put("crop", cropFile.getName())
+          .put("context", contextFile != null ? contextFile.getName() : JSONObject.NULL)
+          .put("encodeMillis", encodeNanos / 1e6);
+
+      OutputStream out = new FileOutputStream(new File(directory, String.format("%s.json", read.getId())));
+      try {
+        out.write(metadata.toString().getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+    }
+
+    /**
+     * Called instead of run when the job is dropped by the queue
+     */
+    void discard() {
+      synchronized (EvidenceWriter.this) {
+        dropped++;
+      }
+      Log.w(TAG, String.format("Dropped evidence for %s", read.getId()));
+      release();
+    }
+
+    private void release() {
+      crop.release();
+      if(context != null) {
+        context.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,360 @@
+package dev.robertpitt.anprX.evidence;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.reads.PlateRead;
+
+/**
+ * Fixed size ring of the most recent luma frames, kept so the frames leading up to a read
+ * can be saved as evidence.
+ *
+ * All pixel memory is allocated up front in direct buffers: the ring itself and a small pool
+ * of capture buffers. Recording a frame is a single copy of its luma plane into the ring. When
+ * a read is triggered the frames around the one it was read from are copied into a free
+ * capture buffer, any following frames not yet recorded are appended to it and the completed
+ * capture is handed to the listener to be flushed to disk asynchronously. If every capture
+ * buffer is still being flushed the trigger is dropped.
+ *
+ * Reads are triggered once OCR finishes, frames behind the one the plate was read from, so
+ * the window is found by the read's frame timestamp rather than taken from the newest frames.
+ * The ring holds the late frames on top of the pre-trigger frames so the window is still in
+ * it when a read arrives as late as the OCR deadline allows.
+ *
+ * A read may be triggered from the OCR thread while the analysis thread keeps recording. The
+ * trigger only pins the slots it needs while holding the lock and copies them after releasing
+ * it, oldest first, so {@link #record} is never held up by the whole copy: it only waits when
+ * it is about to overwrite a pinned slot, which is the next one to be copied.
+ */
+public class FrameRingBuffer {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::FrameRingBuffer";
+
+  /**
+   * Notified on the recording or triggering thread when a capture has all of its frames
+   */
+  public interface Listener {
+    void onCaptureComplete(FrameRingBuffer ring, Capture capture);
+  }
+
+  /**
+   * Frames surrounding a read, held in a pooled direct buffer until released
+   */
+  public static class Capture {
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final long[] timestamps;
+    private final int[] rotations;
+    private final int[] frozenSlots;
+    private int frozenCount;
+    private boolean copying;
+    private int count;
+    private int remainingPostFrames;
+    private PlateRead read;
+
+    Capture(int width, int height, int maxFrames) {
+      this.buffer = ByteBuffer.allocateDirect(width * height * maxFrames);
+      this.width = width;
+      this.height = height;
+      this.timestamps = new long[maxFrames];
+      this.rotations = new int[maxFrames];
+      this.frozenSlots = new int[maxFrames];
+    }
+
+    void reset(PlateRead read, int postFrames) {
+      this.read = read;
+      this.count = 0;
+      this.frozenCount = 0;
+      this.copying = false;
+      this.remainingPostFrames = postFrames;
+    }
+
+    /**
+     * Reserve the next frame for a slot of the ring, its pixels are copied in later
+     */
+    void freeze(int slot, long timestamp, int rotation) {
+      frozenSlots[frozenCount++] = slot;
+      timestamps[count] = timestamp;
+      rotations[count] = rotation;
+      count++;
+    }
+
+    void append(ByteBuffer luma, long timestamp, int rotation) {
+      put(count, luma);
+      timestamps[count] = timestamp;
+      rotations[count] = rotation;
+      count++;
+    }
+
+    /**
+     * Copy pixels into the frame at the index, frames may be written from different threads
+     */
+    void put(int index, ByteBuffer luma) {
+      ByteBuffer target = buffer.duplicate();
+      target.position(index * width * height);
+      target.put(luma);
+    }
+
+    public PlateRead getRead() {
+      return read;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public int getFrameCount() {
+      return count;
+    }
+
+    public long getTimestampNanos(int index) {
+      return timestamps[index];
+    }
+
+    public int getRotationDegrees(int index) {
+      return rotations[index];
+    }
+
+    /**
+     * Luma pixels of the frame at the index, a view onto the capture buffer
+     */
+    public ByteBuffer getFrame(int index) {
+      int frameSize = width * height;
+      ByteBuffer frame = buffer.duplicate();
+      frame.limit((index + 1) * frameSize);
+      frame.position(index * frameSize);
+      return frame.slice();
+    }
+  }
+
+  private final int capacity;
+  private final int preFrames;
+  private final int postFrames;
+  private final int poolSize;
+  private final Listener listener;
+
+  private int width = 0;
+  private int height = 0;
+  private ByteBuffer ring;
+  private long[] timestamps;
+  private int[] rotations;
+
+  /**
+   * Number of triggers still to copy each slot, a pinned slot is not overwritten
+   */
+  private int[] pins;
+  private int head = 0;
+  private int size = 0;
+
+  /**
+   * Captures waiting for their post trigger frames
+   */
+  private final List<Capture> pending = new ArrayList<>();
+
+  /**
+   * Capture buffers free for the next trigger, released from the flushing thread
+   */
+  private final ArrayDeque<Capture> free = new ArrayDeque<>();
+
+  private long dropped = 0;
+
+  /**
+   * @param preFrames number of frames captured up to and including the read frame
+   * @param postFrames number of frames captured after the read frame
+   * @param lateFrames number of frames that may be recorded between the read frame and its trigger
+   * @param poolSize number of captures that can be in flight at once
+   */
+  public FrameRingBuffer(int preFrames, int postFrames, int lateFrames, int poolSize, Listener listener) {
+    this.capacity = preFrames + Math.max(lateFrames, postFrames);
+    this.preFrames = preFrames;
+    this.postFrames = postFrames;
+    this.poolSize = poolSize;
+    this.listener = listener;
+  }
+
+  /**
+   * Allocate the ring and capture pool for the frame size, only happens on the first frame
+   * or when the analysis resolution changes.
+   */
+  private void allocate(int width, int height) {
+    this.ring = ByteBuffer.allocateDirect(width * height * capacity);
+    this.timestamps = new long[capacity];
+    this.rotations = new int[capacity];
+    this.pins = new int[capacity];
+    this.head = 0;
+    this.size = 0;
+    this.pending.clear();
+
+    synchronized (free) {
+      this.width = width;
+      this.height = height;
+      free.clear();
+      for(int i = 0; i < poolSize; i++) {
+        free.add(new Capture(width, height, preFrames + postFrames));
+      }
+    }
+  }
+
+  /**
+   * Copy the luma of the frame into the ring, and into any capture waiting for post trigger frames
+   */
+  public synchronized void record(Frame frame) {
+    if(frame.getWidth() != width || frame.getHeight() != height) {
+      allocate(frame.getWidth(), frame.getHeight());
+    }
+
+    int frameSize = width * height;
+    int slot = head;
+
+    /**
+     * Triggers copy the oldest slot first, so this waits for at most one frame to be copied
+     */
+    while(pins[slot] > 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    ByteBuffer target = ring.duplicate();
+    target.position(slot * frameSize);
+    frame.copyLumaTo(target);
+    timestamps[slot] = frame.getTimestampNanos();
+    rotations[slot] = frame.getRotationDegrees();
+
+    head = (head + 1) % capacity;
+    size = Math.min(size + 1, capacity);
+
+    Iterator<Capture> iterator = pending.iterator();
+    while(iterator.hasNext()) {
+      Capture capture = iterator.next();
+      capture.append(slot(slot), timestamps[slot], rotations[slot]);
+      if(--capture.remainingPostFrames <= 0) {
+        iterator.remove();
+        if(!capture.copying) {
+          listener.onCaptureComplete(this, capture);
+        }
+      }
+    }
+  }
+
+  /**
+   * Freeze the frames around the read's frame as evidence, the capture completes once the
+   * post trigger frames have been recorded. If the read frame has already left the ring the
+   * oldest frames are taken instead.
+   *
+   * @return false if no capture buffer was free and the trigger was dropped
+   */
+  public boolean trigger(PlateRead read) {
+    Capture capture;
+    ByteBuffer frozenRing;
+    int[] frozenPins;
+    synchronized (this) {
+      if(ring == null) {
+        return false;
+      }
+
+      synchronized (free) {
+        capture = free.poll();
+      }
+      if(capture == null) {
+        dropped++;
+        Log.w(TAG, String.format("No capture buffer free, dropped evidence for %s", read.getId()));
+        return false;
+      }
+
+      /**
+       * Frames recorded up to and including the read frame, the ring is in timestamp order
+       */
+      int oldest = (head - size + capacity) % capacity;
+      int upToRead = 0;
+      while(upToRead < size && timestamps[(oldest + upToRead) % capacity] <= read.getFrameTimestampNanos()) {
+        upToRead++;
+      }
+      int start = Math.max(0, upToRead - preFrames);
+      int end = Math.min(size, upToRead + postFrames);
+
+      capture.reset(read, postFrames - (end - upToRead));
+      for(int i = start; i < end; i++) {
+        int index = (oldest + i) % capacity;
+        capture.freeze(index, timestamps[index], rotations[index]);
+        pins[index]++;
+      }
+      capture.copying = true;
+      if(capture.remainingPostFrames > 0) {
+        pending.add(capture);
+      }
+
+      /**
+       * The ring is reallocated if the resolution changes, keep copying from this one
+       */
+      frozenRing = ring;
+      frozenPins = pins;
+    }
+
+    /**
+     * Copy outside the lock, unpinning each slot as soon as it has been copied
+     */
+    int frameSize = capture.getWidth() * capture.getHeight();
+    for(int i = 0; i < capture.frozenCount; i++) {
+      int index = capture.frozenSlots[i];
+      ByteBuffer slot = frozenRing.duplicate();
+      slot.limit((index + 1) * frameSize);
+      slot.position(index * frameSize);
+      capture.put(i, slot);
+      synchronized (this) {
+        frozenPins[index]--;
+        notifyAll();
+      }
+    }
+
+    synchronized (this) {
+      capture.copying = false;
+      if(capture.remainingPostFrames <= 0) {
+        listener.onCaptureComplete(this, capture);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return a capture to the pool once it has been flushed, may be called from any thread
+   */
+  public void release(Capture capture) {
+    synchronized (free) {
+      if(capture.getWidth() == width && capture.getHeight() == height && free.size() < poolSize) {
+        free.add(capture);
+      }
+    }
+  }
+
+  /**
+   * Number of triggers dropped because every capture buffer was in use
+   */
+  public synchronized long getDroppedCount() {
+    return dropped;
+  }
+
+  private ByteBuffer slot(int index) {
+    int frameSize = width * height;
+    ByteBuffer slot = ring.duplicate();
+    slot.limit((index + 1) * frameSize);
+    slot.position(index * frameSize);
+    return slot;
+  }
+}
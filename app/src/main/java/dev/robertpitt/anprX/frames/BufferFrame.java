@@ -0,0 +1,97 @@
+package dev.robertpitt.anprX.frames;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame backed by tightly packed NV21 or greyscale pixels in a ByteBuffer, such as a region
+ * of a memory mapped {@link YuvDump} file.
+ *
+ * Direct buffers are wrapped in a Mat without copying, so conversions read the mapping in
+ * place and the pixels never pass through the Java heap. Heap buffers are copied.
+ */
+public class BufferFrame extends Frame {
+  private final int format;
+  private final ByteBuffer data;
+
+  /**
+   * @param format {@link YuvDump#FORMAT_NV21} or {@link YuvDump#FORMAT_GREY}
+   * @param data pixels starting at index 0, not copied
+   */
+  public BufferFrame(int format, ByteBuffer data, int width, int height, int rotationDegrees, long timestampNanos) {
+    super(width, height, rotationDegrees, timestampNanos);
+    this.format = format;
+    this.data = data;
+  }
+
+  public int getFormat() {
+    return format;
+  }
+
+  /**
+   * The backing pixels, NV21 or greyscale depending on the format
+   */
+  public ByteBuffer getData() {
+    return data;
+  }
+
+  @Override
+  public ByteBuffer getLuma() {
+    return data;
+  }
+
+  @Override
+  public int getLumaRowStride() {
+    return getWidth();
+  }
+
+  @Override
+  public Mat toLuma() {
+    Mat view = wrap(getHeight());
+
+    /**
+     * A heap buffer is already copied by the wrap
+     */
+    if(!data.isDirect()) {
+      return view;
+    }
+    Mat luma = view.clone();
+    view.release();
+    return luma;
+  }
+
+  @Override
+  public Mat toRGB() {
+    Mat rgb = new Mat();
+    if(format == YuvDump.FORMAT_GREY) {
+      Mat luma = wrap(getHeight());
+      Imgproc.cvtColor(luma, rgb, Imgproc.COLOR_GRAY2RGB);
+      luma.release();
+      return rgb;
+    }
+
+    Mat yuv = wrap(getHeight() + getHeight() / 2);
+    Imgproc.cvtColor(yuv, rgb, Imgproc.COLOR_YUV2RGB_NV21);
+    yuv.release();
+    return rgb;
+  }
+
+  /**
+   * Single channel Mat over the first rows of the buffer, the pixels are not copied. The
+   * buffer may be a read only mapping so the view must only ever be read, and must be released
+   * before the frame is closed.
+   */
+  private Mat wrap(int rows) {
+    if(!data.isDirect()) {
+      Mat mat = new Mat(rows, getWidth(), CvType.CV_8UC1);
+      byte[] pixels = new byte[rows * getWidth()];
+      data.duplicate().get(pixels);
+      mat.put(0, 0, pixels);
+      return mat;
+    }
+    return new Mat(rows, getWidth(), CvType.CV_8UC1, data);
+  }
+}
@@ -0,0 +1,42 @@
+package dev.robertpitt.anprX.frames;
+
+import androidx.camera.core.ImageProxy;
+
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+
+import dev.robertpitt.anprX.opencv.Utils;
+
+/**
+ * Frame backed by a CameraX ImageProxy in YUV_420_888, closing the frame closes the image
+ * which lets CameraX deliver the next one.
+ */
+public class CameraXFrame extends Frame {
+  private final ImageProxy image;
+
+  public CameraXFrame(ImageProxy image) {
+    super(image.getWidth(), image.getHeight(), image.getImageInfo().getRotationDegrees(), image.getImageInfo().getTimestamp());
+    this.image = image;
+  }
+
+  @Override
+  public ByteBuffer getLuma() {
+    return image.getPlanes()[0].getBuffer();
+  }
+
+  @Override
+  public int getLumaRowStride() {
+    return image.getPlanes()[0].getRowStride();
+  }
+
+  @Override
+  public Mat toRGB() {
+    return Utils.imageToRGB(image);
+  }
+
+  @Override
+  public void close() {
+    image.close();
+  }
+}
@@ -0,0 +1,47 @@
+package dev.robertpitt.anprX.frames;
+
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Live frames from a CameraX ImageAnalysis use case.
+ */
+public class CameraXFrameSource implements FrameSource, ImageAnalysis.Analyzer {
+  private final ImageAnalysis imageAnalysis;
+  private final Executor executor;
+  private volatile FrameSink sink;
+
+  /**
+   * @param imageAnalysis bound analysis use case
+   * @param executor executor the analyzer (and so the sink) runs on
+   */
+  public CameraXFrameSource(ImageAnalysis imageAnalysis, Executor executor) {
+    this.imageAnalysis = imageAnalysis;
+    this.executor = executor;
+  }
+
+  @Override
+  public void start(FrameSink sink) {
+    this.sink = sink;
+    imageAnalysis.setAnalyzer(executor, this);
+  }
+
+  @Override
+  public void stop() {
+    imageAnalysis.clearAnalyzer();
+    sink = null;
+  }
+
+  @Override
+  public void analyze(ImageProxy image) {
+    FrameSink target = sink;
+    if(target == null) {
+      image.close();
+      return;
+    }
+
+    target.onFrame(new CameraXFrame(image));
+  }
+}
@@ -0,0 +1,130 @@
+package dev.robertpitt.anprX.frames;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single frame delivered by a {@link FrameSource}, independent of where it came from.
+ *
+ * Frames are in the sensor orientation, {@link #getRotationDegrees()} is the clockwise rotation
+ * needed to display them upright. The consumer of a frame must close it once done.
+ */
+public abstract class Frame implements AutoCloseable {
+  private final int width;
+  private final int height;
+  private final int rotationDegrees;
+  private final long timestampNanos;
+
+  /**
+   * Monotonic time the frame entered the app, deadlines are measured from here as capture
+   * timestamps are in the source's own time base
+   */
+  private final long arrivalNanos = System.nanoTime();
+
+  protected Frame(int width, int height, int rotationDegrees, long timestampNanos) {
+    this.width = width;
+    this.height = height;
+    this.rotationDegrees = rotationDegrees;
+    this.timestampNanos = timestampNanos;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getRotationDegrees() {
+    return rotationDegrees;
+  }
+
+  /**
+   * Capture time of the frame, in the time base of the source
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /**
+   * {@link System#nanoTime()} when the frame was received from its source
+   */
+  public long getArrivalNanos() {
+    return arrivalNanos;
+  }
+
+  /**
+   * Luma (Y) plane of the frame, index 0 is the first pixel. Callers must not change the
+   * position of the returned buffer, use duplicate() when reading relative to it.
+   */
+  public abstract ByteBuffer getLuma();
+
+  /**
+   * Distance in bytes between the start of two rows of the luma plane
+   */
+  public abstract int getLumaRowStride();
+
+  /**
+   * Convert the frame to a new RGB Mat, the caller owns and must release the Mat
+   */
+  public abstract Mat toRGB();
+
+  /**
+   * Copy the luma plane into a new single channel Mat, the caller owns and must release the Mat.
+   * A tightly packed direct plane is copied natively without passing through the Java heap.
+   */
+  public Mat toLuma() {
+    ByteBuffer luma = getLuma().duplicate();
+    int rowStride = getLumaRowStride();
+    if(luma.isDirect() && rowStride == width) {
+      Mat view = new Mat(height, width, CvType.CV_8UC1, luma);
+      Mat mat = view.clone();
+      view.release();
+      return mat;
+    }
+
+    byte[] data = new byte[width * height];
+    if(rowStride == width) {
+      luma.get(data, 0, data.length);
+    } else {
+      for(int y = 0; y < height; y++) {
+        luma.position(y * rowStride);
+        luma.get(data, y * width, width);
+      }
+    }
+
+    Mat mat = new Mat(height, width, CvType.CV_8UC1);
+    mat.put(0, 0, data);
+    return mat;
+  }
+
+  /**
+   * Copy the luma plane, tightly packed, into the buffer at its current position. Copying
+   * between direct buffers never passes through the Java heap.
+   */
+  public void copyLumaTo(ByteBuffer destination) {
+    ByteBuffer luma = getLuma().duplicate();
+    int rowStride = getLumaRowStride();
+    if(rowStride == width) {
+      luma.limit(width * height);
+      destination.put(luma);
+      return;
+    }
+
+    for(int y = 0; y < height; y++) {
+      luma.limit(y * rowStride + width);
+      luma.position(y * rowStride);
+      destination.put(luma);
+    }
+  }
+
+  /**
+   * Release the frame back to its source
+   */
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,8 @@
+package dev.robertpitt.anprX.frames;
+
+/**
+ * Receives frames from a {@link FrameSource}, the sink owns the frame and must close it.
+ */
+public interface FrameSink {
+  void onFrame(Frame frame);
+}
@@ -0,0 +1,16 @@
+package dev.robertpitt.anprX.frames;
+
+/**
+ * Produces frames for the analysis pipeline, live from a camera or replayed from disk.
+ */
+public interface FrameSource {
+  /**
+   * Start delivering frames to the sink
+   */
+  void start(FrameSink sink);
+
+  /**
+   * Stop delivering frames, frames already delivered remain owned by the sink
+   */
+  void stop();
+}
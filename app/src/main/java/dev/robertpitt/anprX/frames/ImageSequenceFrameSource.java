@@ -0,0 +1,64 @@
+package dev.robertpitt.anprX.frames;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Replays a directory of images (jpg/png) in file name order at a fixed frame rate.
+ */
+public class ImageSequenceFrameSource extends ReplayFrameSource {
+  private final File[] images;
+  private final long frameIntervalNanos;
+  private final int rotationDegrees;
+
+  /**
+   * @param directory directory containing the images
+   * @param framesPerSecond rate used to generate timestamps for paced replay
+   * @param rotationDegrees rotation reported with every frame
+   */
+  public ImageSequenceFrameSource(File directory, double framesPerSecond, int rotationDegrees, Mode mode, boolean loop) throws IOException {
+    super(mode, loop);
+    this.images = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        String lower = name.toLowerCase(Locale.UK);
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png");
+      }
+    });
+    if(images == null) {
+      throw new IOException(String.format("Unable to list %s", directory));
+    }
+
+    Arrays.sort(images);
+    this.frameIntervalNanos = (long) (1e9 / framesPerSecond);
+    this.rotationDegrees = rotationDegrees;
+  }
+
+  @Override
+  protected int getFrameCount() {
+    return images.length;
+  }
+
+  @Override
+  protected long getTimestampNanos(int index) {
+    return index * frameIntervalNanos;
+  }
+
+  @Override
+  protected Frame getFrame(int index) throws IOException {
+    Mat bgr = Imgcodecs.imread(images[index].getAbsolutePath());
+    if(bgr.empty()) {
+      throw new IOException(String.format("Unable to decode %s", images[index]));
+    }
+
+    Imgproc.cvtColor(bgr, bgr, Imgproc.COLOR_BGR2RGB);
+    return new MatFrame(bgr, rotationDegrees, getTimestampNanos(index));
+  }
+}
@@ -0,0 +1,55 @@
+package dev.robertpitt.anprX.frames;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame backed by an RGB Mat, such as a decoded image. Closing the frame releases the Mat.
+ */
+public class MatFrame extends Frame {
+  private final Mat rgb;
+  private ByteBuffer luma;
+
+  public MatFrame(Mat rgb, int rotationDegrees, long timestampNanos) {
+    super(rgb.width(), rgb.height(), rotationDegrees, timestampNanos);
+    this.rgb = rgb;
+  }
+
+  @Override
+  public ByteBuffer getLuma() {
+    if(luma == null) {
+      Mat grey = new Mat();
+      Imgproc.cvtColor(rgb, grey, Imgproc.COLOR_RGB2GRAY);
+      byte[] data = new byte[getWidth() * getHeight()];
+      grey.get(0, 0, data);
+      grey.release();
+      luma = ByteBuffer.wrap(data);
+    }
+    return luma;
+  }
+
+  @Override
+  public int getLumaRowStride() {
+    return getWidth();
+  }
+
+  @Override
+  public Mat toRGB() {
+    return rgb.clone();
+  }
+
+  @Override
+  public Mat toLuma() {
+    Mat grey = new Mat(getHeight(), getWidth(), CvType.CV_8UC1);
+    Imgproc.cvtColor(rgb, grey, Imgproc.COLOR_RGB2GRAY);
+    return grey;
+  }
+
+  @Override
+  public void close() {
+    rgb.release();
+  }
+}
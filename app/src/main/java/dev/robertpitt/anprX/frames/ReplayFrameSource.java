@@ -0,0 +1,137 @@
+package dev.robertpitt.anprX.frames;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Replays recorded frames on a dedicated thread, either paced by the recorded timestamps or
+ * as fast as the sink can consume them. The sink is called on the replay thread so frames
+ * are delivered in order and one at a time.
+ */
+public abstract class ReplayFrameSource implements FrameSource {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::ReplayFrameSource";
+
+  public enum Mode {
+    /**
+     * Deliver frames at the rate they were recorded
+     */
+    PACED,
+
+    /**
+     * Deliver the next frame as soon as the sink returns, for throughput testing
+     */
+    AS_FAST_AS_POSSIBLE
+  }
+
+  private final Mode mode;
+  private final boolean loop;
+  private volatile boolean running = false;
+  private Thread thread;
+  private CountDownLatch finished = new CountDownLatch(0);
+
+  private volatile long framesDelivered = 0;
+  private volatile long elapsedNanos = 0;
+
+  protected ReplayFrameSource(Mode mode, boolean loop) {
+    this.mode = mode;
+    this.loop = loop;
+  }
+
+  /**
+   * Number of frames available for replay
+   */
+  protected abstract int getFrameCount();
+
+  /**
+   * Recorded timestamp of the frame at the index
+   */
+  protected abstract long getTimestampNanos(int index) throws Exception;
+
+  /**
+   * Load the frame at the index, ownership passes to the sink
+   */
+  protected abstract Frame getFrame(int index) throws Exception;
+
+  @Override
+  public synchronized void start(final FrameSink sink) {
+    if(running) {
+      return;
+    }
+
+    running = true;
+    finished = new CountDownLatch(1);
+    thread = new Thread(() -> {
+      try {
+        replay(sink);
+      } catch (InterruptedException e) {
+        // Stopped while waiting for the next frame
+      } catch (Exception e) {
+        Log.e(TAG, "Replay failed", e);
+      } finally {
+        running = false;
+        finished.countDown();
+      }
+    }, "anprx-replay");
+    thread.start();
+  }
+
+  private void replay(FrameSink sink) throws Exception {
+    int count = getFrameCount();
+    long start = SystemClock.elapsedRealtimeNanos();
+
+    do {
+      long passStart = SystemClock.elapsedRealtimeNanos();
+      long firstTimestamp = count > 0 ? getTimestampNanos(0) : 0;
+
+      for(int index = 0; index < count && running; index++) {
+        if(mode == Mode.PACED) {
+          long due = passStart + (getTimestampNanos(index) - firstTimestamp);
+          long wait = due - SystemClock.elapsedRealtimeNanos();
+          if(wait > 0) {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+          }
+        }
+
+        sink.onFrame(getFrame(index));
+        framesDelivered++;
+        elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+      }
+    } while(loop && running && count > 0);
+
+    Log.i(TAG, String.format(Locale.UK, "Replayed %d frames in %.1fms (%.1f fps)", framesDelivered, elapsedNanos / 1e6, getFramesPerSecond()));
+  }
+
+  @Override
+  public synchronized void stop() {
+    running = false;
+    if(thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  /**
+   * Block until the replay finishes or is stopped
+   */
+  public void awaitCompletion() throws InterruptedException {
+    finished.await();
+  }
+
+  public long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  /**
+   * Rate at which the sink consumed frames, in as fast as possible mode this is the
+   * throughput of the pipeline.
+   */
+  public double getFramesPerSecond() {
+    return elapsedNanos == 0 ? 0 : framesDelivered / (elapsedNanos / 1e9);
+  }
+}
@@ -0,0 +1,254 @@
+package dev.robertpitt.anprX.frames;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Raw frame dump file, a fixed size header followed by fixed size frame records:
+ *
+ * <pre>
+ * header: "ANPRYUV1" | int format | int width | int height | int reserved
+ * record: long timestampNanos | int rotationDegrees | int reserved | pixels
+ * </pre>
+ *
+ * Pixels are tightly packed NV21 (width * height * 3 / 2 bytes) or greyscale (width * height
+ * bytes). Dumps are read through read only memory mappings so replayed frames are never
+ * copied onto the Java heap. A mapping is limited to 2 GB, so the file is mapped a window of
+ * whole records at a time and dumps of any length can be replayed.
+ */
+public class YuvDump implements Closeable {
+  public static final int FORMAT_NV21 = 1;
+  public static final int FORMAT_GREY = 2;
+
+  private static final byte[] MAGIC = "ANPRYUV1".getBytes(Charset.forName("US-ASCII"));
+  public static final int HEADER_SIZE = 24;
+  public static final int RECORD_HEADER_SIZE = 16;
+
+  /**
+   * Upper bound on the size of a single mapping, a window always holds at least one record
+   */
+  private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final int format;
+  private final int width;
+  private final int height;
+  private final int frameCount;
+  private final long recordSize;
+  private final int recordsPerWindow;
+
+  /**
+   * Window holding the most recently read record
+   */
+  private MappedByteBuffer window;
+  private int windowIndex = -1;
+
+  private YuvDump(RandomAccessFile file, int format, int width, int height, int frameCount) {
+    this.file = file;
+    this.channel = file.getChannel();
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.frameCount = frameCount;
+    this.recordSize = RECORD_HEADER_SIZE + frameSize(format, width, height);
+    this.recordsPerWindow = (int) Math.max(1, WINDOW_SIZE / recordSize);
+  }
+
+  /**
+   * Size of the pixels of a single frame in bytes
+   */
+  public static int frameSize(int format, int width, int height) {
+    return format == FORMAT_GREY ? width * height : width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+  }
+
+  /**
+   * Map an existing dump file
+   */
+  public static YuvDump open(File path) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      if(file.length() < HEADER_SIZE) {
+        throw new IOException(String.format("%s is not a frame dump", path));
+      }
+
+      MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      byte[] magic = new byte[MAGIC.length];
+      buffer.get(magic);
+      for(int i = 0; i < MAGIC.length; i++) {
+        if(magic[i] != MAGIC[i]) {
+          throw new IOException(String.format("%s is not a frame dump", path));
+        }
+      }
+
+      int format = buffer.getInt();
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      buffer.getInt();
+
+      long recordSize = RECORD_HEADER_SIZE + frameSize(format, width, height);
+      int frameCount = (int) Math.min(Integer.MAX_VALUE, (file.length() - HEADER_SIZE) / recordSize);
+      return new YuvDump(file, format, width, height, frameCount);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  public int getFormat() {
+    return format;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Window holding the record at the index, mapped when it is not the current one
+   */
+  private synchronized MappedByteBuffer windowFor(int index) throws IOException {
+    if(index < 0 || index >= frameCount) {
+      throw new IndexOutOfBoundsException(String.format("Frame %d outside a dump of %d frames", index, frameCount));
+    }
+
+    int wanted = index / recordsPerWindow;
+    if(wanted != windowIndex) {
+      int first = wanted * recordsPerWindow;
+      int records = Math.min(recordsPerWindow, frameCount - first);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize, records * recordSize);
+      windowIndex = wanted;
+    }
+    return window;
+  }
+
+  /**
+   * Offset of the record at the index within its window
+   */
+  private int windowOffset(int index) {
+    return (int) ((index % recordsPerWindow) * recordSize);
+  }
+
+  /**
+   * Capture timestamp of the frame at the index
+   */
+  public long getTimestampNanos(int index) throws IOException {
+    return windowFor(index).getLong(windowOffset(index));
+  }
+
+  /**
+   * Frame at the index, the pixels are a view onto the mapping and are not copied
+   */
+  public BufferFrame getFrame(int index) throws IOException {
+    MappedByteBuffer buffer = windowFor(index);
+    int offset = windowOffset(index);
+    long timestamp = buffer.getLong(offset);
+    int rotation = buffer.getInt(offset + 8);
+
+    ByteBuffer pixels = buffer.duplicate();
+    pixels.position(offset + RECORD_HEADER_SIZE);
+    pixels.limit(offset + RECORD_HEADER_SIZE + frameSize(format, width, height));
+    return new BufferFrame(format, pixels.slice(), width, height, rotation, timestamp);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Appends frames to a dump file
+   */
+  public static class Writer implements Closeable {
+    private final FileChannel channel;
+    private final RandomAccessFile file;
+    private final int format;
+    private final int width;
+    private final int height;
+    private final ByteBuffer recordHeader = ByteBuffer.allocateDirect(RECORD_HEADER_SIZE);
+
+    public Writer(File path, int format, int width, int height) throws IOException {
+      this.file = new RandomAccessFile(path, "rw");
+      this.file.setLength(0);
+      this.channel = file.getChannel();
+      this.format = format;
+      this.width = width;
+      this.height = height;
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.put(MAGIC).putInt(format).putInt(width).putInt(height).putInt(0);
+      header.flip();
+      writeFully(header);
+    }
+
+    /**
+     * Append a frame, the pixels must be tightly packed in the writer's format
+     */
+    public void write(ByteBuffer pixels, long timestampNanos, int rotationDegrees) throws IOException {
+      if(pixels.remaining() != frameSize(format, width, height)) {
+        throw new IllegalArgumentException(String.format("Expected %d bytes of pixels, got %d", frameSize(format, width, height), pixels.remaining()));
+      }
+
+      recordHeader.clear();
+      recordHeader.putLong(timestampNanos).putInt(rotationDegrees).putInt(0);
+      recordHeader.flip();
+      writeFully(recordHeader);
+      writeFully(pixels);
+    }
+
+    /**
+     * Append the luma plane of a frame, only valid for greyscale dumps
+     */
+    public void writeLuma(Frame frame) throws IOException {
+      if(format != FORMAT_GREY) {
+        throw new IllegalStateException("Only greyscale dumps can be written from the luma plane");
+      }
+      if(frame.getWidth() != width || frame.getHeight() != height) {
+        throw new IllegalArgumentException(String.format("Expected a %dx%d frame, got %dx%d", width, height, frame.getWidth(), frame.getHeight()));
+      }
+
+      ByteBuffer luma = frame.getLuma().duplicate();
+      int rowStride = frame.getLumaRowStride();
+      if(rowStride == width) {
+        luma.limit(width * height);
+        write(luma, frame.getTimestampNanos(), frame.getRotationDegrees());
+        return;
+      }
+
+      recordHeader.clear();
+      recordHeader.putLong(frame.getTimestampNanos()).putInt(frame.getRotationDegrees()).putInt(0);
+      recordHeader.flip();
+      writeFully(recordHeader);
+      for(int y = 0; y < height; y++) {
+        luma.limit(y * rowStride + width);
+        luma.position(y * rowStride);
+        writeFully(luma);
+      }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.force(false);
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package dev.robertpitt.anprX.frames;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays a memory mapped {@link YuvDump} file.
+ */
+public class YuvDumpFrameSource extends ReplayFrameSource {
+  private final YuvDump dump;
+
+  public YuvDumpFrameSource(File path, Mode mode, boolean loop) throws IOException {
+    super(mode, loop);
+    this.dump = YuvDump.open(path);
+  }
+
+  @Override
+  protected int getFrameCount() {
+    return dump.getFrameCount();
+  }
+
+  @Override
+  protected long getTimestampNanos(int index) throws IOException {
+    return dump.getTimestampNanos(index);
+  }
+
+  @Override
+  protected Frame getFrame(int index) throws IOException {
+    return dump.getFrame(index);
+  }
+
+  /**
+   * Stop the replay and unmap the dump
+   */
+  public void close() throws IOException {
+    stop();
+    dump.close();
+  }
+}
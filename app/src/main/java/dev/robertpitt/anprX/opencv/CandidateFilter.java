@@ -0,0 +1,19 @@
+package dev.robertpitt.anprX.opencv;
+
+/**
+ * Decides whether a plate candidate may be selected, given its centre in the pixel
+ * coordinates of the Mat passed to detect (sensor orientation).
+ *
+ * Detectors that implement {@link Target} apply the filter while choosing between candidates,
+ * so a rejected candidate cannot hide a smaller one that would have been accepted.
+ */
+public interface CandidateFilter {
+  boolean accept(double x, double y);
+
+  interface Target {
+    /**
+     * @param filter null to accept every candidate
+     */
+    void setCandidateFilter(CandidateFilter filter);
+  }
+}
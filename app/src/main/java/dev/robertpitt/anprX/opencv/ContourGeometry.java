@@ -0,0 +1,257 @@
+package dev.robertpitt.anprX.opencv;
+
+/**
+ * Polygon geometry over packed point buffers (x0, y0, x1, y1, ...) so contours can be
+ * filtered on the Java side without a JNI call or an allocation per contour.
+ *
+ * Scratch buffers are passed in by the caller and reused between contours, see
+ * {@link #stackSize(int)} for the size the simplification stack needs.
+ */
+public final class ContourGeometry {
+  private ContourGeometry() {
+  }
+
+  /**
+   * Perimeter of the closed polygon
+   */
+  public static double perimeter(int[] points, int count) {
+    double length = 0;
+    for(int i = 0, j = count - 1; i < count; j = i++) {
+      double dx = points[i * 2] - points[j * 2];
+      double dy = points[i * 2 + 1] - points[j * 2 + 1];
+      length += Math.sqrt(dx * dx + dy * dy);
+    }
+    return length;
+  }
+
+  /**
+   * Area of the closed polygon (shoelace formula), always positive
+   */
+  public static double area(int[] points, int count) {
+    long twiceArea = 0;
+    for(int i = 0, j = count - 1; i < count; j = i++) {
+      twiceArea += (long) points[j * 2] * points[i * 2 + 1] - (long) points[i * 2] * points[j * 2 + 1];
+    }
+    return Math.abs(twiceArea) / 2.0;
+  }
+
+  /**
+   * True when every turn of the polygon is in the same direction, collinear vertices allowed
+   */
+  public static boolean isConvex(int[] points, int count) {
+    int sign = 0;
+    for(int i = 0; i < count; i++) {
+      int a = i * 2;
+      int b = ((i + 1) % count) * 2;
+      int c = ((i + 2) % count) * 2;
+      long cross = (long) (points[b] - points[a]) * (points[c + 1] - points[b + 1])
+          - (long) (points[b + 1] - points[a + 1]) * (points[c] - points[b]);
+      if(cross == 0) {
+        continue;
+      }
+
+      int turn = cross > 0 ? 1 : -1;
+      if(sign != 0 && turn != sign) {
+        return false;
+      }
+      sign = turn;
+    }
+    return true;
+  }
+
+  /**
+   * Largest absolute cosine of the corner angles of a quad, 0 for a perfect rectangle
+   */
+  public static double maxCornerCosine(int[] quad) {
+    double maxCosine = 0;
+    for(int j = 2; j < 5; j++) {
+      maxCosine = Math.max(maxCosine, Math.abs(cornerCosine(quad, j % 4, j - 2, j - 1)));
+    }
+    return maxCosine;
+  }
+
+  /**
+   * Cosine of the angle at vertex p0 between the edges to p1 and p2
+   */
+  private static double cornerCosine(int[] points, int p1, int p2, int p0) {
+    double dx1 = points[p1 * 2] - points[p0 * 2];
+    double dy1 = points[p1 * 2 + 1] - points[p0 * 2 + 1];
+    double dx2 = points[p2 * 2] - points[p0 * 2];
+    double dy2 = points[p2 * 2 + 1] - points[p0 * 2 + 1];
+    return (dx1 * dx2 + dy1 * dy2) / Math.sqrt((dx1 * dx1 + dy1 * dy1) * (dx2 * dx2 + dy2 * dy2) + 1e-10);
+  }
+
+  /**
+   * Ints needed by the stack of {@link #simplify} for a contour of the given size
+   */
+  public static int stackSize(int count) {
+    return (count + 1) * 2;
+  }
+
+  /**
+   * Douglas-Peucker simplification of a closed contour. The contour is split at its first
+   * point and the point furthest from it, then each chain is simplified iteratively.
+   *
+   * Only the first out.length / 2 vertices are written, the return value is always the full
+   * vertex count so callers looking for quads can pass an 8 element buffer.
+   *
+   * @param keep scratch flags, at least count long
+   * @param stack scratch stack, at least {@link #stackSize(int)} long
+   * @return number of vertices in the simplified polygon
+   */
+  public static int simplify(int[] points, int count, double epsilon, boolean[] keep, int[] stack, int[] out) {
+    if(count < 3) {
+      for(int i = 0; i < count * 2 && i < out.length; i++) {
+        out[i] = points[i];
+      }
+      return count;
+    }
+
+    /**
+     * Split point, furthest from the start
+     */
+    int split = 0;
+    long furthest = -1;
+    for(int i = 1; i < count; i++) {
+      long dx = points[i * 2] - points[0];
+      long dy = points[i * 2 + 1] - points[1];
+      long distance = dx * dx + dy * dy;
+      if(distance > furthest) {
+        furthest = distance;
+        split = i;
+      }
+    }
+
+    for(int i = 0; i < count; i++) {
+      keep[i] = false;
+    }
+    keep[0] = true;
+    keep[split] = true;
+
+    /**
+     * Chains are index ranges, the second wraps back around to the start point
+     */
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = split;
+    stack[top++] = split;
+    stack[top++] = count;
+
+    while(top > 0) {
+      int end = stack[--top];
+      int start = stack[--top];
+      if(end - start < 2) {
+        continue;
+      }
+
+      int ax = points[start * 2];
+      int ay = points[start * 2 + 1];
+      int bx = points[(end % count) * 2];
+      int by = points[(end % count) * 2 + 1];
+      double dx = bx - ax;
+      double dy = by - ay;
+      double length = Math.sqrt(dx * dx + dy * dy);
+
+      int index = -1;
+      double maxDistance = epsilon;
+      for(int i = start + 1; i < end; i++) {
+        double px = points[i * 2] - ax;
+        double py = points[i * 2 + 1] - ay;
+        double distance = length > 0
+            ? Math.abs(px * dy - py * dx) / length
+            : Math.sqrt(px * px + py * py);
+        if(distance > maxDistance) {
+          maxDistance = distance;
+          index = i;
+        }
+      }
+
+      if(index >= 0) {
+        keep[index] = true;
+        stack[top++] = start;
+        stack[top++] = index;
+        stack[top++] = index;
+        stack[top++] = end;
+      }
+    }
+
+    int kept = 0;
+    for(int i = 0; i < count; i++) {
+      if(!keep[i]) {
+        continue;
+      }
+      if(kept * 2 + 1 < out.length) {
+        out[kept * 2] = points[i * 2];
+        out[kept * 2 + 1] = points[i * 2 + 1];
+      }
+      kept++;
+    }
+    return kept;
+  }
+
+  /**
+   * Minimum area bounding rectangle of a convex polygon by rotating calipers, one candidate
+   * per edge. Written to out as centre x, centre y, width, height, angle in degrees, with the
+   * angle in [-90, 0) to match OpenCV's minAreaRect.
+   */
+  public static void minAreaRect(int[] points, int count, float[] out) {
+    double bestArea = Double.MAX_VALUE;
+    for(int i = 0, j = count - 1; i < count; j = i++) {
+      double ex = points[i * 2] - points[j * 2];
+      double ey = points[i * 2 + 1] - points[j * 2 + 1];
+      double length = Math.sqrt(ex * ex + ey * ey);
+      if(length == 0) {
+        continue;
+      }
+      double ux = ex / length;
+      double uy = ey / length;
+
+      /**
+       * Project every vertex onto the edge direction and its normal
+       */
+      double minU = Double.MAX_VALUE, maxU = -Double.MAX_VALUE;
+      double minV = Double.MAX_VALUE, maxV = -Double.MAX_VALUE;
+      for(int k = 0; k < count; k++) {
+        double u = points[k * 2] * ux + points[k * 2 + 1] * uy;
+        double v = -points[k * 2] * uy + points[k * 2 + 1] * ux;
+        minU = Math.min(minU, u);
+        maxU = Math.max(maxU, u);
+        minV = Math.min(minV, v);
+        maxV = Math.max(maxV, v);
+      }
+
+      double width = maxU - minU;
+      double height = maxV - minV;
+      if(width * height >= bestArea) {
+        continue;
+      }
+      bestArea = width * height;
+
+      double cu = (minU + maxU) / 2;
+      double cv = (minV + maxV) / 2;
+      double angle = Math.toDegrees(Math.atan2(uy, ux));
+
+      /**
+       * Normalise the angle into [-90, 0), a quarter turn swaps width and height
+       */
+      while(angle >= 0) {
+        angle -= 90;
+        double swap = width;
+        width = height;
+        height = swap;
+      }
+      while(angle < -90) {
+        angle += 90;
+        double swap = width;
+        width = height;
+        height = swap;
+      }
+
+      out[0] = (float) (cu * ux - cv * uy);
+      out[1] = (float) (cu * uy + cv * ux);
+      out[2] = (float) width;
+      out[3] = (float) height;
+      out[4] = (float) angle;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows a plate across consecutive frames and fuses its crops into a single cleaner image,
+ * so OCR runs once per few frames instead of once per noisy crop.
+ *
+ * Crops belong to the same track while their plate regions overlap from one frame to the next.
+ * Once a track has collected enough crops, or the plate has not been seen for a few frames,
+ * the crops are aligned to the first by phase correlation and mean stacked. The crops are
+ * binarised by the detector, so thresholding the mean is a per pixel majority vote which
+ * removes speckle that only appears in a minority of frames.
+ *
+ * The track also holds the frame of its latest crop as context, so the evidence of a fused
+ * read shows the plate's own vehicle even when the result is only returned once the next
+ * plate has been seen or the track has ended.
+ *
+ * Not thread safe, crops are added from the analysis thread.
+ */
+public class CropFusion {
+  /**
+   * Minimum overlap between the regions of consecutive crops of the same plate
+   */
+  private static final double TRACK_IOU = 0.3;
+
+  /**
+   * Minimum phase correlation response for a crop to be stacked, poorer matches are skipped
+   */
+  private static final double MIN_RESPONSE = 0.05;
+
+  /**
+   * A fused crop ready for OCR, the caller owns the image and the context
+   */
+  public static class Result {
+    public final Mat image;
+    public final long trackId;
+    public final int crops;
+    public final long frameTimestampNanos;
+    public final long arrivalNanos;
+
+    /**
+     * Frame of the track's latest crop, or null when none was given
+     */
+    public final Mat context;
+    public final int contextRotationDegrees;
+
+    Result(Mat image, long trackId, int crops, long frameTimestampNanos, long arrivalNanos, Mat context, int contextRotationDegrees) {
+      this.image = image;
+      this.trackId = trackId;
+      this.crops = crops;
+      this.frameTimestampNanos = frameTimestampNanos;
+      this.arrivalNanos = arrivalNanos;
+      this.context = context;
+      this.contextRotationDegrees = contextRotationDegrees;
+    }
+  }
+
+  private final int maxCrops;
+  private final int maxMisses;
+
+  private final List<Mat> crops = new ArrayList<>();
+  private Rect lastRegion;
+  private long trackId = 0;
+  private int misses = 0;
+  private long lastFrameTimestampNanos;
+  private long lastArrivalNanos;
+  private Mat context;
+  private int contextRotationDegrees;
+
+  /**
+   * @param maxCrops crops fused into each result
+   * @param maxMisses frames without the plate after which the track ends
+   */
+  public CropFusion(int maxCrops, int maxMisses) {
+    this.maxCrops = maxCrops;
+    this.maxMisses = maxMisses;
+  }
+
+  /**
+   * Add the crop of a frame, the crop is copied.
+   *
+   * @param context frame the crop came from, owned by the fusion from here on, may be null
+   * @param contextRotationDegrees clockwise rotation that makes the context upright
+   * @param region plate region the crop came from, may be null
+   * @return a fused crop when this crop completed a batch or started a new track, otherwise null
+   */
+  public Result add(Mat crop, Mat context, int contextRotationDegrees, RotatedRect region, long frameTimestampNanos, long arrivalNanos) {
+    Rect bounds = region != null ? region.boundingRect() : null;
+    Result result = null;
+
+    /**
+     * A crop that does not overlap the last one is a different plate, finish the old track
+     */
+    boolean sameTrack = bounds != null && lastRegion != null && Utils.intersectionOverUnion(bounds, lastRegion) >= TRACK_IOU;
+    if(!sameTrack) {
+      if(!crops.isEmpty()) {
+        result = fuse();
+      }
+      trackId++;
+    }
+
+    crops.add(crop.clone());
+    setContext(context, contextRotationDegrees);
+    lastRegion = bounds;
+    misses = 0;
+    lastFrameTimestampNanos = frameTimestampNanos;
+    lastArrivalNanos = arrivalNanos;
+
+    if(result == null && crops.size() >= maxCrops) {
+      result = fuse();
+    }
+    return result;
+  }
+
+  /**
+   * Record a frame without a plate
+   *
+   * @return the fused crop of the track if this ended it, otherwise null
+   */
+  public Result miss() {
+    if(crops.isEmpty() && lastRegion == null) {
+      return null;
+    }
+
+    if(++misses < maxMisses) {
+      return null;
+    }
+
+    Result result = crops.isEmpty() ? null : fuse();
+    lastRegion = null;
+    return result;
+  }
+
+  /**
+   * Drop any crops waiting to be fused
+   */
+  public void reset() {
+    for(Mat crop : crops) {
+      crop.release();
+    }
+    crops.clear();
+    setContext(null, 0);
+    lastRegion = null;
+  }
+
+  /**
+   * Replace the context held for the track
+   */
+  private void setContext(Mat context, int rotationDegrees) {
+    if(this.context != null) {
+      this.context.release();
+    }
+    this.context = context;
+    this.contextRotationDegrees = rotationDegrees;
+  }
+
+  /**
+   * Hand the context of the track to a result, the track keeps no context afterwards
+   */
+  private Mat takeContext() {
+    Mat taken = context;
+    context = null;
+    return taken;
+  }
+
+  /**
+   * Align and stack the collected crops, releasing them
+   */
+  private Result fuse() {
+    int count = crops.size();
+    Mat reference = crops.get(0);
+    if(count == 1) {
+      crops.clear();
+      return new Result(reference, trackId, 1, lastFrameTimestampNanos, lastArrivalNanos, takeContext(), contextRotationDegrees);
+    }
+
+    Size size = reference.size();
+    Mat referenceF = new Mat();
+    reference.convertTo(referenceF, CvType.CV_32F);
+    Mat accumulator = referenceF.clone();
+    Mat current = new Mat();
+    Mat currentF = new Mat();
+    Mat shifted = new Mat();
+    Mat translation = new Mat(2, 3, CvType.CV_64F);
+    Mat window = new Mat();
+    double[] response = new double[1];
+    int stacked = 1;
+
+    for(int i = 1; i < count; i++) {
+      Mat crop = crops.get(i);
+      if(crop.width() != reference.width() || crop.height() != reference.height()) {
+        Imgproc.resize(crop, current, size, 0, 0, Imgproc.INTER_LINEAR);
+      } else {
+        crop.copyTo(current);
+      }
+      current.convertTo(currentF, CvType.CV_32F);
+
+      Point shift = Imgproc.phaseCorrelate(referenceF, currentF, window, response);
+      if(response[0] < MIN_RESPONSE) {
+        continue;
+      }
+
+      translation.put(0, 0, 1, 0, -shift.x, 0, 1, -shift.y);
+      Imgproc.warpAffine(currentF, shifted, translation, size, Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+      Core.add(accumulator, shifted, accumulator);
+      stacked++;
+    }
+
+    Mat fused = new Mat();
+    accumulator.convertTo(fused, CvType.CV_8U, 1.0 / stacked);
+    Imgproc.threshold(fused, fused, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+
+    referenceF.release();
+    accumulator.release();
+    current.release();
+    currentF.release();
+    shifted.release();
+    translation.release();
+    window.release();
+    for(Mat crop : crops) {
+      crop.release();
+    }
+    crops.clear();
+
+    return new Result(fused, trackId, stacked, lastFrameTimestampNanos, lastArrivalNanos, takeContext(), contextRotationDegrees);
+  }
+}
@@ -0,0 +1,181 @@
+package dev.robertpitt.anprX.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Polygon of the camera view that can contain plates, such as the lane the camera points at.
+ *
+ * Vertices are normalised (0-1) in the upright frame as shown in the preview, so a zone
+ * survives changes of analysis resolution and device rotation. Zones are stored as text,
+ * vertices separated by spaces and zones by semicolons:
+ *   "0.1,0.4 0.9,0.4 0.9,1 0.1,1; 0,0 0.2,0 0.2,0.2"
+ */
+public class DetectionZone {
+  private final double[] xs;
+  private final double[] ys;
+
+  public DetectionZone(double[] xs, double[] ys) {
+    if(xs.length != ys.length || xs.length < 3) {
+      throw new IllegalArgumentException("A zone needs at least three vertices");
+    }
+    this.xs = xs.clone();
+    this.ys = ys.clone();
+  }
+
+  /**
+   * Parse every zone in the text, blank text has no zones
+   *
+   * @throws IllegalArgumentException when the text is malformed
+   */
+  public static List<DetectionZone> parseAll(String text) {
+    List<DetectionZone> zones = new ArrayList<>();
+    if(text == null) {
+      return zones;
+    }
+
+    for(String zone : text.split(";")) {
+      String[] vertices = zone.trim().split("\\s+");
+      if(vertices.length == 1 && vertices[0].isEmpty()) {
+        continue;
+      }
+
+      double[] xs = new double[vertices.length];
+      double[] ys = new double[vertices.length];
+      for(int i = 0; i < vertices.length; i++) {
+        String[] parts = vertices[i].split(",");
+        if(parts.length != 2) {
+          throw new IllegalArgumentException(String.format("Invalid vertex %s", vertices[i]));
+        }
+        try {
+          xs[i] = clamp(Double.parseDouble(parts[0]));
+          ys[i] = clamp(Double.parseDouble(parts[1]));
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException(String.format("Invalid vertex %s", vertices[i]));
+        }
+      }
+      zones.add(new DetectionZone(xs, ys));
+    }
+    return zones;
+  }
+
+  /**
+   * Text form of the zones, as read by {@link #parseAll}
+   */
+  public static String formatAll(List<DetectionZone> zones) {
+    StringBuilder text = new StringBuilder();
+    for(int i = 0; i < zones.size(); i++) {
+      if(i > 0) {
+        text.append("; ");
+      }
+      DetectionZone zone = zones.get(i);
+      for(int j = 0; j < zone.xs.length; j++) {
+        if(j > 0) {
+          text.append(' ');
+        }
+        text.append(String.format(Locale.UK, "%.4f,%.4f", zone.xs[j], zone.ys[j]));
+      }
+    }
+    return text.toString();
+  }
+
+  public int getVertexCount() {
+    return xs.length;
+  }
+
+  /**
+   * Determine if the normalised upright point lies inside the polygon
+   */
+  public boolean contains(double x, double y) {
+    boolean inside = false;
+    for(int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      if((ys[i] > y) != (ys[j] > y)
+          && x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Pixel rectangle of a frame in the sensor orientation that covers the zone
+   *
+   * @param width width of the frame in the sensor orientation
+   * @param height height of the frame in the sensor orientation
+   * @param rotationDegrees clockwise rotation that makes the frame upright
+   * @param out receives x, y, width and height, the width and height are 0 when the zone
+   *            does not cover a whole pixel
+   */
+  public void sensorBounds(int width, int height, int rotationDegrees, int[] out) {
+    double minX = 1, minY = 1, maxX = 0, maxY = 0;
+    double[] point = new double[2];
+    for(int i = 0; i < xs.length; i++) {
+      toSensor(xs[i], ys[i], rotationDegrees, point);
+      minX = Math.min(minX, point[0]);
+      minY = Math.min(minY, point[1]);
+      maxX = Math.max(maxX, point[0]);
+      maxY = Math.max(maxY, point[1]);
+    }
+
+    int left = (int) Math.floor(minX * width);
+    int top = (int) Math.floor(minY * height);
+    int right = (int) Math.ceil(maxX * width);
+    int bottom = (int) Math.ceil(maxY * height);
+    out[0] = left;
+    out[1] = top;
+    out[2] = Math.max(0, right - left);
+    out[3] = Math.max(0, bottom - top);
+  }
+
+  /**
+   * Map a normalised point of the upright frame into the normalised sensor frame
+   */
+  public static void toSensor(double x, double y, int rotationDegrees, double[] out) {
+    switch(rotationDegrees) {
+      case 90:
+        out[0] = y;
+        out[1] = 1 - x;
+        break;
+      case 180:
+        out[0] = 1 - x;
+        out[1] = 1 - y;
+        break;
+      case 270:
+        out[0] = 1 - y;
+        out[1] = x;
+        break;
+      default:
+        out[0] = x;
+        out[1] = y;
+    }
+  }
+
+  /**
+   * Map a point of the normalised sensor frame into the normalised upright frame, the inverse
+   * of {@link #toSensor}
+   */
+  public static void toUpright(double x, double y, int rotationDegrees, double[] out) {
+    switch(rotationDegrees) {
+      case 90:
+        out[0] = 1 - y;
+        out[1] = x;
+        break;
+      case 180:
+        out[0] = 1 - x;
+        out[1] = 1 - y;
+        break;
+      case 270:
+        out[0] = y;
+        out[1] = 1 - x;
+        break;
+      default:
+        out[0] = x;
+        out[1] = y;
+    }
+  }
+
+  private static double clamp(double value) {
+    return Math.max(0, Math.min(1, value));
+  }
+}
@@ -0,0 +1,123 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Tunable constants of {@link NumberplateDetectorV2}, immutable so one set can be shared by
+ * every detector instance.
+ *
+ * The defaults are the values V2 was hand tuned with. Other sets are found offline by
+ * {@link dev.robertpitt.anprX.benchmark.ParameterTuner} and shipped as per device class
+ * profiles, see {@link DetectorProfiles}.
+ */
+public class DetectorParameters {
+  /**
+   * Hand tuned values
+   */
+  public static final DetectorParameters DEFAULTS = new DetectorParameters(0.018, 1000, 2.5, 5, 3, true, 100, 0.3);
+
+  /**
+   * Polygon approximation tolerance relative to the contour perimeter
+   */
+  public final double polygonEpsilon;
+
+  /**
+   * Smallest quad area considered, in pixels
+   */
+  public final double minArea;
+
+  /**
+   * Smallest width to height ratio of the rectified plate
+   */
+  public final double minAspectRatio;
+
+  /**
+   * Gaussian blur applied before edge detection, the kernel size is odd
+   */
+  public final int blurSize;
+  public final double blurSigma;
+
+  /**
+   * Binarisation of the plate crop, Otsu picks the threshold per crop, otherwise the fixed
+   * threshold is used
+   */
+  public final boolean otsu;
+  public final double threshold;
+
+  /**
+   * Largest absolute corner cosine of a quad still considered rectangular
+   */
+  public final double maxCornerCosine;
+
+  public DetectorParameters(double polygonEpsilon, double minArea, double minAspectRatio, int blurSize, double blurSigma,
+                            boolean otsu, double threshold, double maxCornerCosine) {
+    if(blurSize < 1 || blurSize % 2 == 0) {
+      throw new IllegalArgumentException(String.format(Locale.UK, "Blur kernel size must be odd, got %d", blurSize));
+    }
+    this.polygonEpsilon = polygonEpsilon;
+    this.minArea = minArea;
+    this.minAspectRatio = minAspectRatio;
+    this.blurSize = blurSize;
+    this.blurSigma = blurSigma;
+    this.otsu = otsu;
+    this.threshold = threshold;
+    this.maxCornerCosine = maxCornerCosine;
+  }
+
+  public JSONObject toJson() throws JSONException {
+    return new JSONObject()
+        .put("polygonEpsilon", polygonEpsilon)
+        .put("minArea", minArea)
+        .put("minAspectRatio", minAspectRatio)
+        .put("blurSize", blurSize)
+        .put("blurSigma", blurSigma)
+        .put("otsu", otsu)
+        .put("threshold", threshold)
+        .put("maxCornerCosine", maxCornerCosine);
+  }
+
+  /**
+   * Read a set written by {@link #toJson}, missing values keep their defaults
+   */
+  public static DetectorParameters fromJson(JSONObject json) {
+    return new DetectorParameters(
+        json.optDouble("polygonEpsilon", DEFAULTS.polygonEpsilon),
+        json.optDouble("minArea", DEFAULTS.minArea),
+        json.optDouble("minAspectRatio", DEFAULTS.minAspectRatio),
+        json.optInt("blurSize", DEFAULTS.blurSize),
+        json.optDouble("blurSigma", DEFAULTS.blurSigma),
+        json.optBoolean("otsu", DEFAULTS.otsu),
+        json.optDouble("threshold", DEFAULTS.threshold),
+        json.optDouble("maxCornerCosine", DEFAULTS.maxCornerCosine));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if(this == o) return true;
+    if(!(o instanceof DetectorParameters)) return false;
+    DetectorParameters other = (DetectorParameters) o;
+    return polygonEpsilon == other.polygonEpsilon
+        && minArea == other.minArea
+        && minAspectRatio == other.minAspectRatio
+        && blurSize == other.blurSize
+        && blurSigma == other.blurSigma
+        && otsu == other.otsu
+        && threshold == other.threshold
+        && maxCornerCosine == other.maxCornerCosine;
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.UK, "epsilon=%.4f area=%.0f ratio=%.2f blur=%d/%.1f %s cosine=%.2f",
+        polygonEpsilon, minArea, minAspectRatio, blurSize, blurSigma,
+        otsu ? "otsu" : String.format(Locale.UK, "threshold=%.0f", threshold), maxCornerCosine);
+  }
+}
@@ -0,0 +1,109 @@
+package dev.robertpitt.anprX.opencv;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detector parameters tuned per class of device, so a low end phone can trade a little
+ * recall for latency while a flagship keeps the most accurate configuration.
+ *
+ * Profiles are chosen from the Pareto fronts written by
+ * {@link dev.robertpitt.anprX.benchmark.ParameterTuner} on a representative device of each
+ * class and shipped in the assets:
+ *   {
+ *     "profiles": {
+ *       "low": { "polygonEpsilon": 0.024, "minArea": 2000, ... },
+ *       "mid": { ... },
+ *       "high": { ... }
+ *     }
+ *   }
+ * A class without a profile, or a missing asset, uses {@link DetectorParameters#DEFAULTS}.
+ */
+public class DetectorProfiles {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::DetectorProfiles";
+
+  /**
+   * Asset holding the profiles, optional
+   */
+  public static final String PROFILES_ASSET = "detector_profiles.json";
+
+  /**
+   * Device classes
+   */
+  public static final String CLASS_LOW = "low";
+  public static final String CLASS_MID = "mid";
+  public static final String CLASS_HIGH = "high";
+
+  /**
+   * Total memory bounds of the classes, in bytes
+   */
+  private static final long LOW_MEMORY = 3L << 30;
+  private static final long HIGH_MEMORY = 6L << 30;
+
+  /**
+   * Class of the device from its core count and memory
+   */
+  public static String deviceClass(Context context) {
+    ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    ActivityManager.MemoryInfo memory = new ActivityManager.MemoryInfo();
+    activityManager.getMemoryInfo(memory);
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    if(activityManager.isLowRamDevice() || cores <= 4 || memory.totalMem < LOW_MEMORY) {
+      return CLASS_LOW;
+    }
+    if(cores >= 8 && memory.totalMem >= HIGH_MEMORY) {
+      return CLASS_HIGH;
+    }
+    return CLASS_MID;
+  }
+
+  /**
+   * Parameters for the device class from the profiles installed in the assets
+   */
+  public static DetectorParameters fromAssets(AssetManager assets, String deviceClass) {
+    try {
+      InputStream in = assets.open(PROFILES_ASSET);
+      try {
+        JSONObject profiles = new JSONObject(readAll(in)).getJSONObject("profiles");
+        JSONObject profile = profiles.optJSONObject(deviceClass);
+        if(profile != null) {
+          DetectorParameters parameters = DetectorParameters.fromJson(profile);
+          Log.i(TAG, String.format("Using the %s profile: %s", deviceClass, parameters));
+          return parameters;
+        }
+        Log.i(TAG, String.format("No %s profile, using the defaults", deviceClass));
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      Log.i(TAG, "No detector profiles installed, using the defaults");
+    } catch (IOException | JSONException | IllegalArgumentException e) {
+      Log.e(TAG, "Unable to read the detector profiles", e);
+    }
+    return DetectorParameters.DEFAULTS;
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toString("UTF-8");
+  }
+}
@@ -0,0 +1,86 @@
+package dev.robertpitt.anprX.opencv;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the available detector implementations, keyed by the values used in the
+ * "Detector" preference (see settings_detector_values).
+ */
+public class DetectorRegistry {
+  /**
+   * Factory used to create a fresh detector instance, detectors hold per frame working
+   * memory so every consumer needs its own instance.
+   */
+  public interface Factory {
+    IDetector create();
+  }
+
+  /**
+   * Detector used when the requested key is unknown or has not been configured.
+   */
+  public static final String DEFAULT_DETECTOR = "v2";
+
+  /**
+   * Registered factories, insertion ordered so the keys match the preference ordering.
+   */
+  private final Map<String, Factory> factories = new LinkedHashMap<>();
+
+  /**
+   * Parameters given to new V2 detectors
+   */
+  private volatile DetectorParameters parameters = DetectorParameters.DEFAULTS;
+
+  /**
+   * Create a registry with the built in detectors registered.
+   */
+  public DetectorRegistry() {
+    register("v1", NumberplateDetectorV1::new);
+    register("v2", () -> new NumberplateDetectorV2(parameters));
+    register("v3", NumberplateDetectorV3::new);
+  }
+
+  /**
+   * Register (or replace) a detector factory
+   */
+  public void register(String key, Factory factory) {
+    factories.put(key, factory);
+  }
+
+  /**
+   * Parameters for V2 detectors created from now on, such as a device class profile from
+   * {@link DetectorProfiles}, existing detectors keep theirs
+   */
+  public void setParameters(DetectorParameters parameters) {
+    this.parameters = parameters;
+  }
+
+  public DetectorParameters getParameters() {
+    return parameters;
+  }
+
+  /**
+   * Determine if a detector has been registered for the key
+   */
+  public boolean contains(String key) {
+    return key != null && factories.containsKey(key);
+  }
+
+  /**
+   * Registered detector keys
+   */
+  public Set<String> keys() {
+    return Collections.unmodifiableSet(factories.keySet());
+  }
+
+  /**
+   * Create a new detector for the given key, falling back to the default detector
+   * when the key has not been registered.
+   */
+  public IDetector create(String key) {
+    Factory factory = factories.get(contains(key) ? key : DEFAULT_DETECTOR);
+    return factory.create();
+  }
+}
@@ -1,19 +1,50 @@
 package dev.robertpitt.anprX.opencv;
 
-import androidx.camera.core.ImageProxy;
-
 import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import dev.robertpitt.anprX.frames.Frame;
 
+/**
+ * Mats returned from detect and getDebugView are owned by the detector and stay valid until
+ * the next call to detect, callers must not release them.
+ */
 public interface IDetector {
   /**
-   *
+   * Detect a plate in an upright RGB frame
    */
   Mat detect(Mat src);
 
+  /**
+   * Detect a plate in an RGB frame in the sensor orientation, the frame itself is never
+   * rotated, only the plate crop and region are.
+   *
+   * @param rotationDegrees clockwise rotation that makes the frame upright
+   */
+  Mat detect(Mat src, int rotationDegrees);
+
   /**
    *
    */
-  Mat detect(ImageProxy image);
+  Mat detect(Frame frame);
 
   Mat getDebugView();
+
+  /**
+   * True when the detector only looks at the luma, a single channel Mat may then be passed to
+   * detect in place of RGB so the frame never needs converting
+   */
+  boolean acceptsLuma();
+
+  /**
+   * Region of the plate selected by the last call to detect, in the coordinates of the
+   * frame that was passed in once rotated upright, or null when no plate was found.
+   */
+  RotatedRect getPlateRegion();
+
+  /**
+   * Free the native working memory, the detector allocates it again if it is used afterwards.
+   * Must be called on the thread that runs detect, never while a detection is in progress.
+   */
+  void release();
 }
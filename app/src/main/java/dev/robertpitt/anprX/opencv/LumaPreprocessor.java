@@ -0,0 +1,93 @@
+package dev.robertpitt.anprX.opencv;
+
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Greyscale, histogram equalised and blurred luma of a frame, together with the mean and
+ * standard deviation of the equalised luma used for the Canny thresholds.
+ *
+ * Done one operation at a time this is four full frame passes (cvtColor, equalizeHist,
+ * GaussianBlur and meanStdDev), which at 1080p is bound by memory bandwidth rather than
+ * arithmetic. The native kernel in opencv_anpr fuses them into two tiled passes over the
+ * luma using OpenCV universal intrinsics, so it vectorises on both ARM NEON and x86 SSE, and
+ * takes the statistics straight from the histogram. Its blur uses 8 bit fixed point weights
+ * so it may differ from GaussianBlur by one grey level.
+ *
+ * When the opencv_anpr library has not been loaded, or a blur other than the 5x5 kernel it
+ * implements is asked for, the separate OpenCV calls are used.
+ */
+public class LumaPreprocessor {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::LumaPreprocessor";
+
+  private static native void preprocess_c(long srcAddress, long equalisedAddress, long blurredAddress, double[] stats);
+
+  /**
+   * Cleared the first time the native kernel turns out to be missing
+   */
+  private static volatile boolean nativeAvailable = true;
+
+  /**
+   * Blur implemented by the native kernel
+   */
+  static final int NATIVE_BLUR_SIZE = 5;
+  static final double NATIVE_BLUR_SIGMA = 3;
+
+  /**
+   * @param src RGB, RGBA or greyscale frame
+   * @param equalised receives the equalised greyscale frame
+   * @param blurred receives the equalised frame blurred with a 5x5 Gaussian, sigma 3
+   * @param stats receives the mean and standard deviation of the equalised frame
+   */
+  public void process(Mat src, Mat equalised, Mat blurred, double[] stats) {
+    process(src, equalised, blurred, stats, NATIVE_BLUR_SIZE, NATIVE_BLUR_SIGMA);
+  }
+
+  /**
+   * @param blurSize odd Gaussian kernel size
+   * @param blurSigma Gaussian standard deviation
+   * @see #process(Mat, Mat, Mat, double[])
+   */
+  public void process(Mat src, Mat equalised, Mat blurred, double[] stats, int blurSize, double blurSigma) {
+    if(nativeAvailable && blurSize == NATIVE_BLUR_SIZE && blurSigma == NATIVE_BLUR_SIGMA) {
+      try {
+        preprocess_c(src.nativeObj, equalised.nativeObj, blurred.nativeObj, stats);
+        return;
+      } catch (UnsatisfiedLinkError e) {
+        Log.w(TAG, "Native preprocessing unavailable, using OpenCV calls");
+        nativeAvailable = false;
+      }
+    }
+
+    processSeparately(src, equalised, blurred, stats, blurSize, blurSigma);
+  }
+
+  /**
+   * The same result from the individual OpenCV operations
+   */
+  static void processSeparately(Mat src, Mat equalised, Mat blurred, double[] stats, int blurSize, double blurSigma) {
+    if(src.channels() == 1) {
+      src.copyTo(equalised);
+    } else {
+      Imgproc.cvtColor(src, equalised, src.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+    }
+    Imgproc.equalizeHist(equalised, equalised);
+    Imgproc.GaussianBlur(equalised, blurred, new Size(blurSize, blurSize), blurSigma);
+
+    MatOfDouble mu = new MatOfDouble();
+    MatOfDouble sigma = new MatOfDouble();
+    Core.meanStdDev(equalised, mu, sigma);
+    stats[0] = mu.get(0, 0)[0];
+    stats[1] = sigma.get(0, 0)[0];
+    sigma.release();
+    mu.release();
+  }
+}
@@ -0,0 +1,207 @@
+package dev.robertpitt.anprX.opencv;
+
+import android.os.Debug;
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import dev.robertpitt.anprX.BuildConfig;
+
+/**
+ * Tracks the native OpenCV allocations made by the detectors and utils.
+ *
+ * Mats are registered either as frame scoped ({@link #track}), which must be released before
+ * the frame ends, or as retained ({@link #retain}) working memory that lives across frames.
+ * At the end of each frame any frame scoped Mat that still holds data is reported as a leak,
+ * in debug builds together with the stack trace of where it was allocated.
+ */
+public class MatTracker {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::MatTracker";
+
+  /**
+   * Number of frames between each native memory gauge written to the log
+   */
+  private static final int GAUGE_INTERVAL = 300;
+
+  /**
+   * Allocation details for a tracked Mat
+   */
+  private static class Allocation {
+    boolean retained;
+    final Throwable site;
+
+    Allocation(boolean retained, Throwable site) {
+      this.retained = retained;
+      this.site = site;
+    }
+  }
+
+  /**
+   * Every tracked Mat that has not been garbage collected, guarded by the class lock
+   */
+  private static final Map<Mat, Allocation> allocations = new WeakHashMap<>();
+
+  /**
+   * Frame scoped Mats allocated by the current thread since {@link #beginFrame}
+   */
+  private static final ThreadLocal<List<Mat>> frameAllocations = new ThreadLocal<>();
+
+  private static volatile boolean enabled = true;
+  private static volatile boolean captureSites = BuildConfig.DEBUG;
+
+  private static long frames = 0;
+  private static long leaks = 0;
+
+  /**
+   * Enable or disable tracking, when disabled track and retain simply return the Mat
+   */
+  public static void setEnabled(boolean enabled) {
+    MatTracker.enabled = enabled;
+  }
+
+  /**
+   * Capture the allocation site of every tracked Mat, defaults to on for debug builds only
+   */
+  public static void setCaptureSites(boolean captureSites) {
+    MatTracker.captureSites = captureSites;
+  }
+
+  /**
+   * Track a Mat that must be released before the end of the current frame
+   */
+  public static <T extends Mat> T track(T mat) {
+    if(!enabled) {
+      return mat;
+    }
+
+    register(mat, false);
+    List<Mat> frame = frameAllocations.get();
+    if(frame != null) {
+      frame.add(mat);
+    }
+    return mat;
+  }
+
+  /**
+   * Track a Mat that intentionally outlives the frame, such as detector working memory or a
+   * result that stays valid until the next frame. Can also be used to promote a Mat previously
+   * passed to {@link #track}.
+   */
+  public static <T extends Mat> T retain(T mat) {
+    if(!enabled) {
+      return mat;
+    }
+
+    register(mat, true);
+    return mat;
+  }
+
+  private static synchronized void register(Mat mat, boolean retained) {
+    Allocation allocation = allocations.get(mat);
+    if(allocation != null) {
+      allocation.retained |= retained;
+      return;
+    }
+
+    allocations.put(mat, new Allocation(retained, captureSites ? new Throwable("Mat allocated here") : null));
+  }
+
+  /**
+   * Start a frame on the calling thread
+   */
+  public static void beginFrame() {
+    if(enabled) {
+      frameAllocations.set(new ArrayList<Mat>());
+    }
+  }
+
+  /**
+   * End the frame on the calling thread, reporting any frame scoped Mat that is still alive.
+   *
+   * @return number of Mats leaked by the frame
+   */
+  public static int endFrame() {
+    List<Mat> frame = frameAllocations.get();
+    frameAllocations.remove();
+    if(frame == null) {
+      return 0;
+    }
+
+    int leaked = 0;
+    synchronized (MatTracker.class) {
+      for(Mat mat : frame) {
+        Allocation allocation = allocations.get(mat);
+        if(allocation == null || allocation.retained || mat.empty()) {
+          continue;
+        }
+
+        leaked++;
+        Log.w(TAG, String.format("%s still alive at end of frame", mat), allocation.site);
+      }
+
+      leaks += leaked;
+      if(++frames % GAUGE_INTERVAL == 0) {
+        Log.i(TAG, gauge());
+      }
+    }
+
+    return leaked;
+  }
+
+  /**
+   * Number of tracked Mats currently holding native memory
+   */
+  public static synchronized int getLiveCount() {
+    int count = 0;
+    for(Mat mat : allocations.keySet()) {
+      if(mat != null && !mat.empty()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Native memory held by tracked Mats, in bytes
+   */
+  public static synchronized long getLiveBytes() {
+    long bytes = 0;
+    for(Mat mat : allocations.keySet()) {
+      if(mat != null && !mat.empty()) {
+        bytes += mat.total() * mat.elemSize();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Total Mats reported as leaked since the process started
+   */
+  public static synchronized long getLeakCount() {
+    return leaks;
+  }
+
+  /**
+   * Size of the process native heap in bytes, includes memory held by OpenCV and Tesseract
+   */
+  public static long getNativeHeapBytes() {
+    return Debug.getNativeHeapAllocatedSize();
+  }
+
+  /**
+   * Summary of the native memory gauges
+   */
+  public static synchronized String gauge() {
+    return String.format(Locale.UK, "frames=%d liveMats=%d liveBytes=%d leaked=%d nativeHeap=%d",
+        frames, getLiveCount(), getLiveBytes(), leaks, getNativeHeapBytes());
+  }
+}
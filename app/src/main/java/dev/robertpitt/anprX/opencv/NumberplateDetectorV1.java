@@ -1,6 +1,5 @@
 package dev.robertpitt.anprX.opencv;
 
-import androidx.camera.core.ImageProxy;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
@@ -17,6 +16,8 @@ import org.opencv.imgproc.Imgproc;
 import java.util.ArrayList;
 import java.util.List;
 
+import dev.robertpitt.anprX.frames.Frame;
+
 /**
  *
  */
@@ -68,6 +69,29 @@ public class NumberplateDetectorV1 implements IDetector {
   Scalar rear_upper_range = new Scalar(50, 255, 255); //[60, 255, 255]
   Mat rear_mask;
 
+  /**
+   * Region of the plate found in the last frame
+   */
+  private RotatedRect plateRegion;
+
+  /**
+   * Upright copy of the edge view and the rotation of the frame it came from
+   */
+  private Mat debugView;
+  private int debugRotationDegrees = 0;
+
+  /**
+   * Structuring element used for the morphological noise filter, constant between frames
+   */
+  private Mat kernel;
+
+  /**
+   * Contour working memory
+   */
+  private Mat hierarchy;
+  private MatOfPoint2f currentContour;
+  private MatOfPoint2f currentApproxCurve;
+
   /**
    *
    */
@@ -78,13 +102,19 @@ public class NumberplateDetectorV1 implements IDetector {
    */
   private void _initialise() {
     if(_initialised == false) {
-      frame = new Mat();
-      frame_hsv = new Mat();
-      frame_edges = new Mat();
-      front_mask = new Mat();
-      rear_mask = new Mat();
-      front_mask_hsv = new Mat();
-      rear_mask_hsv = new Mat();
+      frame = MatTracker.retain(new Mat());
+      frame_hsv = MatTracker.retain(new Mat());
+      frame_edges = MatTracker.retain(new Mat());
+      front_mask = MatTracker.retain(new Mat());
+      rear_mask = MatTracker.retain(new Mat());
+      front_mask_hsv = MatTracker.retain(new Mat());
+      rear_mask_hsv = MatTracker.retain(new Mat());
+      kernel = MatTracker.retain(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5), new Point(-1, -1)));
+      hierarchy = MatTracker.retain(new Mat());
+      debugView = MatTracker.retain(new Mat());
+      currentContour = MatTracker.retain(new MatOfPoint2f());
+      currentApproxCurve = MatTracker.retain(new MatOfPoint2f());
+      _initialised = true;
     } else {
       frame.release();
       frame_hsv.release();
@@ -97,18 +127,38 @@ public class NumberplateDetectorV1 implements IDetector {
   }
 
   /**
-   * Perform detection on an ImageProxy instance
+   * Perform detection on a frame from any frame source
    */
-  public Mat detect(ImageProxy image) {
-    return detect(Utils.imageToRGB(image));
+  public Mat detect(Frame frame) {
+    Mat rgb = frame.toRGB();
+    Mat result = detect(rgb, frame.getRotationDegrees());
+    rgb.release();
+    return result;
   }
 
   /**
-   * Process the working frame
+   * Plates are found by their colour
+   */
+  @Override
+  public boolean acceptsLuma() {
+    return false;
+  }
+
+  /**
+   * Process an upright working frame
    */
   public Mat detect(Mat src) {
+    return detect(src, 0);
+  }
+
+  /**
+   * Process the working frame
+   */
+  public Mat detect(Mat src, int rotationDegrees) {
     // Prep for the first frame and also do memory clear up between frames
     _initialise();
+    plateRegion = null;
+    debugRotationDegrees = rotationDegrees;
 
     // Resize the input to 640x480 into the frame pointer
     src.copyTo(frame);
@@ -128,7 +178,6 @@ public class NumberplateDetectorV1 implements IDetector {
     // performing an morphological transform to filter out noise that doesn't meet the rect matrix
     // requirements, this helps remove non rectangular pixel groups
     Point anchor = new Point(-1, -1);
-    Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5), anchor);
 
     // During the morphological process we perform an OPEN by a CLOSE operation, these are synonymous
     // with erode and dilate, basically shrinking the white pixel groups down and then expanding them again,
@@ -142,8 +191,6 @@ public class NumberplateDetectorV1 implements IDetector {
     // Now that we have the masks, we can use them to filter out data from the HSV frame, so that
     // where the black pixels are removed from the HSV layer and the white pixels are left, this
     // produces a HSV image with only the plate areas exposed
-    front_mask_hsv = new Mat();
-    rear_mask_hsv = new Mat();
     Core.bitwise_and(frame_hsv, frame_hsv, front_mask_hsv, front_mask);
     Core.bitwise_and(frame_hsv, frame_hsv, front_mask_hsv, front_mask);
     Core.bitwise_and(frame_hsv, frame_hsv, rear_mask_hsv, rear_mask);
@@ -155,14 +202,12 @@ public class NumberplateDetectorV1 implements IDetector {
 
     // Extract Contours
     List<MatOfPoint> contours = new ArrayList<>();
-    Imgproc.findContours(frame_edges, contours, new Mat(), Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
+    Imgproc.findContours(frame_edges, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
 
     // Instead of removing each non interesting element from the contours array we can just loop
     // over the contours and select the ones we are interested in
     double candidateAreaSize = 0; // used to check of a contours is larger than
     RotatedRect numberplateRect = null;
-    MatOfPoint2f currentContour = new MatOfPoint2f();
-    MatOfPoint2f currentApproxCurve = new MatOfPoint2f();
 
     for (int index = 0; index < contours.size(); index++) {
       // Convert the input to a MatOfPoint2F in order to process the contour
@@ -189,24 +234,64 @@ public class NumberplateDetectorV1 implements IDetector {
       }
     }
 
+    for (int index = 0; index < contours.size(); index++) {
+      contours.get(index).release();
+    }
+
     Mat normalizedPlate = null;
 
     // Draw the contours over the frame
     if(numberplateRect != null) {
-      normalizedPlate = Utils.rotateAndDeskew(frame, numberplateRect);
-      if(normalizedPlate.width() > frame.width() || normalizedPlate.height() > frame.height()) {
+      normalizedPlate = Utils.rotateAndDeskew(frame, numberplateRect, rotationDegrees);
+      Size upright = Utils.uprightSize(frame.size(), rotationDegrees);
+      if(normalizedPlate.width() > upright.width || normalizedPlate.height() > upright.height) {
+        normalizedPlate.release();
         return rear_mask;
       }
 
+      plateRegion = Utils.rotateRect(numberplateRect, frame.size(), rotationDegrees);
       Rect tl = new Rect(0,0, Math.min(normalizedPlate.width(), 480), Math.min(normalizedPlate.height(), 640));
-      normalizedPlate.copyTo(frame.submat(tl));
+      Mat target = frame.submat(tl);
+      normalizedPlate.copyTo(target);
+      target.release();
+      normalizedPlate.release();
     }
 
     return front_mask;
   }
 
+  /**
+   * The edge view covers the whole frame, it is only rotated upright when it is asked for
+   */
   @Override
   public Mat getDebugView() {
-    return frame_edges;
+    if(debugRotationDegrees == 0) {
+      return frame_edges;
+    }
+
+    Core.rotate(frame_edges, debugView, debugRotationDegrees == 90
+        ? Core.ROTATE_90_CLOCKWISE
+        : debugRotationDegrees == 180 ? Core.ROTATE_180 : Core.ROTATE_90_COUNTERCLOCKWISE);
+    return debugView;
+  }
+
+  @Override
+  public RotatedRect getPlateRegion() {
+    return plateRegion;
+  }
+
+  @Override
+  public void release() {
+    if(!_initialised) {
+      return;
+    }
+
+    Mat[] mats = { frame, frame_hsv, frame_edges, front_mask, rear_mask, front_mask_hsv, rear_mask_hsv,
+        kernel, hierarchy, debugView, currentContour, currentApproxCurve };
+    for(Mat mat : mats) {
+      mat.release();
+    }
+    plateRegion = null;
+    _initialised = false;
   }
 }
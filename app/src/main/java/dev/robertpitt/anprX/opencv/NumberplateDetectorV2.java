@@ -1,11 +1,9 @@
 package dev.robertpitt.anprX.opencv;
 
-import androidx.camera.core.ImageProxy;
 
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
@@ -14,8 +12,10 @@ import org.opencv.imgproc.Imgproc;
 import java.util.ArrayList;
 import java.util.List;
 
+import dev.robertpitt.anprX.frames.Frame;
 
-public class NumberplateDetectorV2 implements IDetector {
+
+public class NumberplateDetectorV2 implements IDetector, CandidateFilter.Target {
 
   /**
    * Initialised Flag
@@ -25,21 +25,59 @@ public class NumberplateDetectorV2 implements IDetector {
   private Mat processedFrame;
   private Mat edges;
   private Mat normalizedPlate;
+  private RotatedRect plateRegion;
 
-  // Filter Class
-  private MatOfPoint2f contour2f;
-  private MatOfPoint2f approxCurve;
-  private MatOfPoint possiblePlateBox;
+  private Mat hierarchy;
 
-  private static native void detect_c(long srcAddress);
+  /**
+   * Contour filter working memory, packed x,y point buffers grown to the largest contour seen
+   */
+  private int[] contourPoints = new int[0];
+  private boolean[] simplifyKeep = new boolean[0];
+  private int[] simplifyStack = new int[0];
+  private final int[] quad = new int[8];
+  private final float[] rect = new float[5];
+
+  /**
+   * Corners of the selected outline, warped straight into the plate patch
+   */
+  private PlateRectifier rectifier;
+  private final float[] candidateQuad = new float[8];
+
+  /**
+   * Fused greyscale, equalise and blur, and the mean and standard deviation it measured
+   */
+  private final LumaPreprocessor preprocessor = new LumaPreprocessor();
+  private final double[] lumaStats = new double[2];
+
+  /**
+   * Restricts the candidates to a detection zone, null when the whole frame is searched
+   */
+  private CandidateFilter candidateFilter;
+
+  /**
+   * Tunable thresholds, the hand tuned defaults unless a profile is given
+   */
+  private final DetectorParameters parameters;
+
+  public NumberplateDetectorV2() {
+    this(DetectorParameters.DEFAULTS);
+  }
+
+  public NumberplateDetectorV2(DetectorParameters parameters) {
+    this.parameters = parameters;
+  }
 
   /**
    * Initialise Memory Allocations
    */
   protected void _initialise(Mat src) {
     if(!_initialised) {
-      singleChannel8BitImage = new Mat();
-      edges = new Mat();
+      singleChannel8BitImage = MatTracker.retain(new Mat());
+      processedFrame = MatTracker.retain(new Mat());
+      edges = MatTracker.retain(new Mat());
+      hierarchy = MatTracker.retain(new Mat());
+      rectifier = new PlateRectifier();
       normalizedPlate = null;
       _initialised = true;
     } else {
@@ -47,12 +85,37 @@ public class NumberplateDetectorV2 implements IDetector {
       processedFrame.release();
       edges.release();
     }
+
+    /**
+     * The plate from the previous frame is only valid until the next call to detect
+     */
+    if(normalizedPlate != null) {
+      normalizedPlate.release();
+      normalizedPlate = null;
+    }
+  }
+
+  /**
+   * Perform detection on a frame from any frame source, only the luma plane is needed
+   */
+  public Mat detect(Frame frame) {
+    Mat luma = frame.toLuma();
+    Mat plate = detect(luma, frame.getRotationDegrees());
+    luma.release();
+    return plate;
   }
+
   /**
-   * Perform detection on an ImageProxy instance
+   * The kernel greys the input in its first pass, which is a copy for single channel input
    */
-  public Mat detect(ImageProxy image) {
-    return detect(Utils.imageToRGB(image));
+  @Override
+  public boolean acceptsLuma() {
+    return true;
+  }
+
+  @Override
+  public void setCandidateFilter(CandidateFilter filter) {
+    this.candidateFilter = filter;
   }
 
   @Override
@@ -60,101 +123,84 @@ public class NumberplateDetectorV2 implements IDetector {
     return normalizedPlate;
   }
 
+  @Override
+  public RotatedRect getPlateRegion() {
+    return plateRegion;
+  }
+
+  @Override
+  public void release() {
+    if(!_initialised) {
+      return;
+    }
+
+    singleChannel8BitImage.release();
+    processedFrame.release();
+    edges.release();
+    hierarchy.release();
+    rectifier.release();
+    if(normalizedPlate != null) {
+      normalizedPlate.release();
+      normalizedPlate = null;
+    }
+    plateRegion = null;
+    _initialised = false;
+  }
+
 
 
   @Override
   public Mat detect(Mat rgb) {
-    detect_c(rgb.nativeObj);
+    return detect(rgb, 0);
+  }
 
+  @Override
+  public Mat detect(Mat rgb, int rotationDegrees) {
     _initialise(rgb);
+    plateRegion = null;
 
     /**
-     * Convert input image to mat, this is the greyscale version of the YUV
-     */
-    Imgproc.cvtColor(rgb, singleChannel8BitImage, Imgproc.COLOR_RGB2GRAY);
-
-    /**
-     * Equalize Histogram
-     */
-    Imgproc.equalizeHist(singleChannel8BitImage, singleChannel8BitImage);
-
-    /**
-     * Do a bilateral filter to clean the noise but keep edges sharp
+     * Convert the frame to greyscale, equalise the histogram and blur to clean the noise,
+     * fused into a single native pass that also measures the equalised luma
      */
-    processedFrame = new Mat(singleChannel8BitImage.size(), singleChannel8BitImage.type());
-    Imgproc.GaussianBlur(singleChannel8BitImage, processedFrame, new Size(5, 5), 3);
+    preprocessor.process(rgb, singleChannel8BitImage, processedFrame, lumaStats, parameters.blurSize, parameters.blurSigma);
 
     /**
      * Perform a canny edge detection on the image
      */
-    double[] thresholds = Utils.estimateCannyThresholds(singleChannel8BitImage);
+    double[] thresholds = Utils.cannyThresholds(lumaStats[0], lumaStats[1]);
     Imgproc.Canny(processedFrame, edges, thresholds[0], thresholds[1]);
 
     List<MatOfPoint> contours = new ArrayList<>();
-    Imgproc.findContours(edges, contours, new MatOfPoint(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_NONE);
+    Imgproc.findContours(edges, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_NONE);
 
     /**
-     * Iterate over the contours, skipping contours that we are not interested in.
+     * Select the largest rectangular contour in a single pass
      */
-    List<MatOfPoint> filteredContours = filterContours(contours);
+    RotatedRect numberplateRect = selectCandidate(contours);
 
-    double candidateAreaSize = 0; // used to check of a contours is larger than
-    RotatedRect numberplateRect = null;
-    MatOfPoint2f currentContour = new MatOfPoint2f();
-    MatOfPoint2f currentApproxCurve = new MatOfPoint2f();
-
-    for (int index = 0; index < filteredContours.size(); index++) {
-      /**
-       * Convert the input to a MatOfPoint2F in order to process the contour
-       */
-      filteredContours.get(index).convertTo(currentContour, CvType.CV_32FC2);
-
-      /**
-       * alculate the arch length of the contour
-       */
-      double archLength = Imgproc.arcLength(currentContour, true);
-
-      /**
-       * Approximate the curvature of the shape
-       */
-      Imgproc.approxPolyDP(currentContour, currentApproxCurve, archLength * 0.018, true);
-
-      /**
-       * Here we filter out any contours that do not have exactly 4 corners
-       */
-      if(currentApproxCurve.total() != 4) continue;
-
-      /**
-       * Calculate the contour area and remove contours that are too small in size.
-       *
-       * @note we use Math.abs to handle negative area size, which can happen depending on orientation.
-       */
-      double area = Math.abs(Imgproc.contourArea(currentApproxCurve));
-      if(area < 1000) continue;
-
-      /**
-       * We are interested in this contour, if it is larger than the currently selected candiate
-       */
-      if(numberplateRect == null || area > candidateAreaSize) {
-        numberplateRect = Imgproc.minAreaRect(currentApproxCurve);
-        candidateAreaSize = area;
-      }
-    }
+    /**
+     * Release the contours
+     */
+    releaseAll(contours);
 
     // Draw the contours over the frame
     if(numberplateRect != null) {
-      normalizedPlate = Utils.rotateAndDeskew(singleChannel8BitImage, numberplateRect);
-      if(normalizedPlate.width() > rgb.width() || normalizedPlate.height() > rgb.height()) {
+      normalizedPlate = MatTracker.retain(rectifier.rectify(singleChannel8BitImage, candidateQuad, rotationDegrees));
+      Size upright = Utils.uprightSize(rgb.size(), rotationDegrees);
+      if(normalizedPlate.width() > upright.width || normalizedPlate.height() > upright.height) {
         return null;
       }
 
-      double ratio = normalizedPlate.width() / normalizedPlate.height();
-      if(ratio < 2.5) return null;
+      double ratio = (double) normalizedPlate.width() / normalizedPlate.height();
+      if(ratio < parameters.minAspectRatio) return null;
 
       Imgproc.rectangle(singleChannel8BitImage, numberplateRect.boundingRect(), new Scalar(255, 255, 255), -1);
 //      Imgproc.drawContours(singleChannel8BitImage, filteredContours, index, new Scalar(255, 255, 255), -1);
 
-      Imgproc.threshold(normalizedPlate, normalizedPlate, 100, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+      Imgproc.threshold(normalizedPlate, normalizedPlate, parameters.threshold, 255,
+          parameters.otsu ? Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU : Imgproc.THRESH_BINARY);
+      plateRegion = Utils.rotateRect(numberplateRect, rgb.size(), rotationDegrees);
 //
 //      final Bitmap bitmap1 = Bitmap.createBitmap(normalizedPlate.width(), normalizedPlate.height(), Bitmap.Config.ARGB_8888);
 //      org.opencv.android.Utils.matToBitmap(normalizedPlate, bitmap1);
@@ -184,73 +230,89 @@ public class NumberplateDetectorV2 implements IDetector {
 //    return !((area < min || area > max) || (r < rmin || r > rmax))
 //  }
 
-  private List<MatOfPoint> filterContours(List<MatOfPoint> contours) {
-    List<MatOfPoint> results = new ArrayList<>();
+  /**
+   * Release every Mat in the list
+   */
+  private static void releaseAll(List<? extends Mat> mats) {
+    for(int i = 0; i < mats.size(); i++) {
+      mats.get(i).release();
+    }
+  }
 
-    /**
-     * Extract the points of the contour (this approach is much faster than {new MatOfPoint2f(mop.toArray())}
-     */
-    contour2f = new MatOfPoint2f();
-    approxCurve = new MatOfPoint2f();
+  /**
+   * Filter every contour and keep the largest that simplifies to a convex, near rectangular
+   * quad of a plausible size. Each contour is read out of native memory once and everything
+   * after that runs in Java over reused buffers.
+   *
+   * @return the minimum area rectangle of the selected quad, whose corners are left in
+   *         candidateQuad, or null when no contour qualifies
+   */
+  private RotatedRect selectCandidate(List<MatOfPoint> contours) {
+    double candidateAreaSize = 0;
+    boolean found = false;
 
-    /**
-     * Itterate over the contours, skipping contours that we are not interested in.
-     */
     for(int i = 0; i < contours.size(); i++) {
-      contours.get(i).convertTo(contour2f, CvType.CV_32F);
+      MatOfPoint contour = contours.get(i);
+      int count = (int) contour.total();
+      if(count < 4) continue;
 
-      /**
-       * Approximate the polygon from the contour
-       */
-      Imgproc.approxPolyDP(contour2f, approxCurve, Imgproc.arcLength(contour2f, true) * 0.018, true);
-      contour2f.release();
+      ensureCapacity(count);
+      contour.get(0, 0, contourPoints);
 
       /**
-       * Remove those where the total sides of the approximated curve is not rectangle
+       * Approximate the polygon from the contour, we are only interested in quads
        */
-      if(approxCurve.total() != 4){
-        approxCurve.release();
-        continue;
-      }
+      double epsilon = ContourGeometry.perimeter(contourPoints, count) * parameters.polygonEpsilon;
+      if(ContourGeometry.simplify(contourPoints, count, epsilon, simplifyKeep, simplifyStack, quad) != 4) continue;
 
       /**
-       * Calculate the total area size for the shape so we can filter
-       * the selections that are too small or to0 big.
+       * Remove quads that are too small or no larger than the current candidate
        */
-      double areaSize = Math.abs(Imgproc.contourArea(approxCurve));
-      if(areaSize < 1000) {
-        approxCurve.release();
-        continue;
-      }
-
-      // Hate this conversion!
-      possiblePlateBox = new MatOfPoint(approxCurve.toArray());
+      double area = ContourGeometry.area(quad, 4);
+      if(area < parameters.minArea || (found && area <= candidateAreaSize)) continue;
 
       /**
-       * Exclude the contour of the approximation is not convex
+       * Exclude the quad if it is not convex
        *
        * @see https://en.wikipedia.org/wiki/Convex_polygon#Properties
        */
-      if(!Imgproc.isContourConvex(possiblePlateBox)) {
-        possiblePlateBox.release();
-        approxCurve.release();
-        continue;
-      }
+      if(!ContourGeometry.isConvex(quad, 4)) continue;
 
       /**
        * Determine if the shape is rectangular
        */
-      if(!Utils.isRectangleInShape(approxCurve)) {
-        possiblePlateBox.release();
-        approxCurve.release();
-        continue;
+      if(ContourGeometry.maxCornerCosine(quad) >= parameters.maxCornerCosine) continue;
+
+      /**
+       * Mask out quads centred outside the detection zone
+       */
+      if(candidateFilter != null
+          && !candidateFilter.accept((quad[0] + quad[2] + quad[4] + quad[6]) / 4.0, (quad[1] + quad[3] + quad[5] + quad[7]) / 4.0)) continue;
+
+      for(int j = 0; j < 8; j++) {
+        candidateQuad[j] = quad[j];
       }
+      candidateAreaSize = area;
+      found = true;
+    }
+
+    if(!found) {
+      return null;
+    }
 
-      approxCurve.release();
-      possiblePlateBox.release();
-      results.add(new MatOfPoint(contours.get(i)));
+    for(int j = 0; j < 8; j++) {
+      quad[j] = (int) candidateQuad[j];
     }
+    ContourGeometry.minAreaRect(quad, 4, rect);
+    return new RotatedRect(new Point(rect[0], rect[1]), new Size(rect[2], rect[3]), rect[4]);
+  }
 
-    return results;
+  private void ensureCapacity(int count) {
+    if(simplifyKeep.length < count) {
+      int capacity = Math.max(count, simplifyKeep.length * 2);
+      contourPoints = new int[capacity * 2];
+      simplifyKeep = new boolean[capacity];
+      simplifyStack = new int[ContourGeometry.stackSize(capacity)];
+    }
   }
 }
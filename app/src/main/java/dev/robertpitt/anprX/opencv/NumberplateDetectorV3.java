@@ -0,0 +1,268 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.features2d.MSER;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.robertpitt.anprX.frames.Frame;
+
+/**
+ * Character first detector: finds character like extremal regions (MSER) in the luma and
+ * groups them into a horizontal line of evenly sized, evenly spaced characters, the plate
+ * rectangle is then fitted around the line.
+ *
+ * Unlike V2 this does not depend on the plate border being a clean quadrilateral, so dirty
+ * plates and plates flush against a bumper are still found, and rectangles with nothing
+ * written on them cost nothing beyond their extremal regions.
+ *
+ * MSER runs on the frame scaled down to {@link #ANALYSIS_SIZE} on its longest side with a
+ * larger delta than the default and tight area limits, most of the cost of MSER is in the
+ * number of regions it has to track. The plate itself is still cut from the full resolution
+ * frame.
+ */
+public class NumberplateDetectorV3 implements IDetector, CandidateFilter.Target {
+  /**
+   * Longest side of the frame MSER is run on
+   */
+  static final int ANALYSIS_SIZE = 960;
+
+  /**
+   * MSER parameters at the analysis size: a delta of 6 rather than 5 keeps only the more
+   * stable regions, and characters are never larger than 1/200th of the frame
+   */
+  static final int MSER_DELTA = 6;
+  static final int MSER_MIN_AREA = 30;
+  static final int MSER_MAX_AREA_DIVISOR = 200;
+  static final double MSER_MAX_VARIATION = 0.2;
+
+  /**
+   * Character height at the analysis size, the largest relative to the upright frame height
+   */
+  static final int MIN_CHARACTER_HEIGHT = 8;
+  static final double MAX_CHARACTER_HEIGHT = 0.25;
+
+  private boolean _initialised = false;
+  private Mat grey;
+  private Mat analysis;
+  private Mat normalizedPlate;
+  private MatOfRect regionBounds;
+  private MSER mser;
+  private PlateRectifier rectifier;
+  private RotatedRect plateRegion;
+  private CandidateFilter candidateFilter;
+
+  private final TextLineGrouper grouper = new TextLineGrouper();
+  private int[] rects = new int[0];
+  private int[] boxes = new int[0];
+  private final float[] line = new float[5];
+  private final float[] quad = new float[8];
+  private final Point[] corners = new Point[4];
+
+  protected void _initialise() {
+    if(!_initialised) {
+      grey = MatTracker.retain(new Mat());
+      analysis = MatTracker.retain(new Mat());
+      regionBounds = MatTracker.retain(new MatOfRect());
+      mser = MSER.create(MSER_DELTA, MSER_MIN_AREA, 14400, MSER_MAX_VARIATION, 0.2, 200, 1.01, 0.003, 5);
+      rectifier = new PlateRectifier();
+      _initialised = true;
+    }
+
+    /**
+     * The plate from the previous frame is only valid until the next call to detect
+     */
+    if(normalizedPlate != null) {
+      normalizedPlate.release();
+      normalizedPlate = null;
+    }
+  }
+
+  @Override
+  public void setCandidateFilter(CandidateFilter filter) {
+    this.candidateFilter = filter;
+  }
+
+  @Override
+  public Mat detect(Mat src) {
+    return detect(src, 0);
+  }
+
+  @Override
+  public Mat detect(Frame frame) {
+    Mat luma = frame.toLuma();
+    Mat plate = detect(luma, frame.getRotationDegrees());
+    luma.release();
+    return plate;
+  }
+
+  /**
+   * MSER and the rectifier only see the greyscale frame, single channel input is used as is
+   */
+  @Override
+  public boolean acceptsLuma() {
+    return true;
+  }
+
+  @Override
+  public Mat getDebugView() {
+    return normalizedPlate;
+  }
+
+  @Override
+  public RotatedRect getPlateRegion() {
+    return plateRegion;
+  }
+
+  @Override
+  public void release() {
+    if(!_initialised) {
+      return;
+    }
+
+    grey.release();
+    analysis.release();
+    regionBounds.release();
+    rectifier.release();
+    if(normalizedPlate != null) {
+      normalizedPlate.release();
+      normalizedPlate = null;
+    }
+    plateRegion = null;
+    _initialised = false;
+  }
+
+  @Override
+  public Mat detect(Mat rgb, int rotationDegrees) {
+    _initialise();
+    plateRegion = null;
+
+    Mat luma = rgb;
+    if(rgb.channels() != 1) {
+      Imgproc.cvtColor(rgb, grey, Imgproc.COLOR_RGB2GRAY);
+      luma = grey;
+    }
+
+    /**
+     * Scale down for MSER, the regions are mapped back to full resolution
+     */
+    double scale = Math.min(1.0, (double) ANALYSIS_SIZE / Math.max(luma.width(), luma.height()));
+    Mat source = luma;
+    if(scale < 1.0) {
+      Imgproc.resize(luma, analysis, new Size(), scale, scale, Imgproc.INTER_AREA);
+      source = analysis;
+    }
+    mser.setMaxArea((int) source.total() / MSER_MAX_AREA_DIVISOR);
+
+    List<MatOfPoint> regions = new ArrayList<>();
+    mser.detectRegions(source, regions, regionBounds);
+    for(int i = 0; i < regions.size(); i++) {
+      regions.get(i).release();
+    }
+
+    int count = (int) regionBounds.total();
+    if(count == 0) {
+      return null;
+    }
+    if(rects.length < count * 4) {
+      rects = new int[count * 8];
+      boxes = new int[count * 8];
+    }
+    regionBounds.get(0, 0, rects);
+
+    /**
+     * Group the regions in the upright frame, where plate text runs left to right
+     */
+    int width = source.width();
+    int height = source.height();
+    int characters = 0;
+    for(int i = 0; i < count; i++) {
+      int x = rects[i * 4], y = rects[i * 4 + 1], w = rects[i * 4 + 2], h = rects[i * 4 + 3];
+      if(candidateFilter != null && !candidateFilter.accept((x + w / 2.0) / scale, (y + h / 2.0) / scale)) continue;
+      toUpright(x, y, w, h, width, height, rotationDegrees, boxes, characters * 4);
+      characters++;
+    }
+
+    Size upright = Utils.uprightSize(source.size(), rotationDegrees);
+    if(grouper.group(boxes, characters, MIN_CHARACTER_HEIGHT, (int) (upright.height * MAX_CHARACTER_HEIGHT), line) == 0) {
+      return null;
+    }
+
+    /**
+     * Fit the plate in the full resolution upright frame, then cut it from the sensor frame
+     */
+    plateRegion = new RotatedRect(new Point(line[0] / scale, line[1] / scale), new Size(line[2] / scale, line[3] / scale), line[4]);
+    plateRegion.points(corners);
+    for(int i = 0; i < 4; i++) {
+      toSensor(corners[i], luma.width(), luma.height(), rotationDegrees, quad, i * 2);
+    }
+
+    normalizedPlate = MatTracker.retain(rectifier.rectify(luma, quad, rotationDegrees));
+    Imgproc.threshold(normalizedPlate, normalizedPlate, 100, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+    return normalizedPlate;
+  }
+
+  /**
+   * Map a box of the frame in the sensor orientation into the upright frame
+   */
+  static void toUpright(int x, int y, int w, int h, int width, int height, int rotationDegrees, int[] out, int offset) {
+    switch(rotationDegrees) {
+      case 90:
+        out[offset] = height - (y + h);
+        out[offset + 1] = x;
+        out[offset + 2] = h;
+        out[offset + 3] = w;
+        break;
+      case 180:
+        out[offset] = width - (x + w);
+        out[offset + 1] = height - (y + h);
+        out[offset + 2] = w;
+        out[offset + 3] = h;
+        break;
+      case 270:
+        out[offset] = y;
+        out[offset + 1] = width - (x + w);
+        out[offset + 2] = h;
+        out[offset + 3] = w;
+        break;
+      default:
+        out[offset] = x;
+        out[offset + 1] = y;
+        out[offset + 2] = w;
+        out[offset + 3] = h;
+    }
+  }
+
+  /**
+   * Map a point of the upright frame back into the frame in the sensor orientation
+   */
+  static void toSensor(Point point, int width, int height, int rotationDegrees, float[] out, int offset) {
+    double x, y;
+    switch(rotationDegrees) {
+      case 90:
+        x = point.y;
+        y = height - point.x;
+        break;
+      case 180:
+        x = width - point.x;
+        y = height - point.y;
+        break;
+      case 270:
+        x = width - point.y;
+        y = point.x;
+        break;
+      default:
+        x = point.x;
+        y = point.y;
+    }
+    out[offset] = (float) x;
+    out[offset + 1] = (float) y;
+  }
+}
@@ -0,0 +1,159 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cuts a plate out of a frame from the four corners of its outline and warps it to a flat,
+ * upright patch of a fixed height.
+ *
+ * Only the output patch is sampled, so the cost is proportional to the plate rather than the
+ * frame, and because the transform is a homography it also corrects the keystone skew of
+ * plates seen at an angle, which a rotation cannot. The frame rotation is folded into the
+ * order of the corners so the patch comes out upright without rotating anything.
+ */
+public class PlateRectifier {
+  /**
+   * Height of every rectified plate, the width follows the measured aspect ratio
+   */
+  public static final int DEFAULT_HEIGHT = 64;
+
+  /**
+   * Widest aspect ratio produced, stops a degenerate outline producing a huge patch
+   */
+  private static final double MAX_ASPECT = 8;
+
+  private final int height;
+
+  private final float[] ordered = new float[8];
+  private final float[] destination = new float[8];
+  private MatOfPoint2f sourcePoints;
+  private MatOfPoint2f destinationPoints;
+
+  public PlateRectifier() {
+    this(DEFAULT_HEIGHT);
+  }
+
+  public PlateRectifier(int height) {
+    this.height = height;
+  }
+
+  /**
+   * Warp the quad out of the scene into a new upright patch, the caller owns the patch.
+   *
+   * @param scene frame in the sensor orientation
+   * @param quad four corners x0,y0..x3,y3 in scene coordinates, in any order
+   * @param rotationDegrees clockwise rotation that makes the scene upright
+   */
+  public Mat rectify(Mat scene, float[] quad, int rotationDegrees) {
+    if(sourcePoints == null) {
+      sourcePoints = MatTracker.retain(new MatOfPoint2f());
+      destinationPoints = MatTracker.retain(new MatOfPoint2f());
+    }
+
+    orderCorners(quad, scene.width(), scene.height(), rotationDegrees, ordered);
+
+    /**
+     * Output size from the mean lengths of opposite edges
+     */
+    double top = distance(ordered, 0, 1);
+    double bottom = distance(ordered, 3, 2);
+    double left = distance(ordered, 0, 3);
+    double right = distance(ordered, 1, 2);
+    double aspect = Math.min(MAX_ASPECT, (top + bottom) / Math.max(1, left + right));
+    int width = Math.max(1, (int) Math.round(height * aspect));
+
+    destination[0] = 0;         destination[1] = 0;
+    destination[2] = width - 1; destination[3] = 0;
+    destination[4] = width - 1; destination[5] = height - 1;
+    destination[6] = 0;         destination[7] = height - 1;
+
+    sourcePoints.create(4, 1, CvType.CV_32FC2);
+    sourcePoints.put(0, 0, ordered);
+    destinationPoints.create(4, 1, CvType.CV_32FC2);
+    destinationPoints.put(0, 0, destination);
+
+    Mat transform = Imgproc.getPerspectiveTransform(sourcePoints, destinationPoints);
+    Mat patch = MatTracker.track(new Mat());
+    Imgproc.warpPerspective(scene, patch, transform, new Size(width, height), Imgproc.INTER_LINEAR);
+    transform.release();
+    return patch;
+  }
+
+  /**
+   * Free the corner buffers, they are allocated again on the next call to rectify
+   */
+  public void release() {
+    if(sourcePoints != null) {
+      sourcePoints.release();
+      destinationPoints.release();
+      sourcePoints = null;
+      destinationPoints = null;
+    }
+  }
+
+  /**
+   * Order the corners of a quad as top left, top right, bottom right, bottom left as they
+   * appear once the scene is rotated upright, keeping their scene coordinates.
+   *
+   * @param quad four corners in scene coordinates
+   * @param sceneWidth width of the scene in the sensor orientation
+   * @param sceneHeight height of the scene in the sensor orientation
+   * @param rotationDegrees clockwise rotation that makes the scene upright
+   * @param out receives the ordered corners, in scene coordinates
+   */
+  public static void orderCorners(float[] quad, int sceneWidth, int sceneHeight, int rotationDegrees, float[] out) {
+    int topLeft = 0, topRight = 0, bottomRight = 0, bottomLeft = 0;
+    float minSum = Float.MAX_VALUE, maxSum = -Float.MAX_VALUE;
+    float minDiff = Float.MAX_VALUE, maxDiff = -Float.MAX_VALUE;
+
+    for(int i = 0; i < 4; i++) {
+      float x = quad[i * 2];
+      float y = quad[i * 2 + 1];
+
+      /**
+       * Position of the corner in the upright frame
+       */
+      float ux, uy;
+      switch(rotationDegrees) {
+        case 90:
+          ux = sceneHeight - y; uy = x;
+          break;
+        case 180:
+          ux = sceneWidth - x; uy = sceneHeight - y;
+          break;
+        case 270:
+          ux = y; uy = sceneWidth - x;
+          break;
+        default:
+          ux = x; uy = y;
+      }
+
+      float sum = ux + uy;
+      float diff = uy - ux;
+      if(sum < minSum) { minSum = sum; topLeft = i; }
+      if(sum > maxSum) { maxSum = sum; bottomRight = i; }
+      if(diff < minDiff) { minDiff = diff; topRight = i; }
+      if(diff > maxDiff) { maxDiff = diff; bottomLeft = i; }
+    }
+
+    copyCorner(quad, topLeft, out, 0);
+    copyCorner(quad, topRight, out, 1);
+    copyCorner(quad, bottomRight, out, 2);
+    copyCorner(quad, bottomLeft, out, 3);
+  }
+
+  private static void copyCorner(float[] quad, int from, float[] out, int to) {
+    out[to * 2] = quad[from * 2];
+    out[to * 2 + 1] = quad[from * 2 + 1];
+  }
+
+  private static double distance(float[] points, int a, int b) {
+    double dx = points[a * 2] - points[b * 2];
+    double dy = points[a * 2 + 1] - points[b * 2 + 1];
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+}
@@ -0,0 +1,284 @@
+package dev.robertpitt.anprX.opencv;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.HOGDescriptor;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Locale;
+
+/**
+ * Decides whether a deskewed candidate crop is likely to be a plate before it is given to OCR,
+ * windows, signs and grilles pass the detector's shape checks but a rejected candidate costs a
+ * fraction of a Tesseract call.
+ *
+ * Two checks are made, the cheap one first:
+ *  - the crop is binarised and its connected components counted, a plate has a row of
+ *    character sized blobs while most false candidates have none or hundreds
+ *  - when a model is installed, HOG features of the crop are scored by a linear SVM trained
+ *    offline, see {@link LinearModel} for the file format
+ *
+ * Working memory is allocated on first use. A verifier must only be used from one thread at
+ * a time.
+ */
+public class PlateVerifier {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::PlateVerifier";
+
+  /**
+   * Asset holding the linear SVM, optional
+   */
+  public static final String MODEL_ASSET = "plate_verifier.svm";
+
+  /**
+   * Characters on a plate, from the shortest cherished plate to the longest with spacing noise
+   */
+  static final int MIN_CHARACTERS = 2;
+  static final int MAX_CHARACTERS = 10;
+
+  /**
+   * Height of a character component relative to the crop
+   */
+  static final double MIN_CHARACTER_HEIGHT = 0.3;
+  static final double MAX_CHARACTER_HEIGHT = 0.95;
+
+  /**
+   * Weights of a linear SVM over HOG features of the crop resized to the model window.
+   *
+   * Stored as whitespace separated text so it can be written by any trainer (OpenCV ml,
+   * scikit-learn, ...), lines starting with # are ignored:
+   *   window 128 32
+   *   threshold 0
+   *   bias -0.42
+   *   weights 1620
+   *   0.013 -0.002 ...
+   * The HOG parameters are fixed: 16x16 blocks, 8x8 stride and cells, 9 bins.
+   */
+  public static class LinearModel {
+    final int windowWidth;
+    final int windowHeight;
+    final double threshold;
+    final double bias;
+    final float[] weights;
+
+    public LinearModel(int windowWidth, int windowHeight, double threshold, double bias, float[] weights) {
+      this.windowWidth = windowWidth;
+      this.windowHeight = windowHeight;
+      this.threshold = threshold;
+      this.bias = bias;
+      this.weights = weights;
+    }
+
+    public static LinearModel read(InputStream in) throws IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      int windowWidth = 128, windowHeight = 32;
+      double threshold = 0, bias = 0;
+      float[] weights = null;
+      int count = 0;
+
+      String line;
+      while((line = reader.readLine()) != null) {
+        line = line.trim();
+        if(line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        String[] tokens = line.split("\\s+");
+        try {
+          if(weights != null && count < weights.length) {
+            for(String token : tokens) {
+              if(count == weights.length) {
+                throw new IOException("Too many weights");
+              }
+              weights[count++] = Float.parseFloat(token);
+            }
+          } else if(tokens[0].equals("window") && tokens.length == 3) {
+            windowWidth = Integer.parseInt(tokens[1]);
+            windowHeight = Integer.parseInt(tokens[2]);
+          } else if(tokens[0].equals("threshold") && tokens.length == 2) {
+            threshold = Double.parseDouble(tokens[1]);
+          } else if(tokens[0].equals("bias") && tokens.length == 2) {
+            bias = Double.parseDouble(tokens[1]);
+          } else if(tokens[0].equals("weights") && tokens.length == 2 && weights == null) {
+            weights = new float[Integer.parseInt(tokens[1])];
+          } else {
+            throw new IOException(String.format("Unexpected line %s", line));
+          }
+        } catch (NumberFormatException e) {
+          throw new IOException(String.format("Invalid number in %s", line));
+        }
+      }
+
+      if(weights == null || count != weights.length) {
+        throw new IOException("Missing weights");
+      }
+      return new LinearModel(windowWidth, windowHeight, threshold, bias, weights);
+    }
+  }
+
+  private LinearModel model;
+
+  private Mat grey;
+  private Mat binary;
+  private Mat labels;
+  private Mat stats;
+  private Mat centroids;
+  private Mat window;
+  private MatOfFloat descriptors;
+  private float[] features;
+  private HOGDescriptor hog;
+
+  private volatile long verified = 0;
+  private volatile long rejected = 0;
+
+  /**
+   * @param model linear SVM, or null to rely on the character count alone
+   */
+  public PlateVerifier(LinearModel model) {
+    this.model = model;
+  }
+
+  /**
+   * Verifier using the model installed in the assets, if there is one
+   */
+  public static PlateVerifier fromAssets(AssetManager assets) {
+    LinearModel model = null;
+    try {
+      InputStream in = assets.open(MODEL_ASSET);
+      try {
+        model = LinearModel.read(in);
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      Log.i(TAG, "No plate verifier model installed, counting characters only");
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to read the plate verifier model", e);
+    }
+    return new PlateVerifier(model);
+  }
+
+  /**
+   * Determine if the crop is worth reading
+   */
+  public boolean verify(Mat plate) {
+    int characters = countCharacters(plate);
+    boolean accepted = characters >= MIN_CHARACTERS && characters <= MAX_CHARACTERS;
+    if(accepted && model != null) {
+      double score = score(plate);
+
+      // The model is dropped on first use if it does not match the features
+      accepted = model == null || score >= model.threshold;
+    }
+
+    if(accepted) {
+      verified++;
+    } else {
+      rejected++;
+    }
+    return accepted;
+  }
+
+  /**
+   * Number of character sized connected components, counted on whichever polarity of the
+   * binarised crop is in the minority so dark on light and light on dark plates both work
+   */
+  public int countCharacters(Mat plate) {
+    if(binary == null) {
+      binary = MatTracker.retain(new Mat());
+      labels = MatTracker.retain(new Mat());
+      stats = MatTracker.retain(new Mat());
+      centroids = MatTracker.retain(new Mat());
+    }
+
+    Imgproc.threshold(toGrey(plate), binary, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+    if(Core.countNonZero(binary) * 2 > binary.total()) {
+      Core.bitwise_not(binary, binary);
+    }
+
+    int components = Imgproc.connectedComponentsWithStats(binary, labels, stats, centroids, 8, CvType.CV_32S);
+    int height = binary.rows();
+    int[] row = new int[5];
+    int characters = 0;
+
+    // Label 0 is the background
+    for(int i = 1; i < components; i++) {
+      stats.get(i, 0, row);
+      int width = row[Imgproc.CC_STAT_WIDTH];
+      int componentHeight = row[Imgproc.CC_STAT_HEIGHT];
+      if(componentHeight < height * MIN_CHARACTER_HEIGHT || componentHeight > height * MAX_CHARACTER_HEIGHT) continue;
+      if(width > componentHeight) continue;
+      if(row[Imgproc.CC_STAT_AREA] < width * componentHeight / 10) continue;
+      characters++;
+    }
+    return characters;
+  }
+
+  /**
+   * Signed distance of the crop from the SVM decision boundary, positive for plates
+   */
+  public double score(Mat plate) {
+    if(model == null) {
+      return 0;
+    }
+
+    if(hog == null) {
+      hog = new HOGDescriptor(new Size(model.windowWidth, model.windowHeight), new Size(16, 16), new Size(8, 8), new Size(8, 8), 9);
+      if(hog.getDescriptorSize() != model.weights.length) {
+        Log.e(TAG, String.format(Locale.UK, "Model has %d weights but the features have %d, ignoring the model",
+            model.weights.length, hog.getDescriptorSize()));
+        model = null;
+        return 0;
+      }
+      window = MatTracker.retain(new Mat());
+      descriptors = MatTracker.retain(new MatOfFloat());
+      features = new float[model.weights.length];
+    }
+
+    Imgproc.resize(toGrey(plate), window, new Size(model.windowWidth, model.windowHeight), 0, 0, Imgproc.INTER_AREA);
+    hog.compute(window, descriptors);
+    descriptors.get(0, 0, features);
+
+    double score = model.bias;
+    for(int i = 0; i < features.length; i++) {
+      score += features[i] * model.weights[i];
+    }
+    return score;
+  }
+
+  /**
+   * The crop itself when it is already single channel, otherwise a greyscale copy
+   */
+  private Mat toGrey(Mat plate) {
+    if(plate.channels() == 1) {
+      return plate;
+    }
+
+    if(grey == null) {
+      grey = MatTracker.retain(new Mat());
+    }
+    Imgproc.cvtColor(plate, grey, plate.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+    return grey;
+  }
+
+  public long getVerifiedCount() {
+    return verified;
+  }
+
+  public long getRejectedCount() {
+    return rejected;
+  }
+}
@@ -0,0 +1,182 @@
+package dev.robertpitt.anprX.opencv;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import java.util.Locale;
+
+/**
+ * Runs a candidate detector next to the primary detector on a sampled subset of frames and
+ * records how the two compare, both in latency and in the plate region they select.
+ */
+public class ShadowDetector {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::ShadowDetector";
+
+  /**
+   * Minimum intersection over union for the two detectors to be considered in agreement.
+   */
+  private static final double AGREEMENT_IOU = 0.5;
+
+  /**
+   * Number of samples between each summary written to the log
+   */
+  private static final int LOG_INTERVAL = 50;
+
+  /**
+   * Registry keys of the two detectors being compared
+   */
+  private final String primaryKey;
+  private final String candidateKey;
+
+  /**
+   * Candidate detector, owned by the shadow so it never shares working memory with the primary
+   */
+  private final IDetector candidate;
+
+  /**
+   * Only every n-th frame is passed to the candidate
+   */
+  private final int sampleInterval;
+
+  /**
+   * Frames seen since the shadow was created
+   */
+  private long frameCounter = 0;
+
+  /**
+   * Comparison results
+   */
+  private final Stats stats = new Stats();
+
+  public ShadowDetector(String primaryKey, String candidateKey, IDetector candidate, int sampleInterval) {
+    this.primaryKey = primaryKey;
+    this.candidateKey = candidateKey;
+    this.candidate = candidate;
+    this.sampleInterval = Math.max(1, sampleInterval);
+  }
+
+  /**
+   * Called once per frame, returns true when the frame should be passed to {@link #compare}
+   */
+  public boolean shouldSample() {
+    return frameCounter++ % sampleInterval == 0;
+  }
+
+  /**
+   * Free the candidate detector's working memory, on the thread that calls compare
+   */
+  public void release() {
+    candidate.release();
+  }
+
+  /**
+   * Run the candidate detector against the frame and compare its result with the
+   * primary detector result for the same frame.
+   *
+   * @param frame the frame the primary detector processed, must not have been modified by it
+   * @param rotationDegrees clockwise rotation that makes the frame upright
+   * @param primaryRegion the plate region selected by the primary detector
+   * @param primaryNanos time taken by the primary detector
+   */
+  public void compare(Mat frame, int rotationDegrees, RotatedRect primaryRegion, long primaryNanos) {
+    long start = System.nanoTime();
+    candidate.detect(frame, rotationDegrees);
+    long candidateNanos = System.nanoTime() - start;
+
+    RotatedRect candidateRegion = candidate.getPlateRegion();
+    stats.record(primaryNanos, candidateNanos, primaryRegion, candidateRegion);
+
+    if(stats.getSamples() % LOG_INTERVAL == 0) {
+      Log.i(TAG, String.format(Locale.UK, "%s vs %s: %s", primaryKey, candidateKey, stats));
+    }
+  }
+
+  /**
+   * True when the candidate can be compared on the luma the primary detector was given
+   */
+  public boolean acceptsLuma() {
+    return candidate.acceptsLuma();
+  }
+
+  public String getPrimaryKey() {
+    return primaryKey;
+  }
+
+  public String getCandidateKey() {
+    return candidateKey;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  /**
+   * Comparative latency and agreement counters, safe to read from any thread.
+   */
+  public static class Stats {
+    private long samples;
+    private long primaryNanos;
+    private long candidateNanos;
+    private long agreed;
+    private long bothMissed;
+    private long primaryOnly;
+    private long candidateOnly;
+    private long disagreed;
+
+    synchronized void record(long primaryNanos, long candidateNanos, RotatedRect primary, RotatedRect candidate) {
+      this.samples++;
+      this.primaryNanos += primaryNanos;
+      this.candidateNanos += candidateNanos;
+
+      if(primary == null && candidate == null) {
+        bothMissed++;
+      } else if(candidate == null) {
+        primaryOnly++;
+      } else if(primary == null) {
+        candidateOnly++;
+      } else if(Utils.intersectionOverUnion(primary.boundingRect(), candidate.boundingRect()) >= AGREEMENT_IOU) {
+        agreed++;
+      } else {
+        disagreed++;
+      }
+    }
+
+    public synchronized long getSamples() {
+      return samples;
+    }
+
+    /**
+     * Mean primary detector latency in milliseconds
+     */
+    public synchronized double getPrimaryMeanMillis() {
+      return samples == 0 ? 0 : primaryNanos / (samples * 1e6);
+    }
+
+    /**
+     * Mean candidate detector latency in milliseconds
+     */
+    public synchronized double getCandidateMeanMillis() {
+      return samples == 0 ? 0 : candidateNanos / (samples * 1e6);
+    }
+
+    /**
+     * Fraction of sampled frames where both detectors found the same plate or both found nothing
+     */
+    public synchronized double getAgreementRate() {
+      return samples == 0 ? 0 : (double) (agreed + bothMissed) / samples;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format(Locale.UK,
+          "samples=%d primary=%.2fms candidate=%.2fms agreement=%.3f (agreed=%d bothMissed=%d primaryOnly=%d candidateOnly=%d disagreed=%d)",
+          samples, getPrimaryMeanMillis(), getCandidateMeanMillis(), getAgreementRate(),
+          agreed, bothMissed, primaryOnly, candidateOnly, disagreed);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package dev.robertpitt.anprX.opencv;
+
+import java.util.Arrays;
+
+/**
+ * Groups character sized boxes into horizontal lines of text, used by
+ * {@link NumberplateDetectorV3} to find plates from their characters rather than their border.
+ *
+ * Boxes are packed x, y, width, height in upright coordinates. Candidates that are not
+ * character shaped are dropped, near duplicates (nested extremal regions of the same
+ * character) are merged, and the remainder are chained left to right: each box is linked to
+ * the closest box to its right with a similar height, a similar vertical centre and a gap no
+ * wider than a character or two. The line with the most characters is the plate.
+ *
+ * Pure Java over reused buffers, a grouper must only be used from one thread at a time.
+ */
+public class TextLineGrouper {
+  /**
+   * Characters on a plate line, fewer is more likely a word on a sign or a random cluster
+   */
+  public static final int MIN_CHARACTERS = 3;
+  public static final int MAX_CHARACTERS = 10;
+
+  /**
+   * Width to height of a single character, from a narrow 1 to a wide W
+   */
+  static final double MIN_CHARACTER_ASPECT = 0.1;
+  static final double MAX_CHARACTER_ASPECT = 1.1;
+
+  /**
+   * Boxes overlapping by more than this (intersection over union) are the same character
+   */
+  static final double DUPLICATE_IOU = 0.6;
+
+  /**
+   * Neighbouring characters, relative to the height of the left character
+   */
+  static final double MAX_HEIGHT_DIFFERENCE = 0.3;
+  static final double MAX_CENTRE_OFFSET = 0.4;
+  static final double MAX_GAP = 1.5;
+  static final double MAX_OVERLAP = 0.3;
+
+  /**
+   * Margin added around the characters to reach the plate edge, relative to the character height
+   */
+  static final double PADDING_X = 0.4;
+  static final double PADDING_Y = 0.25;
+
+  private long[] order = new long[0];
+  private int[] kept = new int[0];
+  private boolean[] used = new boolean[0];
+  private int[] chain = new int[0];
+  private int[] best = new int[0];
+
+  /**
+   * Find the best text line among the boxes
+   *
+   * @param boxes packed x, y, width, height
+   * @param count number of boxes
+   * @param minHeight smallest character height considered
+   * @param maxHeight largest character height considered
+   * @param out receives the line as a rotated rectangle: centre x, centre y, width, height and
+   *            angle in degrees, padded out to the expected plate edge
+   * @return number of characters on the line, 0 when no line qualifies
+   */
+  public int group(int[] boxes, int count, int minHeight, int maxHeight, float[] out) {
+    ensureCapacity(count);
+
+    /**
+     * Keep character shaped boxes, ordered by their left edge
+     */
+    int candidates = 0;
+    for(int i = 0; i < count; i++) {
+      int width = boxes[i * 4 + 2];
+      int height = boxes[i * 4 + 3];
+      if(height < minHeight || height > maxHeight) continue;
+      double aspect = (double) width / height;
+      if(aspect < MIN_CHARACTER_ASPECT || aspect > MAX_CHARACTER_ASPECT) continue;
+      order[candidates++] = ((long) boxes[i * 4] << 32) | i;
+    }
+    Arrays.sort(order, 0, candidates);
+
+    /**
+     * Merge nested regions of the same character, keeping the first (left most) box
+     */
+    int keptCount = 0;
+    for(int i = 0; i < candidates; i++) {
+      int box = (int) order[i];
+      boolean duplicate = false;
+      for(int k = keptCount - 1; k >= 0; k--) {
+        int other = kept[k];
+        // Kept boxes further left than the widest character cannot overlap this one
+        if(boxes[other * 4] < boxes[box * 4] - MAX_CHARACTER_ASPECT * maxHeight) break;
+        if(iou(boxes, box, other) > DUPLICATE_IOU) {
+          duplicate = true;
+          break;
+        }
+      }
+      if(!duplicate) {
+        kept[keptCount++] = box;
+      }
+    }
+
+    /**
+     * Chain each unused box with its closest compatible neighbour to the right
+     */
+    Arrays.fill(used, 0, keptCount, false);
+    int bestLength = 0;
+    double bestHeight = 0;
+    for(int start = 0; start < keptCount; start++) {
+      if(used[start]) continue;
+
+      int length = 0;
+      double heights = 0;
+      int current = start;
+      while(current >= 0) {
+        used[current] = true;
+        chain[length++] = kept[current];
+        heights += boxes[kept[current] * 4 + 3];
+        current = length < MAX_CHARACTERS + 1 ? nextInLine(boxes, keptCount, current) : -1;
+      }
+
+      double meanHeight = heights / length;
+      if(length < MIN_CHARACTERS || length > MAX_CHARACTERS) continue;
+      if(length > bestLength || (length == bestLength && meanHeight > bestHeight)) {
+        System.arraycopy(chain, 0, best, 0, length);
+        bestLength = length;
+        bestHeight = meanHeight;
+      }
+    }
+
+    if(bestLength == 0) {
+      return 0;
+    }
+    fitLine(boxes, best, bestLength, out);
+    return bestLength;
+  }
+
+  /**
+   * Index in kept of the closest unused box to the right that continues the line, or -1
+   */
+  private int nextInLine(int[] boxes, int keptCount, int current) {
+    int box = kept[current];
+    int right = boxes[box * 4] + boxes[box * 4 + 2];
+    int height = boxes[box * 4 + 3];
+    double centre = boxes[box * 4 + 1] + height / 2.0;
+
+    int next = -1;
+    int nextGap = Integer.MAX_VALUE;
+    for(int j = current + 1; j < keptCount; j++) {
+      int other = kept[j];
+      int gap = boxes[other * 4] - right;
+      if(gap > MAX_GAP * height) break;
+      if(used[j] || gap < -MAX_OVERLAP * height || gap >= nextGap) continue;
+
+      int otherHeight = boxes[other * 4 + 3];
+      if(Math.abs(otherHeight - height) > MAX_HEIGHT_DIFFERENCE * height) continue;
+      double otherCentre = boxes[other * 4 + 1] + otherHeight / 2.0;
+      if(Math.abs(otherCentre - centre) > MAX_CENTRE_OFFSET * height) continue;
+
+      next = j;
+      nextGap = gap;
+    }
+    return next;
+  }
+
+  /**
+   * Rotated rectangle through the character centres, padded out to the plate edge
+   */
+  private static void fitLine(int[] boxes, int[] line, int length, float[] out) {
+    double meanX = 0, meanY = 0, meanHeight = 0;
+    for(int i = 0; i < length; i++) {
+      int box = line[i];
+      meanX += boxes[box * 4] + boxes[box * 4 + 2] / 2.0;
+      meanY += boxes[box * 4 + 1] + boxes[box * 4 + 3] / 2.0;
+      meanHeight += boxes[box * 4 + 3];
+    }
+    meanX /= length;
+    meanY /= length;
+    meanHeight /= length;
+
+    double sxx = 0, sxy = 0;
+    for(int i = 0; i < length; i++) {
+      int box = line[i];
+      double dx = boxes[box * 4] + boxes[box * 4 + 2] / 2.0 - meanX;
+      double dy = boxes[box * 4 + 1] + boxes[box * 4 + 3] / 2.0 - meanY;
+      sxx += dx * dx;
+      sxy += dx * dy;
+    }
+    double slope = sxx > 0 ? sxy / sxx : 0;
+
+    int first = line[0];
+    int last = line[length - 1];
+    double left = boxes[first * 4];
+    double right = boxes[last * 4] + boxes[last * 4 + 2];
+    double centreX = (left + right) / 2;
+    double angle = Math.atan(slope);
+
+    out[0] = (float) centreX;
+    out[1] = (float) (meanY + slope * (centreX - meanX));
+    out[2] = (float) ((right - left) / Math.cos(angle) + 2 * PADDING_X * meanHeight);
+    out[3] = (float) (meanHeight * (1 + 2 * PADDING_Y));
+    out[4] = (float) Math.toDegrees(angle);
+  }
+
+  private static double iou(int[] boxes, int a, int b) {
+    int ax = boxes[a * 4], ay = boxes[a * 4 + 1], aw = boxes[a * 4 + 2], ah = boxes[a * 4 + 3];
+    int bx = boxes[b * 4], by = boxes[b * 4 + 1], bw = boxes[b * 4 + 2], bh = boxes[b * 4 + 3];
+    int iw = Math.min(ax + aw, bx + bw) - Math.max(ax, bx);
+    int ih = Math.min(ay + ah, by + bh) - Math.max(ay, by);
+    if(iw <= 0 || ih <= 0) {
+      return 0;
+    }
+    double intersection = (double) iw * ih;
+    return intersection / ((double) aw * ah + (double) bw * bh - intersection);
+  }
+
+  private void ensureCapacity(int count) {
+    if(order.length < count) {
+      int capacity = Math.max(count, order.length * 2);
+      order = new long[capacity];
+      kept = new int[capacity];
+      used = new boolean[capacity];
+      chain = new int[capacity];
+      best = new int[capacity];
+    }
+  }
+}
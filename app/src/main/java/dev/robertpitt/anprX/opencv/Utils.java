@@ -11,7 +11,9 @@ import org.opencv.core.Mat;
 import org.opencv.core.MatOfDouble;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.nio.ByteBuffer;
@@ -41,13 +43,11 @@ public class Utils {
     Mat mYuv = new Mat(image.getHeight() + image.getHeight() / 2, image.getWidth(), CvType.CV_8UC1);
     mYuv.put(0, 0, nv21);
 
-    // Now convert the data to RGB
-    Mat mRGB = new Mat();
+    // Now convert the data to RGB, left in the sensor orientation. Rotating the whole frame
+    // upright is a full frame copy, the detectors rotate their results instead.
+    Mat mRGB = MatTracker.track(new Mat());
     Imgproc.cvtColor(mYuv, mRGB, Imgproc.COLOR_YUV2RGB_NV21);
 
-    // TODO: Remove this logic from the utils
-    Core.rotate(mRGB, mRGB, image.getImageInfo().getRotationDegrees() - 90);
-
     mYuv.release();
     return mRGB;
   }
@@ -62,21 +62,99 @@ public class Utils {
     MatOfDouble mu = new MatOfDouble();
     MatOfDouble sigma = new MatOfDouble();
     Core.meanStdDev(input, mu, sigma);
-    double lower = Math.max(0, (1.0 - sigma.get(0,0)[0]) * mu.get(0,0)[0]);
-    double upper = Math.min(255, (1.0 + sigma.get(0,0)[0]) * mu.get(0,0)[0]);
+    double[] thresholds = cannyThresholds(mu.get(0,0)[0], sigma.get(0,0)[0]);
     sigma.release();
     mu.release();
+    return thresholds;
+  }
+
+  /**
+   * Canny thresholds from the mean and standard deviation of an image that were already
+   * measured, see {@link LumaPreprocessor}
+   */
+  public static double[] cannyThresholds(double mean, double stdDev) {
+    double lower = Math.max(0, (1.0 - stdDev) * mean);
+    double upper = Math.min(255, (1.0 + stdDev) * mean);
     return new double[]{lower, upper};
   }
 
+  /**
+   * Rotate a Mat clockwise in place by a multiple of 90 degrees, only meant for small Mats
+   * such as plate crops.
+   * @param mat
+   * @param rotationDegrees 0, 90, 180 or 270
+   */
+  public static void rotateUpright(Mat mat, int rotationDegrees) {
+    switch(rotationDegrees) {
+      case 90:
+        Core.rotate(mat, mat, Core.ROTATE_90_CLOCKWISE);
+        break;
+      case 180:
+        Core.rotate(mat, mat, Core.ROTATE_180);
+        break;
+      case 270:
+        Core.rotate(mat, mat, Core.ROTATE_90_COUNTERCLOCKWISE);
+        break;
+    }
+  }
+
+  /**
+   * Size of a frame once rotated upright
+   * @param sensorSize
+   * @param rotationDegrees
+   * @return
+   */
+  public static Size uprightSize(Size sensorSize, int rotationDegrees) {
+    return rotationDegrees == 90 || rotationDegrees == 270
+        ? new Size(sensorSize.height, sensorSize.width)
+        : new Size(sensorSize.width, sensorSize.height);
+  }
+
+  /**
+   * Map a rectangle found in a frame in the sensor orientation into the coordinates of the same
+   * frame rotated upright, only the four corners move rather than every pixel of the frame.
+   * @param rect rectangle in sensor coordinates
+   * @param sensorSize size of the frame in the sensor orientation
+   * @param rotationDegrees clockwise rotation that makes the frame upright
+   * @return
+   */
+  public static RotatedRect rotateRect(RotatedRect rect, Size sensorSize, int rotationDegrees) {
+    double x = rect.center.x;
+    double y = rect.center.y;
+    switch(rotationDegrees) {
+      case 90:
+        return new RotatedRect(new Point(sensorSize.height - y, x), new Size(rect.size.height, rect.size.width), rect.angle);
+      case 180:
+        return new RotatedRect(new Point(sensorSize.width - x, sensorSize.height - y), rect.size.clone(), rect.angle);
+      case 270:
+        return new RotatedRect(new Point(y, sensorSize.width - x), new Size(rect.size.height, rect.size.width), rect.angle);
+      default:
+        return rect.clone();
+    }
+  }
+
   public static Mat rotateAndDeskew(Mat scene, RotatedRect rect) {
+    return rotateAndDeskew(scene, rect, 0);
+  }
+
+  /**
+   * Cut the rectangle out of the scene and straighten it, the scene is in the sensor
+   * orientation and only the patch is rotated upright.
+   * @param scene
+   * @param rect rectangle in the coordinates of the scene
+   * @param rotationDegrees clockwise rotation that makes the scene upright
+   * @return
+   */
+  public static Mat rotateAndDeskew(Mat scene, RotatedRect rect, int rotationDegrees) {
     Mat rotationMat = Imgproc.getRotationMatrix2D(rect.center, rect.angle, 1);
     // Now that we have the rotation matrix, we can apply the geometric transformation using the function warpAffine
     Mat sceneRotated = new Mat();
     Imgproc.warpAffine(scene, sceneRotated, rotationMat, scene.size(), Imgproc.INTER_AREA);
-    Mat patch = new Mat();
+    Mat patch = MatTracker.track(new Mat());
     Imgproc.getRectSubPix(sceneRotated, rect.size, rect.center, patch);
     sceneRotated.release();
+    rotationMat.release();
+    rotateUpright(patch, rotationDegrees);
 
     // If the patch is vertical, drop it to the right
     if(patch.width() < patch.height()) {
@@ -101,6 +179,25 @@ public class Utils {
     return ( dx1*dx2 + dy1*dy2 ) / Math.sqrt((dx1*dx1 + dy1*dy1)*(dx2*dx2 + dy2*dy2) + 1e-10);
   }
 
+  /**
+   * Intersection over union of two axis aligned rectangles, 0 when they do not overlap
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double intersectionOverUnion(Rect a, Rect b) {
+    int x1 = Math.max(a.x, b.x);
+    int y1 = Math.max(a.y, b.y);
+    int x2 = Math.min(a.x + a.width, b.x + b.width);
+    int y2 = Math.min(a.y + a.height, b.y + b.height);
+    if(x2 <= x1 || y2 <= y1) {
+      return 0;
+    }
+
+    double intersection = (double) (x2 - x1) * (y2 - y1);
+    return intersection / (a.area() + b.area() - intersection);
+  }
+
   public static boolean isRectangleInShape(MatOfPoint2f approxCurve) {
     Point[] points = approxCurve.toArray();
 
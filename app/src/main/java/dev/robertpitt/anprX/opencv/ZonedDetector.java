@@ -0,0 +1,202 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.robertpitt.anprX.frames.Frame;
+
+/**
+ * Runs a detector over the detection zones of a frame only, so the sky, dashboard and verge
+ * are never processed.
+ *
+ * Each zone is handed to its own detector as a submat of the frame covering the zone's
+ * bounding box, a view onto the same pixels rather than a copy, and candidates centred
+ * outside the zone polygon are masked out. The largest plate found across the zones is
+ * returned, with its region mapped back into the whole upright frame.
+ */
+public class ZonedDetector implements IDetector {
+  /**
+   * Detection zone and the detector that searches it, zones are searched by separate
+   * detectors as a detector's plate is only valid until its next call to detect
+   */
+  private static class Zone implements CandidateFilter {
+    final DetectionZone zone;
+    final IDetector detector;
+    final int[] bounds = new int[4];
+    final double[] point = new double[2];
+    int frameWidth;
+    int frameHeight;
+    int rotationDegrees;
+
+    Zone(DetectionZone zone, IDetector detector) {
+      this.zone = zone;
+      this.detector = detector;
+      if(detector instanceof CandidateFilter.Target) {
+        ((CandidateFilter.Target) detector).setCandidateFilter(this);
+      }
+    }
+
+    /**
+     * Update the bounding box for the frame size and orientation
+     */
+    void layout(int width, int height, int rotation) {
+      frameWidth = width;
+      frameHeight = height;
+      rotationDegrees = rotation;
+      zone.sensorBounds(width, height, rotation, bounds);
+
+      // Clamp to the frame, the zone itself is clamped but rounding can step outside
+      int left = Math.max(0, bounds[0]);
+      int top = Math.max(0, bounds[1]);
+      bounds[2] = Math.max(0, Math.min(width, bounds[0] + bounds[2]) - left);
+      bounds[3] = Math.max(0, Math.min(height, bounds[1] + bounds[3]) - top);
+      bounds[0] = left;
+      bounds[1] = top;
+    }
+
+    /**
+     * Candidate centre in the pixel coordinates of the zone's submat
+     */
+    @Override
+    public boolean accept(double x, double y) {
+      DetectionZone.toUpright((bounds[0] + x) / frameWidth, (bounds[1] + y) / frameHeight, rotationDegrees, point);
+      return zone.contains(point[0], point[1]);
+    }
+  }
+
+  private final List<Zone> zones = new ArrayList<>();
+  private RotatedRect plateRegion;
+  private Mat debugView;
+
+  /**
+   * @param factory creates the detector used for each zone
+   * @param zones at least one zone, see {@link DetectionZone#parseAll}
+   */
+  public ZonedDetector(DetectorRegistry.Factory factory, List<DetectionZone> zones) {
+    if(zones.isEmpty()) {
+      throw new IllegalArgumentException("At least one detection zone is required");
+    }
+
+    for(DetectionZone zone : zones) {
+      this.zones.add(new Zone(zone, factory.create()));
+    }
+  }
+
+  @Override
+  public Mat detect(Mat src) {
+    return detect(src, 0);
+  }
+
+  @Override
+  public Mat detect(Frame frame) {
+    Mat src = acceptsLuma() ? frame.toLuma() : frame.toRGB();
+    Mat plate = detect(src, frame.getRotationDegrees());
+    src.release();
+    return plate;
+  }
+
+  /**
+   * Every zone runs the same kind of detector
+   */
+  @Override
+  public boolean acceptsLuma() {
+    return !zones.isEmpty() && zones.get(0).detector.acceptsLuma();
+  }
+
+  @Override
+  public Mat detect(Mat src, int rotationDegrees) {
+    plateRegion = null;
+    debugView = null;
+    Mat plate = null;
+    Size upright = Utils.uprightSize(src.size(), rotationDegrees);
+
+    for(int i = 0; i < zones.size(); i++) {
+      Zone zone = zones.get(i);
+      zone.layout(src.width(), src.height(), rotationDegrees);
+      if(zone.bounds[2] == 0 || zone.bounds[3] == 0) {
+        continue;
+      }
+
+      Mat view = src.submat(new Rect(zone.bounds[0], zone.bounds[1], zone.bounds[2], zone.bounds[3]));
+      Mat candidate = zone.detector.detect(view, rotationDegrees);
+      view.release();
+
+      if(debugView == null) {
+        debugView = zone.detector.getDebugView();
+      }
+
+      RotatedRect region = zone.detector.getPlateRegion();
+      if(candidate == null || region == null) {
+        continue;
+      }
+
+      RotatedRect mapped = toFrame(region, zone.bounds, src.width(), src.height(), rotationDegrees);
+
+      // Detectors that cannot mask their candidates are checked here instead
+      if(!zone.zone.contains(mapped.center.x / upright.width, mapped.center.y / upright.height)) {
+        continue;
+      }
+
+      if(plateRegion == null || mapped.size.area() > plateRegion.size.area()) {
+        plate = candidate;
+        plateRegion = mapped;
+        debugView = zone.detector.getDebugView();
+      }
+    }
+
+    return plate;
+  }
+
+  @Override
+  public Mat getDebugView() {
+    return debugView;
+  }
+
+  @Override
+  public RotatedRect getPlateRegion() {
+    return plateRegion;
+  }
+
+  @Override
+  public void release() {
+    for(int i = 0; i < zones.size(); i++) {
+      zones.get(i).detector.release();
+    }
+    plateRegion = null;
+    debugView = null;
+  }
+
+  /**
+   * Move a region found in the upright submat into the upright frame, the submat's upright
+   * origin is whichever of its sensor corners ends up top left once rotated
+   */
+  static RotatedRect toFrame(RotatedRect region, int[] bounds, int width, int height, int rotationDegrees) {
+    double x = bounds[0];
+    double y = bounds[1];
+    double right = width - (bounds[0] + bounds[2]);
+    double bottom = height - (bounds[1] + bounds[3]);
+
+    Point offset;
+    switch(rotationDegrees) {
+      case 90:
+        offset = new Point(bottom, x);
+        break;
+      case 180:
+        offset = new Point(right, bottom);
+        break;
+      case 270:
+        offset = new Point(y, right);
+        break;
+      default:
+        offset = new Point(x, y);
+    }
+
+    return new RotatedRect(new Point(region.center.x + offset.x, region.center.y + offset.y), region.size.clone(), region.angle);
+  }
+}
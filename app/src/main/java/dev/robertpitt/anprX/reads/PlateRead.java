@@ -0,0 +1,61 @@
+package dev.robertpitt.anprX.reads;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * A registration read from a frame, the unit that evidence and uploads are tied to.
+ */
+public class PlateRead {
+  private final String id;
+  private final String registration;
+  private final int confidence;
+  private final long frameTimestampNanos;
+  private final long createdAtMillis;
+
+  public PlateRead(String id, String registration, int confidence, long frameTimestampNanos, long createdAtMillis) {
+    this.id = id;
+    this.registration = registration;
+    this.confidence = confidence;
+    this.frameTimestampNanos = frameTimestampNanos;
+    this.createdAtMillis = createdAtMillis;
+  }
+
+  /**
+   * Create a read with a new unique id, stamped with the current wall clock time
+   */
+  public static PlateRead create(String registration, int confidence, long frameTimestampNanos) {
+    return new PlateRead(UUID.randomUUID().toString(), registration, confidence, frameTimestampNanos, System.currentTimeMillis());
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getRegistration() {
+    return registration;
+  }
+
+  public int getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Capture timestamp of the frame the plate was read from, in the frame source time base
+   */
+  public long getFrameTimestampNanos() {
+    return frameTimestampNanos;
+  }
+
+  /**
+   * Wall clock time the read was made, milliseconds since the epoch
+   */
+  public long getCreatedAtMillis() {
+    return createdAtMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.UK, "%s - %d", registration, confidence);
+  }
+}
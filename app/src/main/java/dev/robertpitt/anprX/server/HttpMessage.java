@@ -0,0 +1,277 @@
+package dev.robertpitt.anprX.server;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough HTTP/1.1 for the recognition server: fixed length request bodies, keep alive
+ * and pipelining. Chunked request bodies are not supported.
+ */
+class HttpMessage {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Longest request or header line accepted
+   */
+  static final int MAX_LINE = 8192;
+
+  /**
+   * Most headers accepted on a single request
+   */
+  static final int MAX_HEADERS = 64;
+
+  /**
+   * Raised for a request that cannot be parsed, the connection is closed after answering it
+   */
+  static class BadRequestException extends IOException {
+    final int status;
+
+    BadRequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  static class Request {
+    final String method;
+    final String path;
+    final boolean keepAlive;
+    final Map<String, String> headers;
+
+    /**
+     * Request body, null when the body budget was exhausted and the body was discarded unread
+     */
+    final byte[] body;
+
+    private final Semaphore budget;
+    private final AtomicInteger reserved;
+
+    Request(String method, String path, boolean keepAlive, Map<String, String> headers, byte[] body, Semaphore budget, int reserved) {
+      this.method = method;
+      this.path = path;
+      this.keepAlive = keepAlive;
+      this.headers = headers;
+      this.body = body;
+      this.budget = budget;
+      this.reserved = new AtomicInteger(reserved);
+    }
+
+    /**
+     * Return the body's bytes to the budget once it is no longer needed, safe to call twice
+     */
+    void releaseBody() {
+      int permits = reserved.getAndSet(0);
+      if(permits > 0) {
+        budget.release(permits);
+      }
+    }
+
+    /**
+     * Header value by lower case name, null when absent
+     */
+    String header(String name) {
+      return headers.get(name);
+    }
+
+    int intHeader(String name, int fallback) throws BadRequestException {
+      String value = headers.get(name);
+      if(value == null) {
+        return fallback;
+      }
+
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        throw new BadRequestException(400, String.format("Invalid %s header", name));
+      }
+    }
+  }
+
+  static class Response {
+    final int status;
+    final String reason;
+    final String contentType;
+    final byte[] body;
+    final Map<String, String> headers = new LinkedHashMap<>();
+    boolean close = false;
+
+    Response(int status, String reason, String contentType, byte[] body) {
+      this.status = status;
+      this.reason = reason;
+      this.contentType = contentType;
+      this.body = body;
+    }
+
+    static Response json(int status, String reason, String json) {
+      return new Response(status, reason, "application/json", json.getBytes(UTF8));
+    }
+
+    static Response error(int status, String reason, String message) {
+      return json(status, reason, String.format(Locale.UK, "{\"error\":%s}", JSONObject.quote(message)));
+    }
+
+    Response header(String name, String value) {
+      headers.put(name, value);
+      return this;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+      StringBuilder head = new StringBuilder(128)
+          .append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n")
+          .append("Content-Type: ").append(contentType).append("\r\n")
+          .append("Content-Length: ").append(body.length).append("\r\n");
+      for(Map.Entry<String, String> header : headers.entrySet()) {
+        head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+      }
+      if(close) {
+        head.append("Connection: close\r\n");
+      }
+      head.append("\r\n");
+
+      out.write(head.toString().getBytes(ASCII));
+      out.write(body);
+    }
+  }
+
+  /**
+   * Read the next request from the stream. The body's length is taken from the budget before
+   * it is allocated, when the budget cannot cover it the body is skipped and the request is
+   * returned without one so it can be turned away.
+   *
+   * @param maxBody largest body accepted, anything larger is answered with 413
+   * @param budget bytes of request bodies that may be held at once, shared by all connections
+   * @return null when the client closed the connection between requests
+   */
+  static Request read(InputStream in, int maxBody, Semaphore budget) throws IOException {
+    String requestLine = readLine(in);
+    if(requestLine == null) {
+      return null;
+    }
+
+    String[] parts = requestLine.split(" ");
+    if(parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+      throw new BadRequestException(400, "Malformed request line");
+    }
+
+    Map<String, String> headers = new HashMap<>();
+    String line;
+    while(!(line = requireLine(in)).isEmpty()) {
+      int colon = line.indexOf(':');
+      if(colon <= 0 || headers.size() >= MAX_HEADERS) {
+        throw new BadRequestException(400, "Malformed header");
+      }
+      headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+    }
+
+    String connection = headers.get("connection");
+    boolean keepAlive = parts[2].equals("HTTP/1.1")
+        ? !"close".equalsIgnoreCase(connection)
+        : "keep-alive".equalsIgnoreCase(connection);
+
+    if(headers.containsKey("transfer-encoding")) {
+      throw new BadRequestException(411, "Chunked request bodies are not supported");
+    }
+
+    int length = 0;
+    String contentLength = headers.get("content-length");
+    if(contentLength != null) {
+      try {
+        length = Integer.parseInt(contentLength);
+      } catch (NumberFormatException e) {
+        throw new BadRequestException(400, "Invalid Content-Length");
+      }
+      if(length < 0) {
+        throw new BadRequestException(400, "Invalid Content-Length");
+      }
+      if(length > maxBody) {
+        throw new BadRequestException(413, "Request body too large");
+      }
+    }
+
+    if(!budget.tryAcquire(length)) {
+      discard(in, length);
+      return new Request(parts[0], parts[1], keepAlive, headers, null, budget, 0);
+    }
+
+    byte[] body;
+    try {
+      body = new byte[length];
+      int read = 0;
+      while(read < length) {
+        int count = in.read(body, read, length - read);
+        if(count < 0) {
+          throw new EOFException("Connection closed mid body");
+        }
+        read += count;
+      }
+    } catch (IOException | RuntimeException e) {
+      budget.release(length);
+      throw e;
+    }
+
+    return new Request(parts[0], parts[1], keepAlive, headers, body, budget, length);
+  }
+
+  /**
+   * Skip a body without buffering it, so the connection stays in step for the next request
+   */
+  private static void discard(InputStream in, int length) throws IOException {
+    long remaining = length;
+    while(remaining > 0) {
+      long skipped = in.skip(remaining);
+      if(skipped <= 0) {
+        if(in.read() < 0) {
+          throw new EOFException("Connection closed mid body");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private static String requireLine(InputStream in) throws IOException {
+    String line = readLine(in);
+    if(line == null) {
+      throw new EOFException("Connection closed mid headers");
+    }
+    return line;
+  }
+
+  /**
+   * Read a CRLF (or bare LF) terminated line
+   *
+   * @return null at the end of the stream before any byte of the line
+   */
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+    int c;
+    while((c = in.read()) != '\n') {
+      if(c < 0) {
+        if(line.size() == 0) {
+          return null;
+        }
+        throw new EOFException("Connection closed mid line");
+      }
+      if(line.size() >= MAX_LINE) {
+        throw new BadRequestException(431, "Line too long");
+      }
+      line.write(c);
+    }
+
+    String text = new String(line.toByteArray(), ASCII);
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+}
@@ -0,0 +1,563 @@
+package dev.robertpitt.anprX.server;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.robertpitt.anprX.frames.BufferFrame;
+import dev.robertpitt.anprX.frames.YuvDump;
+import dev.robertpitt.anprX.opencv.DetectorRegistry;
+import dev.robertpitt.anprX.opencv.IDetector;
+import dev.robertpitt.anprX.opencv.MatTracker;
+import dev.robertpitt.anprX.tesseract.IRecogniser;
+import dev.robertpitt.anprX.tesseract.OcrResult;
+
+/**
+ * Headless recognition over HTTP/1.1, for running the detector and OCR against frames sent
+ * from elsewhere rather than the device camera.
+ *
+ * Endpoints:
+ *  - POST /recognise, the body is either an encoded image (Content-Type image/jpeg or
+ *    image/png) or raw pixels (application/octet-stream) described by the X-Frame-Format
+ *    (nv21 or grey), X-Frame-Width and X-Frame-Height headers. X-Frame-Rotation gives the
+ *    clockwise rotation to upright for either kind, 0, 90, 180 or 270. The response is a JSON object with the
+ *    plate read, if any, and the time the frame spent queued and on a worker.
+ *  - GET /metrics, throughput, latency percentiles and admission counters as JSON.
+ *
+ * Connections are kept alive and requests may be pipelined: every request is handed to the
+ * worker pool as soon as it has been read, so several frames from one client are processed
+ * in parallel, and each response is written the moment it and every response before it on
+ * that connection are ready. Responses always arrive in request order.
+ *
+ * Each worker thread owns its own detector and recogniser, neither are thread safe and the
+ * detectors hold per frame working memory, so the pool is sized to the cores rather than the
+ * number of clients. A frame is only admitted while the worker queue has room, otherwise it
+ * is answered immediately with 503 and a Retry-After header so clients back off instead of
+ * building an unbounded backlog. Request bodies are only buffered while they fit in
+ * {@link #BODY_BUDGET}, one that does not is skipped without being allocated and answered the
+ * same way. A client that pipelines more than {@link #MAX_PIPELINED} requests without reading
+ * the responses stops being read from until it catches up.
+ */
+public class RecognitionServer {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::RecognitionServer";
+
+  /**
+   * Creates the recogniser owned by a worker thread, called on that thread
+   */
+  public interface RecogniserFactory {
+    IRecogniser create();
+  }
+
+  /**
+   * Requests read ahead on one connection before waiting for their responses to be written
+   */
+  static final int MAX_PIPELINED = 8;
+
+  /**
+   * Concurrent connections, later connections are refused with 503
+   */
+  static final int MAX_CONNECTIONS = 16;
+
+  /**
+   * Largest request body accepted, above a 1440p NV21 frame, larger frames should be sent as
+   * JPEG
+   */
+  static final int MAX_BODY = 8 * 1024 * 1024;
+
+  /**
+   * Bytes of request bodies buffered at once across every connection, read or waiting for a
+   * worker
+   */
+  static final int BODY_BUDGET = 4 * MAX_BODY;
+
+  /**
+   * Seconds a client is asked to wait after being turned away
+   */
+  static final int RETRY_AFTER_SECONDS = 1;
+
+  /**
+   * Marks the end of the responses on a connection
+   */
+  private static final Future<HttpMessage.Response> END = new FutureTask<>(() -> null);
+
+  /**
+   * Detector and recogniser owned by a single worker thread
+   */
+  private static class Engine {
+    final IDetector detector;
+    final IRecogniser recogniser;
+
+    Engine(IDetector detector, IRecogniser recogniser) {
+      this.detector = detector;
+      this.recogniser = recogniser;
+    }
+  }
+
+  private final DetectorRegistry.Factory detectorFactory;
+  private final RecogniserFactory recogniserFactory;
+  private final int workers;
+  private final ThreadPoolExecutor executor;
+  private final ExecutorService connectionExecutor;
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final Semaphore bodyBudget = new Semaphore(BODY_BUDGET);
+
+  private final ThreadLocal<Engine> engines = new ThreadLocal<Engine>() {
+    @Override
+    protected Engine initialValue() {
+      return new Engine(detectorFactory.create(), recogniserFactory.create());
+    }
+  };
+
+  private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<Socket>());
+  private ServerSocket serverSocket;
+  private Thread acceptor;
+
+  /**
+   * @param workers number of worker threads, see {@link #defaultWorkers()}
+   * @param queueCapacity frames admitted beyond those already on a worker
+   */
+  public RecognitionServer(DetectorRegistry.Factory detectorFactory, RecogniserFactory recogniserFactory, int workers, int queueCapacity) {
+    this.detectorFactory = detectorFactory;
+    this.recogniserFactory = recogniserFactory;
+    this.workers = workers;
+    this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueCapacity), namedThreads("recognition-worker"), new ThreadPoolExecutor.AbortPolicy());
+    this.connectionExecutor = Executors.newCachedThreadPool(namedThreads("recognition-connection"));
+  }
+
+  /**
+   * One worker per core
+   */
+  public static int defaultWorkers() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Start accepting connections
+   *
+   * @param port port to listen on, 0 for any free port
+   * @return the port being listened on
+   */
+  public synchronized int start(int port) throws IOException {
+    if(serverSocket != null) {
+      return serverSocket.getLocalPort();
+    }
+
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(port));
+
+    final ServerSocket socket = serverSocket;
+    acceptor = new Thread(() -> accept(socket), "recognition-acceptor");
+    acceptor.start();
+
+    Log.i(TAG, String.format(Locale.UK, "Listening on port %d with %d workers", socket.getLocalPort(), workers));
+    return socket.getLocalPort();
+  }
+
+  /**
+   * Stop accepting connections, close the open ones and wait for the workers to finish the
+   * frames they are on. The server cannot be restarted.
+   */
+  public void stop() {
+    synchronized (this) {
+      if(serverSocket != null) {
+        closeQuietly(serverSocket);
+      }
+    }
+
+    synchronized (connections) {
+      for(Socket connection : connections) {
+        closeQuietly(connection);
+      }
+    }
+
+    connectionExecutor.shutdownNow();
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Frames admitted and waiting for a worker
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public int getWorkerCount() {
+    return workers;
+  }
+
+  private void accept(ServerSocket serverSocket) {
+    while(!serverSocket.isClosed()) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        if(!serverSocket.isClosed()) {
+          Log.e(TAG, "Accept failed", e);
+        }
+        return;
+      }
+
+      if(connections.size() >= MAX_CONNECTIONS) {
+        refuse(socket);
+        continue;
+      }
+
+      connections.add(socket);
+      try {
+        connectionExecutor.execute(() -> serve(socket));
+      } catch (RejectedExecutionException e) {
+        connections.remove(socket);
+        closeQuietly(socket);
+      }
+    }
+  }
+
+  /**
+   * Read requests from the connection and queue their responses until the client closes it,
+   * a second thread writes the responses out in order.
+   */
+  private void serve(final Socket socket) {
+    final BlockingQueue<Future<HttpMessage.Response>> responses = new ArrayBlockingQueue<>(MAX_PIPELINED);
+
+    try {
+      socket.setTcpNoDelay(true);
+      final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      connectionExecutor.execute(() -> writeResponses(socket, out, responses));
+
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      while(true) {
+        HttpMessage.Request request;
+        try {
+          request = HttpMessage.read(in, MAX_BODY, bodyBudget);
+        } catch (HttpMessage.BadRequestException e) {
+          HttpMessage.Response response = HttpMessage.Response.error(e.status, reasonPhrase(e.status), e.getMessage());
+          response.close = true;
+          responses.put(completed(response));
+          break;
+        }
+
+        if(request == null) {
+          break;
+        }
+
+        Future<HttpMessage.Response> response = dispatch(request);
+        responses.put(response);
+        if(!request.keepAlive) {
+          break;
+        }
+      }
+    } catch (SocketException e) {
+      // Closed by the client or by stop()
+    } catch (IOException e) {
+      Log.w(TAG, "Connection failed", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RejectedExecutionException e) {
+      // Server stopping
+    } finally {
+      try {
+        responses.put(END);
+      } catch (InterruptedException e) {
+        closeQuietly(socket);
+      }
+    }
+  }
+
+  private void writeResponses(Socket socket, OutputStream out, BlockingQueue<Future<HttpMessage.Response>> responses) {
+    try {
+      while(true) {
+        Future<HttpMessage.Response> next = responses.take();
+        if(next == END) {
+          break;
+        }
+
+        HttpMessage.Response response;
+        try {
+          response = next.get();
+        } catch (ExecutionException e) {
+          response = HttpMessage.Response.error(500, reasonPhrase(500), String.valueOf(e.getCause()));
+        }
+
+        response.writeTo(out);
+
+        // Batch the writes of pipelined responses that are already waiting
+        if(response.close || responses.isEmpty()) {
+          out.flush();
+        }
+        if(response.close) {
+          break;
+        }
+      }
+      out.flush();
+    } catch (IOException e) {
+      // Client went away, anything still queued is discarded
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      connections.remove(socket);
+      closeQuietly(socket);
+
+      // Unblock the reader if it is waiting for room, it stops once it sees the closed socket
+      responses.clear();
+    }
+  }
+
+  /**
+   * Route a request, recognition is queued on the worker pool and everything else is
+   * answered immediately
+   */
+  private Future<HttpMessage.Response> dispatch(final HttpMessage.Request request) {
+    if(request.body == null) {
+      metrics.onRejected();
+      return completed(HttpMessage.Response.error(503, reasonPhrase(503), "Too many request bodies buffered")
+          .header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS)));
+    }
+    if(!request.path.equals("/recognise") || !request.method.equals("POST")) {
+      request.releaseBody();
+    }
+
+    if(request.path.equals("/metrics") && request.method.equals("GET")) {
+      try {
+        return completed(HttpMessage.Response.json(200, "OK", metrics.toJson(getQueueDepth(), workers).toString()));
+      } catch (JSONException e) {
+        return completed(HttpMessage.Response.error(500, reasonPhrase(500), e.getMessage()));
+      }
+    }
+
+    if(!request.path.equals("/recognise")) {
+      return completed(HttpMessage.Response.error(404, reasonPhrase(404), "Not found"));
+    }
+    if(!request.method.equals("POST")) {
+      return completed(HttpMessage.Response.error(405, reasonPhrase(405), "Method not allowed").header("Allow", "POST"));
+    }
+
+    final long admitted = System.nanoTime();
+    FutureTask<HttpMessage.Response> task = new FutureTask<>(new Callable<HttpMessage.Response>() {
+      @Override
+      public HttpMessage.Response call() {
+        return recognise(request, admitted);
+      }
+    });
+
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      request.releaseBody();
+      metrics.onRejected();
+      return completed(HttpMessage.Response.error(503, reasonPhrase(503), "Recognition queue full")
+          .header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS)));
+    }
+
+    metrics.onAccepted();
+    return task;
+  }
+
+  /**
+   * Detect and read the plate in a frame, runs on a worker thread
+   */
+  private HttpMessage.Response recognise(HttpMessage.Request request, long admitted) {
+    long started = System.nanoTime();
+    Engine engine = engines.get();
+    boolean success = false;
+    Mat input = null;
+
+    MatTracker.beginFrame();
+    try {
+      input = decode(request, engine.detector.acceptsLuma());
+      request.releaseBody();
+      int rotation = request.intHeader("x-frame-rotation", 0);
+      if(rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+        throw new HttpMessage.BadRequestException(400, "X-Frame-Rotation must be 0, 90, 180 or 270");
+      }
+
+      JSONObject result = new JSONObject();
+      String id = request.header("x-request-id");
+      if(id != null) {
+        result.put("id", id);
+      }
+
+      Mat plate = engine.detector.detect(input, rotation);
+      RotatedRect region = engine.detector.getPlateRegion();
+      if(plate != null && region != null) {
+        OcrResult read = engine.recogniser.recognise(plate);
+        result.put("plate", new JSONObject()
+            .put("text", read.getText())
+            .put("confidence", read.getConfidence())
+            .put("status", read.getStatus().name().toLowerCase(Locale.UK))
+            .put("region", new JSONObject()
+                .put("cx", region.center.x)
+                .put("cy", region.center.y)
+                .put("width", region.size.width)
+                .put("height", region.size.height)
+                .put("angle", region.angle)));
+      } else {
+        result.put("plate", JSONObject.NULL);
+      }
+
+      long finished = System.nanoTime();
+      result.put("queue_ms", (started - admitted) / 1e6);
+      result.put("service_ms", (finished - started) / 1e6);
+      success = true;
+      return HttpMessage.Response.json(200, "OK", result.toString());
+    } catch (HttpMessage.BadRequestException e) {
+      return HttpMessage.Response.error(e.status, reasonPhrase(e.status), e.getMessage());
+    } catch (Exception e) {
+      Log.e(TAG, "Recognition failed", e);
+      return HttpMessage.Response.error(500, reasonPhrase(500), String.valueOf(e.getMessage()));
+    } finally {
+      request.releaseBody();
+      if(input != null) {
+        input.release();
+      }
+      MatTracker.endFrame();
+      metrics.onCompleted(started - admitted, System.nanoTime() - started, success);
+    }
+  }
+
+  /**
+   * Decode the request body into an RGB frame, or a greyscale one for a detector that only
+   * looks at the luma
+   */
+  private static Mat decode(HttpMessage.Request request, boolean luma) throws HttpMessage.BadRequestException {
+    String contentType = request.header("content-type");
+    if(contentType == null) {
+      throw new HttpMessage.BadRequestException(415, "Missing Content-Type");
+    }
+    contentType = contentType.toLowerCase(Locale.US);
+
+    if(contentType.startsWith("image/")) {
+      MatOfByte encoded = MatTracker.track(new MatOfByte(request.body));
+      Mat decoded = Imgcodecs.imdecode(encoded, luma ? Imgcodecs.IMREAD_GRAYSCALE : Imgcodecs.IMREAD_COLOR);
+      encoded.release();
+      if(decoded.empty()) {
+        decoded.release();
+        throw new HttpMessage.BadRequestException(400, "Image could not be decoded");
+      }
+      if(!luma) {
+        Imgproc.cvtColor(decoded, decoded, Imgproc.COLOR_BGR2RGB);
+      }
+      return decoded;
+    }
+
+    if(!contentType.startsWith("application/octet-stream")) {
+      throw new HttpMessage.BadRequestException(415, String.format("Unsupported Content-Type %s", contentType));
+    }
+
+    String format = request.header("x-frame-format");
+    int width = request.intHeader("x-frame-width", 0);
+    int height = request.intHeader("x-frame-height", 0);
+    int frameFormat;
+    if("nv21".equalsIgnoreCase(format)) {
+      frameFormat = YuvDump.FORMAT_NV21;
+    } else if("grey".equalsIgnoreCase(format) || "gray".equalsIgnoreCase(format)) {
+      frameFormat = YuvDump.FORMAT_GREY;
+    } else {
+      throw new HttpMessage.BadRequestException(400, "X-Frame-Format must be nv21 or grey");
+    }
+
+    if(width <= 0 || height <= 0 || request.body.length != YuvDump.frameSize(frameFormat, width, height)) {
+      throw new HttpMessage.BadRequestException(400, "Body does not match the frame size");
+    }
+
+    BufferFrame frame = new BufferFrame(frameFormat, ByteBuffer.wrap(request.body), width, height, 0, 0);
+    return luma ? frame.toLuma() : frame.toRGB();
+  }
+
+  private static Future<HttpMessage.Response> completed(HttpMessage.Response response) {
+    FutureTask<HttpMessage.Response> future = new FutureTask<>(() -> response);
+    future.run();
+    return future;
+  }
+
+  private static void refuse(Socket socket) {
+    try {
+      HttpMessage.Response response = HttpMessage.Response.error(503, reasonPhrase(503), "Too many connections")
+          .header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+      response.close = true;
+      OutputStream out = socket.getOutputStream();
+      response.writeTo(out);
+      out.flush();
+    } catch (IOException e) {
+      // Nothing to tell a client that has already gone
+    } finally {
+      closeQuietly(socket);
+    }
+  }
+
+  private static String reasonPhrase(int status) {
+    switch(status) {
+      case 400: return "Bad Request";
+      case 404: return "Not Found";
+      case 405: return "Method Not Allowed";
+      case 411: return "Length Required";
+      case 413: return "Payload Too Large";
+      case 415: return "Unsupported Media Type";
+      case 431: return "Request Header Fields Too Large";
+      case 503: return "Service Unavailable";
+      default: return "Internal Server Error";
+    }
+  }
+
+  private static ThreadFactory namedThreads(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> new Thread(runnable, String.format(Locale.UK, "%s-%d", name, count.incrementAndGet()));
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+}
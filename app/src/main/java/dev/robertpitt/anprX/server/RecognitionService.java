@@ -0,0 +1,199 @@
+package dev.robertpitt.anprX.server;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.preference.PreferenceManager;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import org.opencv.android.OpenCVLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dev.robertpitt.anprX.R;
+import dev.robertpitt.anprX.activities.SettingsActivity.SettingsActivity;
+import dev.robertpitt.anprX.opencv.DetectorProfiles;
+import dev.robertpitt.anprX.opencv.DetectorRegistry;
+import dev.robertpitt.anprX.tesseract.TessdataInstaller;
+import dev.robertpitt.anprX.tesseract.TesseractAPI;
+import dev.robertpitt.anprX.tesseract.TesseractRecogniser;
+
+/**
+ * Foreground service running a {@link RecognitionServer} without the camera preview, so the
+ * device can act as a recognition node for frames captured elsewhere.
+ *
+ * Started with {@link #start(Context, int)} and stopped with {@link #stop(Context)}, the
+ * recognition server preference in the settings does both.
+ *
+ * Every worker thread initialises its own Tesseract instance the first time it is given a
+ * frame, they are all ended once the server has stopped. The traineddata is installed once on
+ * the startup thread before any worker exists, so the workers only ever find it in place.
+ */
+public class RecognitionService extends Service {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::RecognitionService";
+
+  public static final String EXTRA_PORT = "port";
+  public static final int DEFAULT_PORT = 8080;
+
+  /**
+   * Frames admitted per worker beyond the one it is processing
+   */
+  private static final int QUEUE_PER_WORKER = 2;
+
+  private static final String CHANNEL_ID = "recognition_server";
+  private static final int NOTIFICATION_ID = 1;
+
+  private RecognitionServer server;
+  private Thread startup;
+  private final List<TessBaseAPI> tesseractInstances = new ArrayList<>();
+
+  /**
+   * Start the service listening on the port
+   */
+  public static void start(Context context, int port) {
+    ContextCompat.startForegroundService(context, new Intent(context, RecognitionService.class).putExtra(EXTRA_PORT, port));
+  }
+
+  public static void stop(Context context) {
+    context.stopService(new Intent(context, RecognitionService.class));
+  }
+
+  @Override
+  public IBinder onBind(Intent intent) {
+    return null;
+  }
+
+  @Override
+  public int onStartCommand(Intent intent, int flags, int startId) {
+    final int port = intent != null ? intent.getIntExtra(EXTRA_PORT, DEFAULT_PORT) : DEFAULT_PORT;
+    startForeground(NOTIFICATION_ID, buildNotification(getString(R.string.recognition_server_starting)));
+
+    synchronized (this) {
+      if(server == null && startup == null) {
+        startup = new Thread(() -> startServer(port), "recognition-startup");
+        startup.start();
+      }
+    }
+    return START_REDELIVER_INTENT;
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+
+    Thread pending;
+    RecognitionServer running;
+    synchronized (this) {
+      pending = startup;
+      running = server;
+      server = null;
+    }
+
+    if(pending != null) {
+      pending.interrupt();
+    }
+    if(running != null) {
+      running.stop();
+    }
+
+    synchronized (tesseractInstances) {
+      for(TessBaseAPI api : tesseractInstances) {
+        api.end();
+      }
+      tesseractInstances.clear();
+    }
+  }
+
+  /**
+   * Load the native libraries and start listening, runs off the main thread
+   */
+  private void startServer(int port) {
+    try {
+      if (!OpenCVLoader.initDebug()) {
+        throw new IllegalStateException("Unable to load OpenCV");
+      }
+      System.loadLibrary("opencv_anpr");
+
+      SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+      final String detectorKey = preferences.getString(SettingsActivity.PREF_DETECTOR, DetectorRegistry.DEFAULT_DETECTOR);
+      final DetectorRegistry registry = new DetectorRegistry();
+      registry.setParameters(DetectorProfiles.fromAssets(getAssets(), DetectorProfiles.deviceClass(this)));
+      new TessdataInstaller(getAssets()).install(TesseractAPI.getBasePath(this), "eng");
+
+      RecognitionServer created = new RecognitionServer(
+          () -> registry.create(detectorKey),
+          this::createRecogniser,
+          RecognitionServer.defaultWorkers(),
+          RecognitionServer.defaultWorkers() * QUEUE_PER_WORKER);
+
+      synchronized (this) {
+        if(Thread.currentThread().isInterrupted()) {
+          created.stop();
+          return;
+        }
+        server = created;
+        startup = null;
+      }
+
+      int bound = created.start(port);
+      updateNotification(getString(R.string.recognition_server_listening, bound));
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, String.format(Locale.UK, "Unable to start the recognition server on port %d", port), e);
+      updateNotification(getString(R.string.recognition_server_failed));
+      stopSelf();
+    }
+  }
+
+  /**
+   * Create a recogniser with its own Tesseract instance, called on the worker thread
+   */
+  private TesseractRecogniser createRecogniser() {
+    TesseractAPI api = new TesseractAPI(this);
+    if (!api.init("eng", TessBaseAPI.OEM_LSTM_ONLY)) {
+      throw new IllegalStateException("Unable to initialise Tesseract");
+    }
+    api.configureForPlates();
+
+    synchronized (tesseractInstances) {
+      tesseractInstances.add(api);
+    }
+    return new TesseractRecogniser(api);
+  }
+
+  private Notification buildNotification(String text) {
+    if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+      manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+          getString(R.string.recognition_server_channel), NotificationManager.IMPORTANCE_LOW));
+    }
+
+    return new NotificationCompat.Builder(this, CHANNEL_ID)
+        .setSmallIcon(R.mipmap.ic_launcher)
+        .setContentTitle(getString(R.string.recognition_server_title))
+        .setContentText(text)
+        .setOngoing(true)
+        .build();
+  }
+
+  private void updateNotification(String text) {
+    NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+    manager.notify(NOTIFICATION_ID, buildNotification(text));
+  }
+}
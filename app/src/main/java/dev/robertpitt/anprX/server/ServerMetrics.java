@@ -0,0 +1,166 @@
+package dev.robertpitt.anprX.server;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency of the recognition server.
+ *
+ * Latencies are kept for the most recent {@link #WINDOW} requests only, so the percentiles
+ * follow the current load rather than everything since the server started. Throughput is the
+ * number of those requests completed within the last {@link #THROUGHPUT_WINDOW_NANOS}.
+ */
+public class ServerMetrics {
+  /**
+   * Number of recent requests the latency percentiles are taken over
+   */
+  static final int WINDOW = 1024;
+
+  /**
+   * Period throughput is measured over
+   */
+  static final long THROUGHPUT_WINDOW_NANOS = 10000000000L;
+
+  private final long startedNanos = System.nanoTime();
+
+  private long accepted = 0;
+  private long rejected = 0;
+  private long completed = 0;
+  private long failed = 0;
+
+  /**
+   * Ring of the most recent requests, time spent queued and time spent on a worker
+   */
+  private final long[] queueNanos = new long[WINDOW];
+  private final long[] serviceNanos = new long[WINDOW];
+  private final long[] completedAt = new long[WINDOW];
+  private int head = 0;
+  private int size = 0;
+
+  /**
+   * A request was admitted to the worker queue
+   */
+  public synchronized void onAccepted() {
+    accepted++;
+  }
+
+  /**
+   * A request was turned away because the worker queue was full
+   */
+  public synchronized void onRejected() {
+    rejected++;
+  }
+
+  /**
+   * A request finished on a worker
+   *
+   * @param queued nanoseconds between admission and a worker picking the request up
+   * @param service nanoseconds the worker spent on the request
+   * @param success false when the request could not be processed
+   */
+  public synchronized void onCompleted(long queued, long service, boolean success) {
+    if(success) {
+      completed++;
+    } else {
+      failed++;
+    }
+
+    queueNanos[head] = queued;
+    serviceNanos[head] = service;
+    completedAt[head] = System.nanoTime();
+    head = (head + 1) % WINDOW;
+    size = Math.min(size + 1, WINDOW);
+  }
+
+  public synchronized long getAcceptedCount() {
+    return accepted;
+  }
+
+  public synchronized long getRejectedCount() {
+    return rejected;
+  }
+
+  public synchronized long getCompletedCount() {
+    return completed;
+  }
+
+  public synchronized long getFailedCount() {
+    return failed;
+  }
+
+  /**
+   * Requests admitted but not yet finished, queued or on a worker
+   */
+  public synchronized long getInFlightCount() {
+    return accepted - completed - failed;
+  }
+
+  /**
+   * Requests completed per second over the throughput window
+   */
+  public synchronized double getThroughput() {
+    long now = System.nanoTime();
+    long window = Math.min(THROUGHPUT_WINDOW_NANOS, now - startedNanos);
+    if(window <= 0) {
+      return 0;
+    }
+
+    int recent = 0;
+    for(int i = 0; i < size; i++) {
+      if(now - completedAt[i] <= window) {
+        recent++;
+      }
+    }
+    return recent / (window / 1e9);
+  }
+
+  /**
+   * Snapshot as returned by the metrics endpoint
+   *
+   * @param queueDepth requests currently waiting for a worker
+   * @param workers size of the worker pool
+   */
+  public synchronized JSONObject toJson(int queueDepth, int workers) throws JSONException {
+    long[] total = new long[size];
+    for(int i = 0; i < size; i++) {
+      total[i] = queueNanos[i] + serviceNanos[i];
+    }
+
+    return new JSONObject()
+        .put("uptime_ms", (System.nanoTime() - startedNanos) / 1000000)
+        .put("workers", workers)
+        .put("queue_depth", queueDepth)
+        .put("in_flight", getInFlightCount())
+        .put("accepted", accepted)
+        .put("rejected", rejected)
+        .put("completed", completed)
+        .put("failed", failed)
+        .put("throughput", getThroughput())
+        .put("queue_ms", percentiles(Arrays.copyOf(queueNanos, size)))
+        .put("service_ms", percentiles(Arrays.copyOf(serviceNanos, size)))
+        .put("latency_ms", percentiles(total));
+  }
+
+  private static JSONObject percentiles(long[] samples) throws JSONException {
+    Arrays.sort(samples);
+    return new JSONObject()
+        .put("p50", percentileMillis(samples, 50))
+        .put("p95", percentileMillis(samples, 95))
+        .put("p99", percentileMillis(samples, 99))
+        .put("max", samples.length == 0 ? 0 : samples[samples.length - 1] / 1e6);
+  }
+
+  /**
+   * Nearest rank percentile of sorted samples, in milliseconds
+   */
+  static double percentileMillis(long[] sorted, double percentile) {
+    if(sorted.length == 0) {
+      return 0;
+    }
+
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return sorted[Math.min(sorted.length, Math.max(1, rank)) - 1] / 1e6;
+  }
+}
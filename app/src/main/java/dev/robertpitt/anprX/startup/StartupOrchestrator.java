@@ -0,0 +1,100 @@
+package dev.robertpitt.anprX.startup;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent start up tasks (native libraries, OCR engines, ...) concurrently off the
+ * main thread and reports back on the main thread once every task has completed.
+ */
+public class StartupOrchestrator {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::StartupOrchestrator";
+
+  /**
+   * A unit of start up work
+   */
+  public interface Task {
+    void run() throws Exception;
+  }
+
+  /**
+   * Notified on the main thread
+   */
+  public interface Listener {
+    /**
+     * Every task completed successfully
+     */
+    void onReady(long elapsedMillis);
+
+    /**
+     * A task failed, no further callbacks are made
+     */
+    void onFailed(String task, Exception e);
+  }
+
+  private final List<String> names = new ArrayList<>();
+  private final List<Task> tasks = new ArrayList<>();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final AtomicBoolean failed = new AtomicBoolean(false);
+
+  /**
+   * Add a task, must be called before {@link #start}
+   */
+  public StartupOrchestrator add(String name, Task task) {
+    names.add(name);
+    tasks.add(task);
+    return this;
+  }
+
+  /**
+   * Start every task on its own thread
+   */
+  public void start(final Listener listener) {
+    final long start = SystemClock.elapsedRealtime();
+    if(tasks.isEmpty()) {
+      mainHandler.post(() -> listener.onReady(0));
+      return;
+    }
+
+    final AtomicInteger remaining = new AtomicInteger(tasks.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, tasks.size()));
+
+    for(int i = 0; i < tasks.size(); i++) {
+      final String name = names.get(i);
+      final Task task = tasks.get(i);
+      executor.execute(() -> {
+        long taskStart = SystemClock.elapsedRealtime();
+        try {
+          task.run();
+          Log.i(TAG, String.format("%s ready in %dms", name, SystemClock.elapsedRealtime() - taskStart));
+        } catch (Exception e) {
+          Log.e(TAG, String.format("%s failed", name), e);
+          if(failed.compareAndSet(false, true)) {
+            mainHandler.post(() -> listener.onFailed(name, e));
+          }
+          return;
+        }
+
+        if(remaining.decrementAndGet() == 0 && !failed.get()) {
+          final long elapsed = SystemClock.elapsedRealtime() - start;
+          Log.i(TAG, String.format("Startup complete in %dms", elapsed));
+          mainHandler.post(() -> listener.onReady(elapsed));
+        }
+      });
+    }
+
+    executor.shutdown();
+  }
+}
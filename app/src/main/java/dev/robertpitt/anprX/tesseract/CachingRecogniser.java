@@ -0,0 +1,56 @@
+package dev.robertpitt.anprX.tesseract;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+/**
+ * Serves reads of near identical plate crops from an {@link OcrResultCache} and only passes
+ * crops that miss the cache on to the wrapped recogniser.
+ */
+public class CachingRecogniser implements IRecogniser {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::CachingRecogniser";
+
+  /**
+   * Number of lookups between each summary written to the log
+   */
+  private static final int LOG_INTERVAL = 100;
+
+  private final IRecogniser recogniser;
+  private final OcrResultCache cache;
+  private final PlateHash plateHash = new PlateHash();
+  private long lookups = 0;
+
+  public CachingRecogniser(IRecogniser recogniser, OcrResultCache cache) {
+    this.recogniser = recogniser;
+    this.cache = cache;
+  }
+
+  @Override
+  public OcrResult recognise(Mat plate) {
+    long[] hash = plateHash.compute(plate);
+    OcrResult result = cache.lookup(hash, SystemClock.elapsedRealtime());
+    if(result == null) {
+      result = recogniser.recognise(plate);
+
+      // A cancelled read says nothing about the crop, the next look at it may well finish
+      if(!result.isTimedOut()) {
+        cache.put(hash, result, SystemClock.elapsedRealtime());
+      }
+    }
+
+    if(++lookups % LOG_INTERVAL == 0) {
+      Log.i(TAG, cache.toString());
+    }
+
+    return result;
+  }
+
+  public OcrResultCache getCache() {
+    return cache;
+  }
+}
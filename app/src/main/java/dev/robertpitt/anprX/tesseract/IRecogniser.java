@@ -0,0 +1,10 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.opencv.core.Mat;
+
+public interface IRecogniser {
+  /**
+   * Read the registration from a normalised plate crop as returned by an IDetector.
+   */
+  OcrResult recognise(Mat plate);
+}
@@ -0,0 +1,73 @@
+package dev.robertpitt.anprX.tesseract;
+
+import java.util.Locale;
+
+/**
+ * Text read from a single plate crop.
+ */
+public class OcrResult {
+  public enum Status {
+    /**
+     * The engine finished reading the crop
+     */
+    COMPLETE,
+
+    /**
+     * The read was cancelled when it ran past its time budget, the text is empty
+     */
+    TIMED_OUT
+  }
+
+  /**
+   * Recognised text, never null
+   */
+  private final String text;
+
+  /**
+   * Mean confidence reported by the engine (0-100)
+   */
+  private final int confidence;
+
+  private final Status status;
+
+  public OcrResult(String text, int confidence) {
+    this(text, confidence, Status.COMPLETE);
+  }
+
+  public OcrResult(String text, int confidence, Status status) {
+    this.text = text == null ? "" : text;
+    this.confidence = confidence;
+    this.status = status;
+  }
+
+  /**
+   * Empty result of a read that was cancelled
+   */
+  public static OcrResult timedOut() {
+    return new OcrResult("", 0, Status.TIMED_OUT);
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public int getConfidence() {
+    return confidence;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isTimedOut() {
+    return status == Status.TIMED_OUT;
+  }
+
+  @Override
+  public String toString() {
+    if(status == Status.TIMED_OUT) {
+      return "timed out";
+    }
+    return String.format(Locale.UK, "%s - %d", text, confidence);
+  }
+}
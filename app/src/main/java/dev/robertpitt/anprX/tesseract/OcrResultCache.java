@@ -0,0 +1,138 @@
+package dev.robertpitt.anprX.tesseract;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded cache of recent OCR results keyed by the perceptual hash of the plate crop.
+ *
+ * Lookups match any entry within a small Hamming distance of the hash, entries are evicted
+ * least recently used first once the cache is full and expire after a fixed time to live.
+ * Times are passed in by the caller (milliseconds on a monotonic clock).
+ */
+public class OcrResultCache {
+  private static class Entry {
+    final long[] hash;
+    final OcrResult result;
+    final long createdAt;
+
+    Entry(long[] hash, OcrResult result, long createdAt) {
+      this.hash = hash;
+      this.result = result;
+      this.createdAt = createdAt;
+    }
+  }
+
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final int maxDistance;
+
+  /**
+   * Entries in access order, the eldest entry is the least recently used
+   */
+  private final LinkedHashMap<Long, Entry> entries;
+  private long nextId = 0;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  /**
+   * @param maxEntries maximum number of results held
+   * @param ttlMillis time after which a result is no longer served
+   * @param maxDistance maximum Hamming distance between hashes for a cache hit
+   */
+  public OcrResultCache(int maxEntries, long ttlMillis, int maxDistance) {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    this.maxDistance = maxDistance;
+    this.entries = new LinkedHashMap<Long, Entry>(maxEntries + 1, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+        if(size() > OcrResultCache.this.maxEntries) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Find the closest unexpired result within the maximum distance of the hash
+   *
+   * @return the cached result or null on a miss
+   */
+  public synchronized OcrResult lookup(long[] hash, long now) {
+    Long bestKey = null;
+    int bestDistance = maxDistance + 1;
+
+    Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+    while(iterator.hasNext()) {
+      Map.Entry<Long, Entry> candidate = iterator.next();
+      if(now - candidate.getValue().createdAt > ttlMillis) {
+        iterator.remove();
+        expirations++;
+        continue;
+      }
+
+      int distance = PlateHash.hammingDistance(hash, candidate.getValue().hash);
+      if(distance < bestDistance) {
+        bestDistance = distance;
+        bestKey = candidate.getKey();
+      }
+    }
+
+    if(bestKey == null) {
+      misses++;
+      return null;
+    }
+
+    hits++;
+    return entries.get(bestKey).result;
+  }
+
+  /**
+   * Store the result read from the crop with the given hash
+   */
+  public synchronized void put(long[] hash, OcrResult result, long now) {
+    entries.put(nextId++, new Entry(hash, result, now));
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized long getExpirations() {
+    return expirations;
+  }
+
+  /**
+   * Fraction of lookups served from the cache
+   */
+  public synchronized double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(Locale.UK, "size=%d hits=%d misses=%d hitRate=%.3f evictions=%d expirations=%d",
+        entries.size(), hits, misses, getHitRate(), evictions, expirations);
+  }
+}
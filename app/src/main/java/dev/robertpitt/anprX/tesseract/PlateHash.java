@@ -0,0 +1,81 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Difference hash (dHash) of a plate crop, used to recognise crops that are near identical
+ * between frames.
+ *
+ * The crop is normalised to 65x16 greyscale and each pixel is compared with its right
+ * neighbour, giving a 64x16 bit hash stored as one long per row.
+ */
+public class PlateHash {
+  /**
+   * Hash dimensions, WIDTH bits per row
+   */
+  public static final int WIDTH = 64;
+  public static final int HEIGHT = 16;
+
+  /**
+   * Working memory, owned by the hasher so it is reused between crops, allocated on first use
+   */
+  private Mat grey;
+  private Mat normalised;
+  private final byte[] pixels = new byte[(WIDTH + 1) * HEIGHT];
+
+  /**
+   * Compute the hash of a plate crop
+   */
+  public long[] compute(Mat plate) {
+    if(normalised == null) {
+      grey = new Mat();
+      normalised = new Mat();
+    }
+
+    Mat source = plate;
+    if(plate.type() != CvType.CV_8UC1) {
+      Imgproc.cvtColor(plate, grey, plate.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+      source = grey;
+    }
+
+    Imgproc.resize(source, normalised, new Size(WIDTH + 1, HEIGHT), 0, 0, Imgproc.INTER_AREA);
+    normalised.get(0, 0, pixels);
+    return dHash(pixels, WIDTH + 1, HEIGHT);
+  }
+
+  /**
+   * Difference hash of a greyscale image, one long per row where bit n is set when
+   * pixel n is brighter than pixel n + 1.
+   *
+   * @param pixels row major 8-bit pixels
+   * @param width image width, at most 65
+   */
+  public static long[] dHash(byte[] pixels, int width, int height) {
+    long[] hash = new long[height];
+    for(int y = 0; y < height; y++) {
+      long row = 0;
+      int offset = y * width;
+      for(int x = 0; x < width - 1; x++) {
+        if((pixels[offset + x] & 0xFF) > (pixels[offset + x + 1] & 0xFF)) {
+          row |= 1L << x;
+        }
+      }
+      hash[y] = row;
+    }
+    return hash;
+  }
+
+  /**
+   * Number of differing bits between two hashes of the same size
+   */
+  public static int hammingDistance(long[] a, long[] b) {
+    int distance = 0;
+    for(int i = 0; i < a.length; i++) {
+      distance += Long.bitCount(a[i] ^ b[i]);
+    }
+    return distance;
+  }
+}
@@ -0,0 +1,106 @@
+package dev.robertpitt.anprX.tesseract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines several OCR results of the same plate into one by per character voting.
+ *
+ * Results are grouped by length and the length with the most total confidence wins, then each
+ * position takes the character with the most confidence behind it. The confidence of the voted
+ * text is the best confidence of the group scaled by the mean share of confidence behind each
+ * winning character, so unanimous results keep their confidence and disputed characters pull
+ * it down.
+ */
+public class ReadVoter {
+  private final List<OcrResult> results = new ArrayList<>();
+
+  public void add(OcrResult result) {
+    if(result.getText().length() > 0) {
+      results.add(result);
+    }
+  }
+
+  public int getCount() {
+    return results.size();
+  }
+
+  /**
+   * Voted result, empty when nothing has been added
+   */
+  public OcrResult getResult() {
+    if(results.isEmpty()) {
+      return new OcrResult("", 0);
+    }
+
+    /**
+     * Pick the length with the most confidence behind it
+     */
+    Map<Integer, Integer> lengthWeights = new HashMap<>();
+    int length = 0;
+    int lengthWeight = -1;
+    for(OcrResult result : results) {
+      int textLength = result.getText().length();
+      Integer weight = lengthWeights.get(textLength);
+      int total = (weight == null ? 0 : weight) + Math.max(1, result.getConfidence());
+      lengthWeights.put(textLength, total);
+      if(total > lengthWeight) {
+        lengthWeight = total;
+        length = textLength;
+      }
+    }
+
+    /**
+     * Vote each position across the results of that length
+     */
+    StringBuilder text = new StringBuilder(length);
+    int maxConfidence = maxConfidence(length);
+    double confidence = 0;
+    Map<Character, Integer> votes = new HashMap<>();
+    for(int position = 0; position < length; position++) {
+      votes.clear();
+      int positionWeight = 0;
+      char winner = 0;
+      int winnerWeight = -1;
+      for(OcrResult result : results) {
+        if(result.getText().length() != length) {
+          continue;
+        }
+
+        char c = result.getText().charAt(position);
+        Integer weight = votes.get(c);
+        int total = (weight == null ? 0 : weight) + result.getConfidence();
+        votes.put(c, total);
+        positionWeight += result.getConfidence();
+        if(total > winnerWeight) {
+          winnerWeight = total;
+          winner = c;
+        }
+      }
+
+      text.append(winner);
+      confidence += positionWeight == 0 ? 0 : (double) winnerWeight / positionWeight * maxConfidence;
+    }
+
+    return new OcrResult(text.toString(), length == 0 ? 0 : (int) Math.round(confidence / length));
+  }
+
+  /**
+   * Highest confidence among the results of the length
+   */
+  private int maxConfidence(int length) {
+    int max = 0;
+    for(OcrResult result : results) {
+      if(result.getText().length() == length) {
+        max = Math.max(max, result.getConfidence());
+      }
+    }
+    return max;
+  }
+
+  public void clear() {
+    results.clear();
+  }
+}
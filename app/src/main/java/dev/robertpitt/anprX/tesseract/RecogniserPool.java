@@ -0,0 +1,55 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Shares a fixed set of recognisers between analysis threads. Recognisers are not thread safe
+ * so each call borrows one for the duration of the read, callers block while all are busy.
+ */
+public class RecogniserPool implements IRecogniser {
+  private final BlockingQueue<IRecogniser> idle;
+  private final int size;
+
+  public RecogniserPool(IRecogniser... recognisers) {
+    this.size = recognisers.length;
+    this.idle = new ArrayBlockingQueue<>(recognisers.length);
+    for(IRecogniser recogniser : recognisers) {
+      idle.add(recogniser);
+    }
+  }
+
+  /**
+   * Read the plate with the next free recogniser, an empty result is returned if the
+   * thread is interrupted while waiting
+   */
+  @Override
+  public OcrResult recognise(Mat plate) {
+    IRecogniser recogniser;
+    try {
+      recogniser = idle.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new OcrResult("", 0);
+    }
+
+    try {
+      return recogniser.recognise(plate);
+    } finally {
+      idle.add(recogniser);
+    }
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Number of recognisers currently in use
+   */
+  public int getBusyCount() {
+    return size - idle.size();
+  }
+}
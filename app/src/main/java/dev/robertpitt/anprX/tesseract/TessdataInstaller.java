@@ -0,0 +1,197 @@
+package dev.robertpitt.anprX.tesseract;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Installs the bundled traineddata from the assets into the tessdata directory once.
+ *
+ * Each install writes a stamp file next to the traineddata holding the size and SHA-1 of the
+ * copied asset. On later launches the installed file is checked against that stamp and the
+ * size of the asset in the APK, which is stored uncompressed so its length is known without
+ * reading it, so an app update shipping new traineddata is installed again while an unchanged
+ * one skips the copy entirely.
+ *
+ * Installs are serialised across the process, every Tesseract instance installs before it
+ * initialises and several may be created at once on different threads.
+ */
+public class TessdataInstaller {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::TessdataInstaller";
+
+  /**
+   * Copy buffer size, traineddata files are tens of megabytes
+   */
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  /**
+   * Held for the whole install, the temporary file and the rename are shared by all callers
+   */
+  private static final Object INSTALL_LOCK = new Object();
+
+  private final AssetManager assets;
+
+  public TessdataInstaller(AssetManager assets) {
+    this.assets = assets;
+  }
+
+  /**
+   * Install the traineddata for the language into {basePath}/tessdata if it is missing or
+   * does not match the stamp written by the previous install.
+   *
+   * @return true when the traineddata had to be copied
+   */
+  public boolean install(String basePath, String lang) throws IOException {
+    synchronized (INSTALL_LOCK) {
+      return installLocked(basePath, lang);
+    }
+  }
+
+  private boolean installLocked(String basePath, String lang) throws IOException {
+    File tessdata = new File(basePath, "tessdata");
+    if(!Utils.mkdir(tessdata.getAbsolutePath())) {
+      throw new IOException(String.format("Unable to create %s", tessdata));
+    }
+
+    deleteStale(tessdata, lang);
+
+    String asset = String.format("tessdata/%s.traineddata", lang);
+    File target = new File(tessdata, String.format("%s.traineddata", lang));
+    File stamp = new File(tessdata, String.format("%s.traineddata.stamp", lang));
+    if(isInstalled(target, stamp, assetLength(asset))) {
+      return false;
+    }
+
+    long start = System.nanoTime();
+    File temp = new File(tessdata, String.format("%s.traineddata.tmp", lang));
+    String digest = copyAsset(asset, temp);
+    if(!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException(String.format("Unable to move %s into place", target));
+    }
+
+    writeStamp(stamp, target.length(), digest);
+    Log.i(TAG, String.format("Installed %s (%d bytes) in %dms", target, target.length(), (System.nanoTime() - start) / 1000000));
+    return true;
+  }
+
+  /**
+   * Remove the misnamed {lang}.traindata earlier versions copied on every launch, tens of
+   * megabytes that Tesseract never read
+   */
+  public static void deleteStale(File tessdata, String lang) {
+    File stale = new File(tessdata, String.format("%s.traindata", lang));
+    if(stale.exists() && stale.delete()) {
+      Log.i(TAG, String.format("Deleted stale %s", stale));
+    }
+  }
+
+  /**
+   * Length of the asset in the APK, or -1 when it is compressed and only the stamp can be checked
+   */
+  private long assetLength(String asset) {
+    try {
+      AssetFileDescriptor descriptor = assets.openFd(asset);
+      try {
+        return descriptor.getLength();
+      } finally {
+        descriptor.close();
+      }
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * The traineddata is installed when its size matches the size recorded in the stamp and,
+   * when known, the size of the asset
+   */
+  private boolean isInstalled(File target, File stamp, long assetLength) {
+    if(!target.exists() || !stamp.exists()) {
+      return false;
+    }
+    if(assetLength >= 0 && assetLength != target.length()) {
+      return false;
+    }
+
+    try {
+      String[] parts = readStamp(stamp).split(":");
+      return parts.length == 2 && Long.parseLong(parts[0]) == target.length();
+    } catch (IOException | NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Copy the asset to the destination, returning the SHA-1 of the copied bytes
+   */
+  private String copyAsset(String asset, File destination) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    InputStream in = assets.open(asset, AssetManager.ACCESS_STREAMING);
+    OutputStream out = new FileOutputStream(destination);
+    try {
+      byte[] buf = new byte[BUFFER_SIZE];
+      int len;
+      while ((len = in.read(buf)) > 0) {
+        out.write(buf, 0, len);
+        digest.update(buf, 0, len);
+      }
+      out.flush();
+    } finally {
+      in.close();
+      out.close();
+    }
+
+    return toHex(digest.digest());
+  }
+
+  private static void writeStamp(File stamp, long size, String digest) throws IOException {
+    OutputStream out = new FileOutputStream(stamp);
+    try {
+      out.write(String.format("%d:%s", size, digest).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String readStamp(File stamp) throws IOException {
+    InputStream in = new FileInputStream(stamp);
+    try {
+      byte[] buf = new byte[(int) stamp.length()];
+      int offset = 0;
+      int len;
+      while (offset < buf.length && (len = in.read(buf, offset, buf.length - offset)) > 0) {
+        offset += len;
+      }
+      return new String(buf, 0, offset, "UTF-8").trim();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for(byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+}
@@ -7,27 +7,13 @@ import android.util.Log;
 import com.googlecode.tesseract.android.TessBaseAPI;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-
-import dev.robertpitt.anprX.Utils;
 
 public class TesseractAPI extends TessBaseAPI {
   /**
    * Log Tag
    */
-  private static final String TAG = "ANPRX::ANPRXApplication";
-
-  /**
-   * External Storage Base Location
-   */
-  public final String EX_STORAGE_PATH = Environment.getExternalStorageDirectory().getAbsolutePath();
-
-  /**
-   * Base path for Tesseract storage
-   */
-  public final String TESS_BASE_PATH = String.format("%s/tesseract", EX_STORAGE_PATH);
+  private static final String TAG = "ANPRX::TesseractAPI";
 
   /**
    * Context for
@@ -42,31 +28,49 @@ public class TesseractAPI extends TessBaseAPI {
     mContext = context;
   }
 
-  public void init(String lang, int ocrEngineMode) {
-    // Create the folders if they don't exists
-    Utils.mkdir(TESS_BASE_PATH);
-    Utils.mkdir(String.format("%s/tessdata", TESS_BASE_PATH));
+  /**
+   * Base path for Tesseract storage, kept in internal storage so no storage
+   * permission is needed before the engine can be initialised.
+   */
+  public String getBasePath() {
+    return getBasePath(mContext);
+  }
+
+  public static String getBasePath(Context context) {
+    return new File(context.getFilesDir(), "tesseract").getAbsolutePath();
+  }
+
+  /**
+   * Install the traineddata for the language (only on the first launch) and initialise the engine.
+   *
+   * @return true when the engine initialised successfully
+   */
+  public boolean init(String lang, int ocrEngineMode) {
+    String basePath = getBasePath();
 
-    // copy the eng lang file from assets folder if not exists.
-    File f2 = new File(String.format("%s/tessdata/%s.traindata", TESS_BASE_PATH, lang));
-    if(!f2.exists()){
-      InputStream in = null;
-      try {
-        in = mContext.getAssets().open( "tessdata/eng.traineddata");
-        FileOutputStream fout = new FileOutputStream(f2);
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-          fout.write(buf, 0, len);
-        }
-        in.close();
-        fout.close();
-      } catch (IOException e) {
-        Log.e(TAG, e.toString());
-        e.printStackTrace();
-      }
+    /**
+     * Earlier versions kept the misnamed copy in external storage, it is deleted if it is
+     * still there and the storage permission allows it
+     */
+    TessdataInstaller.deleteStale(new File(Environment.getExternalStorageDirectory(), "tesseract/tessdata"), lang);
+    try {
+      new TessdataInstaller(mContext.getAssets()).install(basePath, lang);
+    } catch (IOException e) {
+      Log.e(TAG, e.toString());
+      e.printStackTrace();
     }
 
-    super.init(TESS_BASE_PATH, lang, ocrEngineMode);
+    return super.init(basePath, lang, ocrEngineMode);
+  }
+
+  /**
+   * Apply the settings used for reading number plates
+   * @see https://tesseract-ocr.github.io/tessdoc/ImproveQuality#dictionaries-word-lists-and-patterns
+   */
+  public void configureForPlates() {
+    setVariable("tessedit_char_whitelist", " ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
+    setVariable("load_system_dawg", "0");
+    setVariable("load_freq_dawg", "0");
+    setPageSegMode(TessBaseAPI.PageSegMode.PSM_SINGLE_BLOCK);
   }
 }
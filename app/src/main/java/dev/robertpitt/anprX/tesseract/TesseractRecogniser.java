@@ -0,0 +1,167 @@
+package dev.robertpitt.anprX.tesseract;
+
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Recogniser backed by a TesseractAPI instance, the API is not thread safe so each
+ * recogniser must only be used from one thread at a time.
+ *
+ * Plate crops are passed to Tesseract as raw 8-bit greyscale, the crop is copied once into
+ * a buffer owned by the recogniser and reused for every call, avoiding the ARGB Bitmap
+ * expansion and the conversion back to greyscale inside Tesseract.
+ *
+ * Each read has a time budget. Recognition runs through getHOCRText, the only call that
+ * honours Tesseract's cancel monitor, and a watchdog calls stop() once the budget is spent so
+ * a pathological crop gives up after the next word rather than holding the OCR worker for
+ * hundreds of milliseconds. The text and confidence are then taken from the finished
+ * recognition without reading the crop again. A cancelled read is reported as
+ * {@link OcrResult.Status#TIMED_OUT} and the engine is cleared for the next crop.
+ */
+public class TesseractRecogniser implements IRecogniser {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::TesseractRecogniser";
+
+  /**
+   * Time budget of a read unless one is given, a clean crop reads in a few tens of milliseconds
+   */
+  public static final long DEFAULT_TIMEOUT_MILLIS = 250;
+
+  /**
+   * Watchdog shared by every recogniser, it only ever calls stop() so one thread is plenty
+   */
+  private static final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+    Thread thread = new Thread(runnable, "anprx-ocr-watchdog");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  static {
+    watchdog.setRemoveOnCancelPolicy(true);
+  }
+  /**
+   * Initialised Tesseract instance
+   */
+  private final TesseractAPI tesseractAPI;
+
+  /**
+   * Greyscale pixel buffer handed to Tesseract, grown to fit the largest crop seen
+   */
+  private byte[] pixels = new byte[0];
+
+  /**
+   * Working memory for crops that are not already 8-bit single channel, allocated on first use
+   */
+  private Mat grey;
+
+  /**
+   * Time budget of a read in milliseconds, 0 for no limit
+   */
+  private volatile long timeoutMillis;
+
+  private volatile long timedOut = 0;
+
+  public TesseractRecogniser(TesseractAPI tesseractAPI) {
+    this(tesseractAPI, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  public TesseractRecogniser(TesseractAPI tesseractAPI, long timeoutMillis) {
+    this.tesseractAPI = tesseractAPI;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public OcrResult recognise(Mat plate) {
+    setImage(plate);
+
+    long timeout = timeoutMillis;
+    if(timeout <= 0) {
+      return new OcrResult(tesseractAPI.getUTF8Text(), tesseractAPI.meanConfidence());
+    }
+
+    /**
+     * Whoever clears the flag first decides the outcome, so the watchdog can never stop a
+     * later read that happens to be running when a stale timeout fires
+     */
+    final AtomicBoolean running = new AtomicBoolean(true);
+    ScheduledFuture<?> stop = watchdog.schedule(() -> {
+      if(running.compareAndSet(true, false)) {
+        tesseractAPI.stop();
+      }
+    }, timeout, TimeUnit.MILLISECONDS);
+
+    try {
+      tesseractAPI.getHOCRText(0);
+    } finally {
+      stop.cancel(false);
+    }
+
+    if(!running.compareAndSet(true, false)) {
+      timedOut++;
+      Log.w(TAG, String.format(Locale.UK, "OCR cancelled after %dms on a %dx%d crop", timeout, plate.width(), plate.height()));
+      tesseractAPI.clear();
+      return OcrResult.timedOut();
+    }
+
+    // Recognition has already run, these only collect its results
+    return new OcrResult(tesseractAPI.getUTF8Text(), tesseractAPI.meanConfidence());
+  }
+
+  /**
+   * @param timeoutMillis time budget of each read, 0 for no limit
+   */
+  public void setTimeoutMillis(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Number of reads cancelled for running past their budget
+   */
+  public long getTimedOutCount() {
+    return timedOut;
+  }
+
+  /**
+   * Copy the crop into the pixel buffer and hand it to Tesseract
+   */
+  protected void setImage(Mat plate) {
+    Mat source = plate;
+    if(grey == null && (plate.type() != CvType.CV_8UC1 || !plate.isContinuous())) {
+      grey = new Mat();
+    }
+
+    if(plate.type() != CvType.CV_8UC1) {
+      Imgproc.cvtColor(plate, grey, plate.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+      source = grey;
+    } else if(!plate.isContinuous()) {
+      plate.copyTo(grey);
+      source = grey;
+    }
+
+    int width = source.width();
+    int height = source.height();
+    int size = width * height;
+    if(pixels.length < size) {
+      pixels = new byte[size];
+    }
+    source.get(0, 0, pixels);
+
+    // Tesseract copies the pixels into its own image so the buffer can be reused immediately
+    tesseractAPI.setImage(pixels, width, height, 1, width);
+  }
+}
@@ -0,0 +1,26 @@
+package dev.robertpitt.anprX.upload;
+
+import java.io.IOException;
+
+/**
+ * Sends a compressed batch of reads to the back office.
+ */
+public interface BatchTransport {
+  /**
+   * The server refused the batch and retrying it unchanged will not help (HTTP 4xx)
+   */
+  class RejectedException extends IOException {
+    public RejectedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Send a gzip compressed JSON array of reads, returning normally only once the server has
+   * accepted the batch.
+   *
+   * @throws RejectedException when the batch itself was rejected
+   * @throws IOException on any transient failure, the batch will be retried
+   */
+  void send(byte[] gzippedBatch, int reads) throws IOException;
+}
@@ -0,0 +1,76 @@
+package dev.robertpitt.anprX.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Posts batches to the back office over HTTP(S).
+ */
+public class HttpBatchTransport implements BatchTransport {
+  private static final int CONNECT_TIMEOUT = 10000;
+  private static final int READ_TIMEOUT = 30000;
+
+  private final URL endpoint;
+
+  public HttpBatchTransport(URL endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  @Override
+  public void send(byte[] gzippedBatch, int reads) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setConnectTimeout(CONNECT_TIMEOUT);
+      connection.setReadTimeout(READ_TIMEOUT);
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(gzippedBatch.length);
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setRequestProperty("Content-Encoding", "gzip");
+      connection.setRequestProperty("X-Read-Count", String.valueOf(reads));
+
+      OutputStream out = connection.getOutputStream();
+      try {
+        out.write(gzippedBatch);
+      } finally {
+        out.close();
+      }
+
+      int status = connection.getResponseCode();
+      drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+
+      if(status >= 200 && status < 300) {
+        return;
+      }
+
+      // Timeouts and rate limiting are worth retrying, any other client error is not
+      if(status >= 400 && status < 500 && status != 408 && status != 429) {
+        throw new RejectedException(String.format("Batch rejected with HTTP %d", status));
+      }
+      throw new IOException(String.format("Batch failed with HTTP %d", status));
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Consume the response body so the connection can be reused
+   */
+  private static void drain(InputStream in) throws IOException {
+    if(in == null) {
+      return;
+    }
+
+    try {
+      byte[] buf = new byte[4096];
+      while(in.read(buf) > 0) {
+        // discard
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
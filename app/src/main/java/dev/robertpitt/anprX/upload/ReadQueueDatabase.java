@@ -0,0 +1,101 @@
+package dev.robertpitt.anprX.upload;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable store of reads waiting to be uploaded, survives process death so reads made while
+ * offline are sent once the device is back in coverage.
+ */
+public class ReadQueueDatabase extends SQLiteOpenHelper {
+  private static final String DATABASE_NAME = "upload_queue.db";
+  private static final int DATABASE_VERSION = 1;
+  private static final String TABLE = "reads";
+
+  /**
+   * A queued read, the payload is the JSON sent to the back office
+   */
+  public static class QueuedRead {
+    public final long sequence;
+    public final String id;
+    public final String payload;
+
+    QueuedRead(long sequence, String id, String payload) {
+      this.sequence = sequence;
+      this.id = id;
+      this.payload = payload;
+    }
+  }
+
+  public ReadQueueDatabase(Context context) {
+    this(context, DATABASE_NAME);
+  }
+
+  /**
+   * @param name database file name, null for an in-memory queue
+   */
+  public ReadQueueDatabase(Context context, String name) {
+    super(context, name, null, DATABASE_VERSION);
+  }
+
+  @Override
+  public void onConfigure(SQLiteDatabase db) {
+    db.enableWriteAheadLogging();
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL("CREATE TABLE " + TABLE + " (sequence INTEGER PRIMARY KEY AUTOINCREMENT, id TEXT NOT NULL UNIQUE, payload TEXT NOT NULL)");
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+  }
+
+  /**
+   * Append a read to the queue, reads already queued are ignored
+   */
+  public void enqueue(String id, String payload) {
+    ContentValues values = new ContentValues();
+    values.put("id", id);
+    values.put("payload", payload);
+    getWritableDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+  }
+
+  /**
+   * Oldest reads in the queue, in the order they were queued
+   */
+  public List<QueuedRead> peek(int limit) {
+    List<QueuedRead> reads = new ArrayList<>(limit);
+    Cursor cursor = getReadableDatabase().query(TABLE, new String[]{"sequence", "id", "payload"}, null, null, null, null, "sequence ASC", String.valueOf(limit));
+    try {
+      while(cursor.moveToNext()) {
+        reads.add(new QueuedRead(cursor.getLong(0), cursor.getString(1), cursor.getString(2)));
+      }
+    } finally {
+      cursor.close();
+    }
+    return reads;
+  }
+
+  /**
+   * Remove every read up to and including the sequence number, used once a batch is acknowledged
+   */
+  public void deleteThrough(long sequence) {
+    getWritableDatabase().delete(TABLE, "sequence <= ?", new String[]{String.valueOf(sequence)});
+  }
+
+  /**
+   * Number of reads waiting to be uploaded
+   */
+  public long count() {
+    return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE);
+  }
+}
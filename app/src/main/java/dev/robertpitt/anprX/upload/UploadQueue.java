@@ -0,0 +1,305 @@
+package dev.robertpitt.anprX.upload;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import dev.robertpitt.anprX.reads.PlateRead;
+
+/**
+ * Store-and-forward queue shipping reads to the back office in compressed batches.
+ *
+ * Reads are written to a SQLite queue before anything is sent, so they survive process death
+ * and coverage gaps. A single background thread drains the queue oldest first: a batch is only
+ * removed once the transport has accepted it, transient failures back off exponentially with
+ * jitter, and the batch size doubles after each full batch is accepted and halves on failure
+ * so a large backlog drains in a few big requests while a flaky link sends small ones.
+ */
+public class UploadQueue {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::UploadQueue";
+
+  private static final int MIN_BATCH_SIZE = 1;
+  private static final int INITIAL_BATCH_SIZE = 50;
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  /**
+   * Default time a new read may wait so it can share a request with the reads that follow it
+   */
+  public static final long DEFAULT_FLUSH_DELAY_MILLIS = 5000;
+  public static final long DEFAULT_MIN_BACKOFF_MILLIS = 2000;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+  private final ReadQueueDatabase database;
+  private final long flushDelayMillis;
+  private final long minBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ScheduledExecutorService executor;
+  private final Random random = new Random();
+
+  private volatile BatchTransport transport;
+  private ConnectivityManager.NetworkCallback networkCallback;
+
+  /**
+   * State below is only touched on the executor thread
+   */
+  private ScheduledFuture<?> scheduledDrain;
+  private int batchSize = INITIAL_BATCH_SIZE;
+  private int failures = 0;
+
+  private volatile long sent = 0;
+  private volatile long batches = 0;
+  private volatile long rejected = 0;
+
+  public UploadQueue(ReadQueueDatabase database) {
+    this(database, DEFAULT_FLUSH_DELAY_MILLIS, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+  }
+
+  public UploadQueue(ReadQueueDatabase database, long flushDelayMillis, long minBackoffMillis, long maxBackoffMillis) {
+    this.database = database;
+    this.flushDelayMillis = flushDelayMillis;
+    this.minBackoffMillis = minBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(() -> {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      runnable.run();
+    }, "anprx-upload"));
+  }
+
+  /**
+   * Set the transport reads are sent with, null pauses uploading while reads keep queueing.
+   * Anything already queued (including reads from a previous process) is sent straight away.
+   */
+  public void setTransport(BatchTransport transport) {
+    this.transport = transport;
+    flush();
+  }
+
+  /**
+   * Queue a read for upload, safe to call from any thread. The read is written to the database
+   * before this returns, so it is never lost with the executor's pending work on shutdown.
+   *
+   * @param evidence names of the evidence files written for the read, may be null
+   */
+  public void enqueue(PlateRead read, String[] evidence) {
+    final String payload;
+    try {
+      payload = toJson(read, evidence).toString();
+    } catch (JSONException e) {
+      Log.e(TAG, String.format("Unable to serialise %s", read.getId()), e);
+      return;
+    }
+
+    database.enqueue(read.getId(), payload);
+    try {
+      executor.execute(() -> {
+        if(scheduledDrain == null) {
+          schedule(flushDelayMillis);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Shutting down, the read is already stored and is sent by the next instance
+    }
+  }
+
+  /**
+   * Drain the queue now, cancelling any pending backoff
+   */
+  public void flush() {
+    executor.execute(() -> {
+      failures = 0;
+      schedule(0);
+    });
+  }
+
+  /**
+   * Flush whenever a validated network becomes available, so a backlog built up during a
+   * coverage gap does not wait out the remainder of its backoff.
+   */
+  public void registerNetworkCallback(ConnectivityManager connectivityManager) {
+    NetworkRequest request = new NetworkRequest.Builder()
+        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+        .build();
+    networkCallback = new ConnectivityManager.NetworkCallback() {
+      @Override
+      public void onAvailable(Network network) {
+        flush();
+      }
+    };
+    connectivityManager.registerNetworkCallback(request, networkCallback);
+  }
+
+  public void unregisterNetworkCallback(ConnectivityManager connectivityManager) {
+    if(networkCallback != null) {
+      connectivityManager.unregisterNetworkCallback(networkCallback);
+      networkCallback = null;
+    }
+  }
+
+  /**
+   * Number of reads waiting to be sent (reads the database, avoid calling on the main thread)
+   */
+  public long getQueuedCount() {
+    return database.count();
+  }
+
+  public long getSentCount() {
+    return sent;
+  }
+
+  /**
+   * Reads discarded because the server rejected them on their own
+   */
+  public long getRejectedCount() {
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.UK, "sent=%d batches=%d rejected=%d batchSize=%d failures=%d",
+        sent, batches, rejected, batchSize, failures);
+  }
+
+  /**
+   * Stop uploading, anything still queued is sent by the next instance
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    database.close();
+  }
+
+  /**
+   * Replace any pending drain with one after the delay (executor thread only)
+   */
+  private void schedule(long delayMillis) {
+    if(scheduledDrain != null) {
+      scheduledDrain.cancel(false);
+    }
+    scheduledDrain = executor.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Send batches until the queue is empty or the transport fails
+   */
+  private void drain() {
+    scheduledDrain = null;
+
+    while(!Thread.currentThread().isInterrupted()) {
+      BatchTransport transport = this.transport;
+      if(transport == null) {
+        return;
+      }
+
+      List<ReadQueueDatabase.QueuedRead> batch = database.peek(batchSize);
+      if(batch.isEmpty()) {
+        return;
+      }
+      long lastSequence = batch.get(batch.size() - 1).sequence;
+
+      try {
+        transport.send(compress(batch), batch.size());
+        database.deleteThrough(lastSequence);
+        sent += batch.size();
+        batches++;
+        failures = 0;
+        if(batch.size() == batchSize) {
+          batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+        }
+      } catch (BatchTransport.RejectedException e) {
+        // Split the batch until the offending read is isolated, then drop it so it
+        // cannot block everything queued behind it
+        if(batch.size() > MIN_BATCH_SIZE) {
+          batchSize = Math.max(MIN_BATCH_SIZE, batch.size() / 2);
+        } else {
+          Log.w(TAG, String.format("Dropping read %s: %s", batch.get(0).id, e.getMessage()));
+          database.deleteThrough(lastSequence);
+          rejected++;
+        }
+      } catch (IOException e) {
+        failures++;
+        batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+        long delay = backoff();
+        Log.w(TAG, String.format(Locale.UK, "Upload failed (%d in a row), retrying in %dms: %s", failures, delay, e.getMessage()));
+        schedule(delay);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Exponential backoff with equal jitter, so devices coming back into coverage together
+   * do not retry in lock step
+   */
+  private long backoff() {
+    long ceiling = Math.min(maxBackoffMillis, minBackoffMillis << Math.min(failures - 1, 20));
+    return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+  }
+
+  /**
+   * Join the queued payloads into a JSON array and gzip it, the payloads are already JSON so
+   * they are not parsed again
+   */
+  private static byte[] compress(List<ReadQueueDatabase.QueuedRead> batch) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), "UTF-8");
+    try {
+      writer.write('[');
+      for(int i = 0; i < batch.size(); i++) {
+        if(i > 0) {
+          writer.write(',');
+        }
+        writer.write(batch.get(i).payload);
+      }
+      writer.write(']');
+    } finally {
+      writer.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  static JSONObject toJson(PlateRead read, String[] evidence) throws JSONException {
+    JSONObject json = new JSONObject()
+        .put("id", read.getId())
+        .put("registration", read.getRegistration())
+        .put("confidence", read.getConfidence())
+        .put("createdAt", read.getCreatedAtMillis())
+        .put("frameTimestampNanos", read.getFrameTimestampNanos());
+
+    if(evidence != null) {
+      JSONArray files = new JSONArray();
+      for(String name : evidence) {
+        files.put(name);
+      }
+      json.put("evidence", files);
+    }
+    return json;
+  }
+}
@@ -0,0 +1,126 @@
+package dev.robertpitt.anprX.analysis;
+
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.robertpitt.anprX.frames.Frame;
+import dev.robertpitt.anprX.frames.FrameSink;
+
+import static org.junit.Assert.*;
+
+public class StreamSchedulerTest {
+  private static class TestFrame extends Frame {
+    boolean closed = false;
+
+    TestFrame() {
+      super(1, 1, 0, 0);
+    }
+
+    @Override
+    public ByteBuffer getLuma() {
+      return ByteBuffer.allocate(1);
+    }
+
+    @Override
+    public int getLumaRowStride() {
+      return 1;
+    }
+
+    @Override
+    public Mat toRGB() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * Keeps its stream permanently busy by offering the next frame as each one is processed
+   */
+  private static class SaturatingSink implements FrameSink {
+    private final CountDownLatch start;
+    private final AtomicInteger budget;
+    private final CountDownLatch done;
+    StreamScheduler.Stream stream;
+
+    SaturatingSink(CountDownLatch start, AtomicInteger budget, CountDownLatch done) {
+      this.start = start;
+      this.budget = budget;
+      this.done = done;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      frame.close();
+      if(budget.decrementAndGet() > 0) {
+        stream.onFrame(new TestFrame());
+      } else {
+        done.countDown();
+      }
+    }
+  }
+
+  @Test
+  public void busyStreamsShareWorkerByWeight() throws InterruptedException {
+    StreamScheduler scheduler = new StreamScheduler(1);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger budget = new AtomicInteger(300);
+    CountDownLatch done = new CountDownLatch(1);
+
+    SaturatingSink front = new SaturatingSink(start, budget, done);
+    SaturatingSink rear = new SaturatingSink(start, budget, done);
+    front.stream = scheduler.addStream("front", 2, front);
+    rear.stream = scheduler.addStream("rear", 1, rear);
+    front.stream.onFrame(new TestFrame());
+    rear.stream.onFrame(new TestFrame());
+    start.countDown();
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    scheduler.shutdown();
+
+    double ratio = (double) front.stream.getProcessedCount() / rear.stream.getProcessedCount();
+    assertEquals(2.0, ratio, 0.1);
+  }
+
+  @Test
+  public void newerFrameReplacesPendingFrame() throws InterruptedException {
+    StreamScheduler scheduler = new StreamScheduler(1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StreamScheduler.Stream stream = scheduler.addStream("camera", 1, frame -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      frame.close();
+    });
+
+    stream.onFrame(new TestFrame());
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    TestFrame stale = new TestFrame();
+    stream.onFrame(stale);
+    stream.onFrame(new TestFrame());
+    release.countDown();
+    scheduler.shutdown();
+
+    assertTrue(stale.closed);
+    assertEquals(1, stream.getDroppedCount());
+    assertEquals(3, stream.getReceivedCount());
+  }
+}
@@ -0,0 +1,52 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import dev.robertpitt.anprX.opencv.DetectorParameters;
+
+import static org.junit.Assert.*;
+
+public class ParameterSpaceTest {
+  private static ParameterSpace space() {
+    return new ParameterSpace(
+        new double[] { 0.012, 0.018 },
+        new double[] { 1000 },
+        new double[] { 2.5, 3.0 },
+        new int[] { 5 },
+        new double[] { 3 },
+        new double[] { ParameterSpace.OTSU, 120 },
+        new double[] { 0.3 });
+  }
+
+  @Test
+  public void get_decodesEveryIndex() {
+    ParameterSpace space = space();
+    assertEquals(8, space.size());
+    assertEquals(DetectorParameters.DEFAULTS, space.get(1));
+    assertEquals(new DetectorParameters(0.018, 1000, 3.0, 5, 3, false, 120, 0.3), space.get(7));
+  }
+
+  @Test
+  public void grid_spreadsTrialsOverTheSpace() {
+    ParameterSpace space = space();
+    assertEquals(8, space.grid(100).size());
+
+    List<DetectorParameters> grid = space.grid(4);
+    assertEquals(4, grid.size());
+    assertEquals(space.get(0), grid.get(0));
+    assertEquals(space.get(6), grid.get(3));
+  }
+
+  @Test
+  public void random_drawsDistinctConfigurations() {
+    ParameterSpace space = ParameterSpace.defaultSpace();
+    List<DetectorParameters> sample = space.random(50, 7);
+    assertEquals(50, sample.size());
+    assertEquals(50, new HashSet<>(sample).size());
+    assertEquals(sample, space.random(50, 7));
+    assertEquals(8, space().random(100, 1).size());
+  }
+}
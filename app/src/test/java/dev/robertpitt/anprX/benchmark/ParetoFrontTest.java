@@ -0,0 +1,28 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParetoFrontTest {
+  @Test
+  public void indices_dropsDominatedPoints() {
+    double[] latencies = { 40, 10, 20, 30, 25 };
+    double[] recalls = { 0.95, 0.60, 0.80, 0.70, 0.90 };
+
+    // 30ms at 0.70 is beaten by 20ms at 0.80
+    assertArrayEquals(new int[] { 1, 2, 4, 0 }, ParetoFront.indices(latencies, recalls));
+  }
+
+  @Test
+  public void indices_keepsOneOfIdenticalPoints() {
+    double[] latencies = { 10, 10, 10 };
+    double[] recalls = { 0.5, 0.8, 0.8 };
+    assertArrayEquals(new int[] { 1 }, ParetoFront.indices(latencies, recalls));
+  }
+
+  @Test
+  public void indices_emptyForNoPoints() {
+    assertEquals(0, ParetoFront.indices(new double[0], new double[0]).length);
+  }
+}
@@ -0,0 +1,29 @@
+package dev.robertpitt.anprX.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadAccuracyTest {
+  @Test
+  public void normalise_ignoresCaseAndWhitespace() {
+    assertEquals("AB12CDE", ReadAccuracy.normalise(" ab12 cde\n"));
+    assertEquals("", ReadAccuracy.normalise(null));
+  }
+
+  @Test
+  public void editDistance_countsSingleEdits() {
+    assertEquals(0, ReadAccuracy.editDistance("AB12CDE", "AB12CDE"));
+    assertEquals(1, ReadAccuracy.editDistance("AB12CDE", "AB12CD"));
+    assertEquals(1, ReadAccuracy.editDistance("AB12CDE", "A812CDE"));
+    assertEquals(7, ReadAccuracy.editDistance("AB12CDE", ""));
+  }
+
+  @Test
+  public void characterAccuracy_scoresPartialReads() {
+    assertEquals(1.0, ReadAccuracy.characterAccuracy("AB12 CDE", "ab12cde"), 1e-9);
+    assertEquals(6.0 / 7.0, ReadAccuracy.characterAccuracy("AB12CDE", "A812CDE"), 1e-9);
+    assertEquals(0.0, ReadAccuracy.characterAccuracy("AB12CDE", ""), 1e-9);
+    assertTrue(ReadAccuracy.isExactMatch("AB12 CDE", "ab12cde"));
+  }
+}
@@ -0,0 +1,60 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ContourGeometryTest {
+  /**
+   * Dense outline of an axis aligned rectangle, one point per pixel like CHAIN_APPROX_NONE
+   */
+  private static int[] rectangleOutline(int x, int y, int width, int height) {
+    int count = (width + height) * 2;
+    int[] points = new int[count * 2];
+    int n = 0;
+    for(int i = 0; i < width; i++) { points[n++] = x + i; points[n++] = y; }
+    for(int i = 0; i < height; i++) { points[n++] = x + width; points[n++] = y + i; }
+    for(int i = 0; i < width; i++) { points[n++] = x + width - i; points[n++] = y + height; }
+    for(int i = 0; i < height; i++) { points[n++] = x; points[n++] = y + height - i; }
+    return points;
+  }
+
+  @Test
+  public void simplify_reducesRectangleOutlineToFourCorners() {
+    int[] outline = rectangleOutline(10, 20, 120, 30);
+    int count = outline.length / 2;
+    int[] quad = new int[8];
+
+    int corners = ContourGeometry.simplify(outline, count, ContourGeometry.perimeter(outline, count) * 0.018,
+        new boolean[count], new int[ContourGeometry.stackSize(count)], quad);
+
+    assertEquals(4, corners);
+    assertEquals(3600, ContourGeometry.area(quad, 4), 1e-9);
+    assertTrue(ContourGeometry.isConvex(quad, 4));
+    assertEquals(0, ContourGeometry.maxCornerCosine(quad), 1e-9);
+  }
+
+  @Test
+  public void isConvex_rejectsDart() {
+    int[] dart = {0, 0, 10, 5, 0, 10, 3, 5};
+    assertFalse(ContourGeometry.isConvex(dart, 4));
+  }
+
+  @Test
+  public void maxCornerCosine_isLargeForParallelogram() {
+    int[] parallelogram = {0, 0, 100, 0, 140, 40, 40, 40};
+    assertTrue(ContourGeometry.maxCornerCosine(parallelogram) > 0.3);
+  }
+
+  @Test
+  public void minAreaRect_fitsRotatedSquare() {
+    int[] diamond = {50, 0, 100, 50, 50, 100, 0, 50};
+    float[] rect = new float[5];
+    ContourGeometry.minAreaRect(diamond, 4, rect);
+
+    assertEquals(50, rect[0], 1e-3);
+    assertEquals(50, rect[1], 1e-3);
+    assertEquals(5000, rect[2] * rect[3], 1e-1);
+    assertEquals(-45, rect[4], 1e-3);
+  }
+}
@@ -0,0 +1,62 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionZoneTest {
+  @Test
+  public void parseAll_readsEveryZoneAndRoundTrips() {
+    List<DetectionZone> zones = DetectionZone.parseAll("0.1,0.4 0.9,0.4 0.9,1 0.1,1; 0,0 0.2,0 0.2,0.2");
+
+    assertEquals(2, zones.size());
+    assertEquals(4, zones.get(0).getVertexCount());
+    assertEquals(3, zones.get(1).getVertexCount());
+    assertEquals(2, DetectionZone.parseAll(DetectionZone.formatAll(zones)).size());
+    assertTrue(DetectionZone.parseAll("  ").isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parseAll_rejectsMalformedVertex() {
+    DetectionZone.parseAll("0.1,0.4 0.9 0.9,1");
+  }
+
+  @Test
+  public void contains_followsThePolygonNotItsBounds() {
+    DetectionZone triangle = DetectionZone.parseAll("0,0 1,0 0,1").get(0);
+
+    assertTrue(triangle.contains(0.2, 0.2));
+    assertFalse(triangle.contains(0.8, 0.8));
+  }
+
+  @Test
+  public void sensorBounds_mapsTheUprightZoneIntoTheSensorFrame() {
+    // Bottom half of the upright frame
+    DetectionZone zone = DetectionZone.parseAll("0,0.5 1,0.5 1,1 0,1").get(0);
+    int[] bounds = new int[4];
+
+    zone.sensorBounds(640, 480, 0, bounds);
+    assertArrayEquals(new int[]{0, 240, 640, 240}, bounds);
+
+    // Turning the sensor frame clockwise to upright brings its right half to the bottom
+    zone.sensorBounds(640, 480, 90, bounds);
+    assertArrayEquals(new int[]{320, 0, 320, 480}, bounds);
+
+    zone.sensorBounds(640, 480, 270, bounds);
+    assertArrayEquals(new int[]{0, 0, 320, 480}, bounds);
+  }
+
+  @Test
+  public void toUpright_invertsToSensor() {
+    double[] sensor = new double[2];
+    double[] upright = new double[2];
+    for(int rotation = 0; rotation < 360; rotation += 90) {
+      DetectionZone.toSensor(0.2, 0.7, rotation, sensor);
+      DetectionZone.toUpright(sensor[0], sensor[1], rotation, upright);
+      assertEquals(0.2, upright[0], 1e-9);
+      assertEquals(0.7, upright[1], 1e-9);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class PlateVerifierTest {
+  private static InputStream model(String text) throws IOException {
+    return new ByteArrayInputStream(text.getBytes("UTF-8"));
+  }
+
+  @Test
+  public void read_parsesHeaderAndWeightsAcrossLines() throws IOException {
+    PlateVerifier.LinearModel model = PlateVerifier.LinearModel.read(model(
+        "# trained on 1200 crops\n" +
+        "window 64 16\n" +
+        "threshold 0.5\n" +
+        "\n" +
+        "bias -0.42\n" +
+        "weights 5\n" +
+        "0.1 -0.2 0.3\n" +
+        "# second half\n" +
+        "0.4 0.5\n"));
+
+    assertEquals(64, model.windowWidth);
+    assertEquals(16, model.windowHeight);
+    assertEquals(0.5, model.threshold, 1e-9);
+    assertEquals(-0.42, model.bias, 1e-9);
+    assertArrayEquals(new float[]{0.1f, -0.2f, 0.3f, 0.4f, 0.5f}, model.weights, 0);
+  }
+
+  @Test
+  public void read_defaultsWindowThresholdAndBias() throws IOException {
+    PlateVerifier.LinearModel model = PlateVerifier.LinearModel.read(model("weights 2\n1 2\n"));
+
+    assertEquals(128, model.windowWidth);
+    assertEquals(32, model.windowHeight);
+    assertEquals(0, model.threshold, 0);
+    assertEquals(0, model.bias, 0);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsTooManyWeights() throws IOException {
+    PlateVerifier.LinearModel.read(model("weights 2\n1 2 3\n"));
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsMissingWeights() throws IOException {
+    PlateVerifier.LinearModel.read(model("weights 3\n1 2\n"));
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsUnexpectedLines() throws IOException {
+    PlateVerifier.LinearModel.read(model("window 64\nweights 1\n1\n"));
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsInvalidNumbers() throws IOException {
+    PlateVerifier.LinearModel.read(model("weights 2\n1 x\n"));
+  }
+}
@@ -0,0 +1,60 @@
+package dev.robertpitt.anprX.opencv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TextLineGrouperTest {
+  /**
+   * Boxes of a seven character plate with a space after the fourth, optionally sloping down
+   * to the right, each character also found as a slightly smaller nested region
+   */
+  private static int[] plateBoxes(double slope, int[] noise) {
+    int[] boxes = new int[7 * 8 + noise.length];
+    int n = 0;
+    int x = 50;
+    for(int i = 0; i < 7; i++) {
+      int y = 100 + (int) Math.round(slope * (x - 50));
+      boxes[n++] = x; boxes[n++] = y; boxes[n++] = 25; boxes[n++] = 40;
+      boxes[n++] = x + 1; boxes[n++] = y + 1; boxes[n++] = 23; boxes[n++] = 38;
+      x += 25 + (i == 3 ? 20 : 5);
+    }
+    System.arraycopy(noise, 0, boxes, n, noise.length);
+    return boxes;
+  }
+
+  @Test
+  public void group_findsPlateLineAmongNoise() {
+    int[] noise = {
+        300, 300, 120, 120, // window, too large
+        400, 20, 4, 40,     // pole, too thin
+        10, 400, 20, 30,    // lone blob
+    };
+    int[] boxes = plateBoxes(0, noise);
+    float[] line = new float[5];
+
+    int characters = new TextLineGrouper().group(boxes, boxes.length / 4, 10, 100, line);
+
+    assertEquals(7, characters);
+    assertEquals((50 + 270) / 2.0, line[0], 1);
+    assertEquals(120, line[1], 1);
+    assertTrue(line[2] > 270 - 50);
+    assertTrue(line[3] > 40);
+    assertEquals(0, line[4], 0.1);
+  }
+
+  @Test
+  public void group_followsSkewedLine() {
+    int[] boxes = plateBoxes(0.1, new int[0]);
+    float[] line = new float[5];
+
+    assertEquals(7, new TextLineGrouper().group(boxes, boxes.length / 4, 10, 100, line));
+    assertEquals(Math.toDegrees(Math.atan(0.1)), line[4], 1);
+  }
+
+  @Test
+  public void group_rejectsShortClusters() {
+    int[] boxes = {10, 10, 20, 30, 35, 10, 20, 30};
+    assertEquals(0, new TextLineGrouper().group(boxes, 2, 10, 100, new float[5]));
+  }
+}
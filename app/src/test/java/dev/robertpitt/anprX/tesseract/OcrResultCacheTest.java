@@ -0,0 +1,52 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OcrResultCacheTest {
+  private static long[] hash(long... rows) {
+    return rows;
+  }
+
+  @Test
+  public void lookup_matchesWithinHammingDistance() {
+    OcrResultCache cache = new OcrResultCache(4, 1000, 2);
+    cache.put(hash(0b1111L, 0L), new OcrResult("AB12CDE", 90), 0);
+
+    assertEquals("AB12CDE", cache.lookup(hash(0b1101L, 0L), 10).getText());
+    assertNull(cache.lookup(hash(0b0001L, 0L), 10));
+    assertEquals(0.5, cache.getHitRate(), 1e-9);
+  }
+
+  @Test
+  public void lookup_expiresEntriesAfterTtl() {
+    OcrResultCache cache = new OcrResultCache(4, 1000, 0);
+    cache.put(hash(1L), new OcrResult("AB12CDE", 90), 0);
+
+    assertNull(cache.lookup(hash(1L), 1001));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsed() {
+    OcrResultCache cache = new OcrResultCache(2, 1000, 0);
+    cache.put(hash(1L), new OcrResult("ONE", 90), 0);
+    cache.put(hash(2L), new OcrResult("TWO", 90), 0);
+    cache.lookup(hash(1L), 0);
+    cache.put(hash(4L), new OcrResult("FOUR", 90), 0);
+
+    assertEquals("ONE", cache.lookup(hash(1L), 0).getText());
+    assertNull(cache.lookup(hash(2L), 0));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void dHash_setsBitWhenBrighterThanRightNeighbour() {
+    byte[] pixels = {(byte) 200, 100, 100, (byte) 150};
+    long[] hash = PlateHash.dHash(pixels, 4, 1);
+    assertEquals(0b001L, hash[0]);
+    assertEquals(0, PlateHash.hammingDistance(hash, new long[]{0b001L}));
+  }
+}
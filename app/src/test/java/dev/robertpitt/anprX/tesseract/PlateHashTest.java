@@ -0,0 +1,24 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlateHashTest {
+  @Test
+  public void dHash_setsBitsWherePixelsGetDarker() {
+    byte[] pixels = {
+        (byte) 200, 100, 100, 50,
+        10, 20, 30, 40
+    };
+    long[] hash = PlateHash.dHash(pixels, 4, 2);
+    assertEquals(0b101L, hash[0]);
+    assertEquals(0L, hash[1]);
+  }
+
+  @Test
+  public void hammingDistance_countsDifferingBits() {
+    assertEquals(0, PlateHash.hammingDistance(new long[] { 0b1011L, 7L }, new long[] { 0b1011L, 7L }));
+    assertEquals(3, PlateHash.hammingDistance(new long[] { 0b1011L, 0L }, new long[] { 0b0001L, 1L }));
+  }
+}
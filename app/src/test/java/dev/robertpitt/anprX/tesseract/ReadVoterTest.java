@@ -0,0 +1,50 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadVoterTest {
+  @Test
+  public void getResult_votesEachCharacter() {
+    ReadVoter voter = new ReadVoter();
+    voter.add(new OcrResult("AB12CDE", 80));
+    voter.add(new OcrResult("A812CDE", 75));
+    voter.add(new OcrResult("AB12COE", 78));
+
+    assertEquals("AB12CDE", voter.getResult().getText());
+  }
+
+  @Test
+  public void getResult_ignoresMinorityLength() {
+    ReadVoter voter = new ReadVoter();
+    voter.add(new OcrResult("AB12CDE", 80));
+    voter.add(new OcrResult("AB12CDE", 80));
+    voter.add(new OcrResult("AB1 2CDE", 90));
+
+    OcrResult result = voter.getResult();
+    assertEquals("AB12CDE", result.getText());
+    assertEquals(80, result.getConfidence());
+  }
+
+  @Test
+  public void getResult_disagreementLowersConfidence() {
+    ReadVoter voter = new ReadVoter();
+    voter.add(new OcrResult("AB", 80));
+    voter.add(new OcrResult("AC", 80));
+    voter.add(new OcrResult("AB", 80));
+
+    OcrResult result = voter.getResult();
+    assertEquals("AB", result.getText());
+    assertTrue(result.getConfidence() < 80);
+  }
+
+  @Test
+  public void getResult_emptyWithoutResults() {
+    ReadVoter voter = new ReadVoter();
+    voter.add(new OcrResult("", 90));
+
+    assertEquals(0, voter.getCount());
+    assertEquals("", voter.getResult().getText());
+  }
+}
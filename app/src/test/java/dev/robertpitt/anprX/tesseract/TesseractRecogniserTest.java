@@ -0,0 +1,19 @@
+package dev.robertpitt.anprX.tesseract;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TesseractRecogniserTest {
+  /**
+   * The recogniser chain MainActivity builds in its field initialisers, unit tests run without
+   * the native library so any Mat allocated on construction fails with UnsatisfiedLinkError
+   */
+  @Test
+  public void constructor_doesNotTouchOpenCV() {
+    TesseractRecogniser recogniser = new TesseractRecogniser(null);
+    assertNotNull(new RecogniserPool(new CachingRecogniser(recogniser, new OcrResultCache(4, 1000, 2))));
+    assertEquals(TesseractRecogniser.DEFAULT_TIMEOUT_MILLIS, recogniser.getTimeoutMillis());
+    assertEquals(0, recogniser.getTimedOutCount());
+  }
+}